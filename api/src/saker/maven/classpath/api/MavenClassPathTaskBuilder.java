@@ -33,6 +33,7 @@ import saker.maven.classpath.impl.option.LiteralStructuredTaskResult;
 import saker.maven.classpath.impl.option.MavenClassPathEntryInput;
 import saker.maven.classpath.impl.option.MavenClassPathInputOption;
 import saker.maven.classpath.impl.option.TaskResultMavenClassPathInputOption;
+import saker.maven.classpath.impl.util.VersionConflictStrategy;
 import saker.maven.support.api.ArtifactCoordinates;
 import saker.maven.support.api.MavenOperationConfiguration;
 import saker.std.api.file.location.FileLocation;
@@ -47,6 +48,10 @@ import saker.std.api.file.location.FileLocation;
 public class MavenClassPathTaskBuilder {
 	private MavenOperationConfiguration configuration;
 	private Set<MavenClassPathEntryInput> inputs = new LinkedHashSet<>();
+	private int localizationShards = MavenClassPathWorkerTaskFactory.LOCALIZATION_SHARDS_NONE;
+	private VersionConflictStrategy versionConflictStrategy = VersionConflictStrategy.NONE;
+	private boolean clusterMode;
+	private boolean verifyChecksums;
 
 	private MavenClassPathTaskBuilder() {
 	}
@@ -71,6 +76,92 @@ public class MavenClassPathTaskBuilder {
 		this.configuration = configuration;
 	}
 
+	/**
+	 * Sets the number of tasks the artifact inputs are localized with.
+	 * <p>
+	 * By default, all artifacts are localized using a single task. As the task is keyed by all of the artifacts,
+	 * adding or removing an artifact causes all of them to be localized again.
+	 * <p>
+	 * If the shard count is positive, the artifacts are distributed into the given number of buckets based on their
+	 * coordinates, and each bucket is localized by a separate task. If it is <code>-1</code>, each artifact is
+	 * localized by its own task. In these cases a change in the artifacts only causes the localization of the affected
+	 * shards to be re-run.
+	 * 
+	 * @param shardCount
+	 *            The number of shards, <code>0</code> for a single task, or <code>-1</code> for a task per artifact.
+	 * @throws IllegalArgumentException
+	 *             If the shard count is less than <code>-1</code>.
+	 * @since saker.maven.classpath 0.8.3
+	 */
+	public void setLocalizationShardCount(int shardCount) throws IllegalArgumentException {
+		if (shardCount < MavenClassPathWorkerTaskFactory.LOCALIZATION_SHARDS_PER_ARTIFACT) {
+			throw new IllegalArgumentException("Invalid localization shard count: " + shardCount);
+		}
+		this.localizationShards = shardCount;
+	}
+
+	/**
+	 * Sets how multiple versions of the same artifact in the classpath entries should be handled.
+	 * <p>
+	 * Artifacts are considered to be the same if only their versions differ. The conflicts are resolved before the
+	 * artifacts are retrieved, so the versions that are not used aren't localized. Only the entries with artifact
+	 * inputs are considered. The following strategies are supported (case insensitive):
+	 * <ul>
+	 * <li><code>None</code>: All versions are kept. This is the default.</li>
+	 * <li><code>HighestWins</code>: The highest version is kept, at the position of the first occurrence of the
+	 * artifact.</li>
+	 * <li><code>FirstWins</code>: The first occurrence of the artifact is kept.</li>
+	 * <li><code>Fail</code>: The classpath creation fails if there are conflicting versions.</li>
+	 * </ul>
+	 * 
+	 * @param strategy
+	 *            The name of the strategy or <code>null</code> to keep all versions.
+	 * @throws IllegalArgumentException
+	 *             If the strategy is not recognized.
+	 * @since saker.maven.classpath 0.8.3
+	 */
+	public void setVersionConflictStrategy(String strategy) throws IllegalArgumentException {
+		this.versionConflictStrategy = VersionConflictStrategy.forName(strategy);
+	}
+
+	/**
+	 * Sets whether the artifact inputs should be downloaded to the build directory instead of being localized.
+	 * <p>
+	 * By default, the artifacts are localized, and the classpath entries refer to the files in the local Maven
+	 * repository of the coordinator machine. If cluster mode is enabled, the artifacts are downloaded to the build
+	 * directory instead, and the classpath entries are execution files. The tasks that run on cluster daemons can
+	 * access them as any other execution file. The artifacts are still only retrieved by the coordinator. Localizing
+	 * the artifacts to the local repositories of the cluster daemons is not supported, the daemons receive the files
+	 * through the mirroring of the execution files by the build system.
+	 * <p>
+	 * The source and documentation attachment artifacts are downloaded in the same way.
+	 * 
+	 * @param clusterMode
+	 *            <code>true</code> to download the artifacts to the build directory.
+	 * @since saker.maven.classpath 0.8.3
+	 */
+	public void setClusterMode(boolean clusterMode) {
+		this.clusterMode = clusterMode;
+	}
+
+	/**
+	 * Sets whether the localized artifacts should be verified against the checksum files in the local repository.
+	 * <p>
+	 * The artifacts are verified concurrently against the <code>.sha256</code> or <code>.sha1</code> files stored
+	 * next to them. The classpath creation fails if a checksum doesn't match. The verified files are remembered by
+	 * their size and last modification time, so only the modified artifacts are hashed again.
+	 * <p>
+	 * Artifacts without checksum files and the artifacts downloaded in {@linkplain #setClusterMode(boolean) cluster
+	 * mode} are not verified.
+	 * 
+	 * @param verifyChecksums
+	 *            <code>true</code> to verify the checksums.
+	 * @since saker.maven.classpath 0.8.3
+	 */
+	public void setVerifyChecksums(boolean verifyChecksums) {
+		this.verifyChecksums = verifyChecksums;
+	}
+
 	/**
 	 * Adds a new classpath entry specified by the given entry builder.
 	 * <p>
@@ -100,7 +191,8 @@ public class MavenClassPathTaskBuilder {
 	 * @return The created task factory.
 	 */
 	public TaskFactory<? extends ClassPathReference> buildTask() {
-		return new MavenClassPathWorkerTaskFactory(configuration, ImmutableUtils.makeImmutableLinkedHashSet(inputs));
+		return new MavenClassPathWorkerTaskFactory(configuration, ImmutableUtils.makeImmutableLinkedHashSet(inputs),
+				localizationShards, versionConflictStrategy, clusterMode, verifyChecksums);
 	}
 
 	/**
@@ -111,7 +203,8 @@ public class MavenClassPathTaskBuilder {
 	 * @return The task identifier.
 	 */
 	public TaskIdentifier buildTaskIdentifier() {
-		return new MavenClassPathWorkerTaskFactory(configuration, ImmutableUtils.makeImmutableLinkedHashSet(inputs));
+		return new MavenClassPathWorkerTaskFactory(configuration, ImmutableUtils.makeImmutableLinkedHashSet(inputs),
+				localizationShards, versionConflictStrategy, clusterMode, verifyChecksums);
 	}
 
 	/**
@@ -180,7 +273,12 @@ public class MavenClassPathTaskBuilder {
 		/**
 		 * Sets the input of the classpath.
 		 * <p>
-		 * The argument task result should resolve to a {@link FileLocation}.
+		 * The argument task result should resolve to a {@link FileLocation}, a {@link ClassPathReference}, or a
+		 * collection or array of these.
+		 * <p>
+		 * The resolved class path references are included in the created classpath without copying their entries. The
+		 * implementation version key and the attachments set in this builder only apply if the task result resolves to
+		 * a single {@link FileLocation}.
 		 * 
 		 * @param input
 		 *            The input task result.
@@ -197,6 +295,26 @@ public class MavenClassPathTaskBuilder {
 			return this;
 		}
 
+		/**
+		 * Sets a classpath to be included in the created classpath.
+		 * <p>
+		 * The entries of the argument are part of the created classpath at the position of this entry. They are not
+		 * copied, the argument is shared by the created classpath.
+		 * 
+		 * @param input
+		 *            The classpath to include.
+		 * @return <code>this</code>
+		 * @since saker.maven.classpath 0.8.3
+		 */
+		public EntryBuilder setInput(ClassPathReference input) {
+			if (input == null) {
+				this.input = null;
+			} else {
+				this.input = new TaskResultMavenClassPathInputOption(new LiteralStructuredTaskResult(input));
+			}
+			return this;
+		}
+
 		/**
 		 * Sets the source attachment of the classpath.
 		 * 
@@ -255,6 +373,67 @@ public class MavenClassPathTaskBuilder {
 			return this;
 		}
 
+		/**
+		 * Sets the documentation attachment of the classpath.
+		 * 
+		 * @param documentationAttachment
+		 *            The documentation attachment file.
+		 * @return <code>this</code>
+		 * @see ClassPathEntry#getDocumentationAttachment()
+		 * @since saker.maven.classpath 0.8.3
+		 */
+		public EntryBuilder setDocumentationAttachment(FileLocation documentationAttachment) {
+			if (documentationAttachment == null) {
+				this.documentationAttachment = null;
+			} else {
+				this.documentationAttachment = new FileMavenClassPathInputOption(documentationAttachment);
+			}
+			return this;
+		}
+
+		/**
+		 * Sets the documentation attachment of the classpath.
+		 * <p>
+		 * The artifact will be resoved with the associated
+		 * {@linkplain MavenClassPathTaskBuilder#setConfiguration(MavenOperationConfiguration) Maven configuration}.
+		 * It is only retrieved when the attachment is requested, so it doesn't delay the creation of the classpath.
+		 * 
+		 * @param documentationAttachment
+		 *            The documentation attachment artifact coordinates. (E.g. the <code>javadoc</code> artifact.)
+		 * @return <code>this</code>
+		 * @see ClassPathEntry#getDocumentationAttachment()
+		 * @since saker.maven.classpath 0.8.3
+		 */
+		public EntryBuilder setDocumentationAttachment(ArtifactCoordinates documentationAttachment) {
+			if (documentationAttachment == null) {
+				this.documentationAttachment = null;
+			} else {
+				this.documentationAttachment = new ArtifactMavenClassPathInputOption(documentationAttachment);
+			}
+			return this;
+		}
+
+		/**
+		 * Sets the documentation attachment of the classpath.
+		 * <p>
+		 * The argument is the equivalent of setting the result of the
+		 * {@link ClassPathEntry#getDocumentationAttachment()} method.
+		 * 
+		 * @param documentationAttachment
+		 *            The documentation attachment task result.
+		 * @return <code>this</code>
+		 * @see ClassPathEntry#getDocumentationAttachment()
+		 * @since saker.maven.classpath 0.8.3
+		 */
+		public EntryBuilder setDocumentationAttachment(StructuredTaskResult documentationAttachment) {
+			if (documentationAttachment == null) {
+				this.documentationAttachment = null;
+			} else {
+				this.documentationAttachment = new TaskResultMavenClassPathInputOption(documentationAttachment);
+			}
+			return this;
+		}
+
 		/**
 		 * Sets the implementation version key of the classpath.
 		 * <p>
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saker.maven.classpath.impl.util.ArtifactCoordinatesInterner;
+import saker.maven.support.api.ArtifactCoordinates;
+
+/**
+ * Benchmarks the parsing of the artifact coordinates passed to the frontend task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArtifactCoordinatesParsingBenchmark {
+	@Param({ "10", "500", "5000" })
+	public int artifactCount;
+
+	private List<String> coordinateStrings;
+
+	@Setup
+	public void setup() {
+		coordinateStrings = new ArrayList<>(artifactCount);
+		for (ArtifactCoordinates coord : BenchmarkSupport.createCoordinates(artifactCount, "1.0")) {
+			coordinateStrings.add(coord.toString());
+		}
+	}
+
+	@Benchmark
+	public Set<ArtifactCoordinates> parseInterned() {
+		return ArtifactCoordinatesInterner.valueOfAll(coordinateStrings);
+	}
+
+	@Benchmark
+	public List<ArtifactCoordinates> parseUninterned() {
+		List<ArtifactCoordinates> result = new ArrayList<>(coordinateStrings.size());
+		for (String coord : coordinateStrings) {
+			result.add(ArtifactCoordinates.valueOf(coord));
+		}
+		return result;
+	}
+}
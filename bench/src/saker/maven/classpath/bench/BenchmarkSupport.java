@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import saker.build.file.content.HashContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.environment.EnvironmentProperty;
+import saker.build.runtime.environment.SakerEnvironment;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.ExecutionProperty;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskExecutionUtilities;
+import saker.build.task.TaskFuture;
+import saker.build.thirdparty.saker.util.io.StreamUtils;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
+import saker.build.util.property.UserParameterExecutionProperty;
+import saker.maven.classpath.impl.MavenClassPathWorkerTaskFactory;
+import saker.maven.classpath.impl.option.ArtifactMavenClassPathInputOption;
+import saker.maven.classpath.impl.option.LiteralStructuredTaskResult;
+import saker.maven.classpath.impl.option.MavenClassPathEntryInput;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.localize.ArtifactLocalizationTaskOutput;
+import saker.maven.support.api.localize.ArtifactLocalizationWorkerTaskOutput;
+
+/**
+ * Utility functions for creating the inputs of the benchmarks.
+ * <p>
+ * The task contexts and the localization outputs are stubbed using {@link Proxy}, so the benchmarks run without a
+ * build execution and without accessing the Maven repositories.
+ */
+final class BenchmarkSupport {
+	private static final String[] JDK_CLASS_NAMES = { "java.util.AbstractList", "java.util.AbstractMap",
+			"java.util.ArrayDeque", "java.util.ArrayList", "java.util.Arrays", "java.util.BitSet",
+			"java.util.Collections", "java.util.HashMap", "java.util.HashSet", "java.util.IdentityHashMap",
+			"java.util.LinkedHashMap", "java.util.LinkedList", "java.util.Objects", "java.util.Optional",
+			"java.util.PriorityQueue", "java.util.TreeMap", "java.util.TreeSet", "java.util.WeakHashMap",
+			"java.util.concurrent.ConcurrentHashMap", "java.util.concurrent.ConcurrentLinkedQueue",
+			"java.util.concurrent.ConcurrentSkipListMap", "java.util.concurrent.CopyOnWriteArrayList",
+			"java.util.concurrent.CompletableFuture", "java.util.concurrent.ThreadPoolExecutor", };
+
+	private BenchmarkSupport() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Creates the coordinates of the synthetic artifacts.
+	 * 
+	 * @param count
+	 *            The number of artifacts.
+	 * @param version
+	 *            The version of the artifacts.
+	 * @return The coordinates.
+	 */
+	public static List<ArtifactCoordinates> createCoordinates(int count, String version) {
+		List<ArtifactCoordinates> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(new ArtifactCoordinates("bench.group" + (i % 16), "artifact" + i, null, "jar", version));
+		}
+		return result;
+	}
+
+	/**
+	 * Creates the class path inputs for the artifacts the same way as the frontend task.
+	 * 
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @return The inputs.
+	 */
+	public static Set<MavenClassPathEntryInput> createInputs(List<ArtifactCoordinates> coordinates) {
+		Set<MavenClassPathEntryInput> inputs = new LinkedHashSet<>();
+		for (ArtifactCoordinates coord : coordinates) {
+			inputs.add(new MavenClassPathEntryInput(new ArtifactMavenClassPathInputOption(coord), null,
+					new ArtifactMavenClassPathInputOption(
+							MavenClassPathWorkerTaskFactory.createSourceArtifactCoordinates(coord)),
+					new ArtifactMavenClassPathInputOption(
+							MavenClassPathWorkerTaskFactory.createJavadocArtifactCoordinates(coord))));
+		}
+		return inputs;
+	}
+
+	/**
+	 * Writes a small JAR for the artifact.
+	 * <p>
+	 * The last modification time of the file is set to the past, so it is considered for the local repository index.
+	 * 
+	 * @param path
+	 *            The output path.
+	 * @param coordinates
+	 *            The coordinates of the artifact.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public static void writeArtifactJar(Path path, ArtifactCoordinates coordinates) throws IOException {
+		Files.createDirectories(path.getParent());
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+		try (JarOutputStream jaros = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+			String pkg = "bench/" + coordinates.getArtifactId() + "/";
+			for (int i = 0; i < 4; i++) {
+				jaros.putNextEntry(new ZipEntry(pkg + "Resource" + i + ".txt"));
+				jaros.write(coordinates.toString().getBytes(StandardCharsets.UTF_8));
+				jaros.closeEntry();
+			}
+		}
+		Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - 60 * 60 * 1000L));
+	}
+
+	/**
+	 * Creates a JAR in memory that contains the class files of JDK classes.
+	 * <p>
+	 * The classes are taken from the <code>java.base</code> module, and the JAR contains the outer and nested classes
+	 * as well.
+	 * 
+	 * @param classcount
+	 *            The maximum number of class files in the JAR.
+	 * @return The bytes of the JAR.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public static byte[] createJdkClassesJar(int classcount) throws IOException {
+		List<Class<?>> classes = new ArrayList<>();
+		for (String cname : JDK_CLASS_NAMES) {
+			Class<?> c;
+			try {
+				c = Class.forName(cname, false, null);
+			} catch (ClassNotFoundException e) {
+				continue;
+			}
+			classes.add(c);
+			classes.addAll(Arrays.asList(c.getDeclaredClasses()));
+		}
+		UnsyncByteArrayOutputStream baos = new UnsyncByteArrayOutputStream();
+		try (JarOutputStream jaros = new JarOutputStream(baos)) {
+			int count = 0;
+			for (Class<?> c : classes) {
+				if (count >= classcount) {
+					break;
+				}
+				String name = c.getName().replace('.', '/') + ".class";
+				try (InputStream is = ClassLoader.getSystemResourceAsStream(name)) {
+					if (is == null) {
+						continue;
+					}
+					jaros.putNextEntry(new ZipEntry(name));
+					StreamUtils.copyStream(is, jaros);
+					jaros.closeEntry();
+				}
+				++count;
+			}
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Creates a localization worker output for the artifact.
+	 * 
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @param localpath
+	 *            The path of the artifact.
+	 * @return The localization output.
+	 */
+	public static ArtifactLocalizationWorkerTaskOutput createLocalizationWorkerOutput(ArtifactCoordinates coordinates,
+			Path localpath) {
+		SakerPath path = SakerPath.valueOf(localpath);
+		HashContentDescriptor contentdescriptor = HashContentDescriptor
+				.createWithHash(coordinates.toString().getBytes(StandardCharsets.UTF_8));
+		return createProxy(ArtifactLocalizationWorkerTaskOutput.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getCoordinates":
+					return coordinates;
+				case "getLocalPath":
+					return path;
+				case "getContentDescriptor":
+					return contentdescriptor;
+				default:
+					return null;
+			}
+		});
+	}
+
+	/**
+	 * Creates a build environment that uses the given storage directory.
+	 * <p>
+	 * If the environment is caching, the current values of the environment properties are computed only once, the
+	 * same way as in a build daemon. Otherwise they are computed for every query, as if every build ran in a new
+	 * process.
+	 * 
+	 * @param storagedirectory
+	 *            The storage directory of the environment.
+	 * @param caching
+	 *            Whether the environment property values are cached.
+	 * @return The environment.
+	 */
+	public static SakerEnvironment createEnvironment(Path storagedirectory, boolean caching) {
+		Map<EnvironmentProperty<?>, Object> propertyvalues = new ConcurrentHashMap<>();
+		return createProxy(SakerEnvironment.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getStorageDirectoryPath":
+					return storagedirectory;
+				case "getEnvironmentPropertyCurrentValue": {
+					EnvironmentProperty<?> property = (EnvironmentProperty<?>) args[0];
+					if (!caching) {
+						return property.getCurrentValue((SakerEnvironment) proxy);
+					}
+					return propertyvalues.computeIfAbsent(property, p -> {
+						try {
+							return p.getCurrentValue((SakerEnvironment) proxy);
+						} catch (Exception e) {
+							throw new IllegalStateException(e);
+						}
+					});
+				}
+				default:
+					return null;
+			}
+		});
+	}
+
+	/**
+	 * Creates a task context that completes all started tasks with a localization output of the given artifacts.
+	 * <p>
+	 * The current values of the execution and environment dependencies are computed using the given environment. The
+	 * user parameters are not set.
+	 * 
+	 * @param environment
+	 *            The build environment.
+	 * @param localized
+	 *            The localization outputs of the artifacts.
+	 * @return The task context.
+	 */
+	public static TaskContext createTaskContext(SakerEnvironment environment,
+			Map<ArtifactCoordinates, ArtifactLocalizationWorkerTaskOutput> localized) {
+		ExecutionContext executioncontext = createProxy(ExecutionContext.class, (proxy, method, args) -> {
+			if ("getEnvironment".equals(method.getName())) {
+				return environment;
+			}
+			return null;
+		});
+		ArtifactLocalizationTaskOutput localizationoutput = createProxy(ArtifactLocalizationTaskOutput.class,
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getCoordinates":
+							return localized.keySet();
+						case "getLocalizationResult": {
+							ArtifactLocalizationWorkerTaskOutput out = localized.get(args[0]);
+							return out == null ? null : new LiteralStructuredTaskResult(out);
+						}
+						default:
+							return null;
+					}
+				});
+		TaskFuture<?> future = createProxy(TaskFuture.class, (proxy, method, args) -> {
+			if ("get".equals(method.getName())) {
+				return localizationoutput;
+			}
+			return null;
+		});
+		TaskExecutionUtilities utilities = createProxy(TaskExecutionUtilities.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getReportExecutionDependency": {
+					ExecutionProperty<?> property = (ExecutionProperty<?>) args[0];
+					if (property instanceof UserParameterExecutionProperty) {
+						return null;
+					}
+					return property.getCurrentValue(executioncontext);
+				}
+				case "getReportEnvironmentDependency": {
+					return environment.getEnvironmentPropertyCurrentValue((EnvironmentProperty<?>) args[0]);
+				}
+				default:
+					return null;
+			}
+		});
+		return createProxy(TaskContext.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getExecutionContext":
+					return executioncontext;
+				case "getTaskUtilities":
+					return utilities;
+				case "startTask":
+					return future;
+				default:
+					return null;
+			}
+		});
+	}
+
+	/**
+	 * Deletes the directory recursively.
+	 * 
+	 * @param dir
+	 *            The directory.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public static void deleteRecursively(Path dir) throws IOException {
+		if (dir == null || !Files.exists(dir)) {
+			return;
+		}
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+				Files.delete(d);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private static <T> T createProxy(Class<T> type, InvocationHandler handler) {
+		Object result = Proxy.newProxyInstance(BenchmarkSupport.class.getClassLoader(), new Class<?>[] { type },
+				(proxy, method, args) -> {
+					if (method.getDeclaringClass() == Object.class) {
+						return invokeObjectMethod(proxy, method, args);
+					}
+					Object ret = handler.invoke(proxy, method, args);
+					if (ret == null) {
+						return getDefaultValue(method.getReturnType());
+					}
+					return ret;
+				});
+		return type.cast(result);
+	}
+
+	private static Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+		switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return proxy.getClass().getInterfaces()[0].getSimpleName() + "@"
+						+ Integer.toHexString(System.identityHashCode(proxy));
+		}
+	}
+
+	private static Object getDefaultValue(Class<?> type) {
+		if (!type.isPrimitive() || type == void.class) {
+			return null;
+		}
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == char.class) {
+			return '\0';
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == float.class) {
+			return 0f;
+		}
+		if (type == double.class) {
+			return 0d;
+		}
+		if (type == byte.class) {
+			return (byte) 0;
+		}
+		if (type == short.class) {
+			return (short) 0;
+		}
+		return 0;
+	}
+}
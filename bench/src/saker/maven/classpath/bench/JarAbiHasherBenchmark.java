@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayInputStream;
+import saker.maven.classpath.impl.util.JarAbiHasher;
+
+/**
+ * Benchmarks the ABI hashing of JARs by {@link JarAbiHasher}.
+ * <p>
+ * The hashed JAR is created in memory from the class files of the JDK, so the class files have realistic contents
+ * and sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JarAbiHasherBenchmark {
+	@Param({ "10", "100" })
+	public int classCount;
+
+	private byte[] jarBytes;
+
+	@Setup
+	public void setup() throws Exception {
+		jarBytes = BenchmarkSupport.createJdkClassesJar(classCount);
+	}
+
+	@Benchmark
+	public byte[] hash() throws Exception {
+		return JarAbiHasher.hash(new UnsyncByteArrayInputStream(jarBytes));
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saker.build.file.content.HashContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.maven.classpath.impl.util.LocalRepositoryIndex;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+
+/**
+ * Benchmarks the lookup of artifacts in the {@link LocalRepositoryIndex}.
+ * <p>
+ * The index is populated during the setup. The lookups check the size and modification time of the artifact files,
+ * the same way as when the worker task decides whether the localization can be skipped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalRepositoryIndexBenchmark {
+	@Param({ "10", "500", "5000" })
+	public int artifactCount;
+
+	private Path tempDirectory;
+	private LocalRepositoryIndex index;
+	private List<ArtifactCoordinates> coordinates;
+
+	@Setup
+	public void setup() throws Exception {
+		tempDirectory = Files.createTempDirectory("saker.maven.classpath.bench");
+		index = LocalRepositoryIndex.get(
+				BenchmarkSupport.createEnvironment(tempDirectory.resolve("storage"), true),
+				MavenOperationConfiguration.defaults());
+		coordinates = BenchmarkSupport.createCoordinates(artifactCount, "1.0");
+		for (ArtifactCoordinates coord : coordinates) {
+			Path jar = tempDirectory.resolve("repository").resolve(coord.getGroupId())
+					.resolve(coord.getArtifactId() + "-" + coord.getVersion() + ".jar");
+			BenchmarkSupport.writeArtifactJar(jar, coord);
+			index.record(coord, SakerPath.valueOf(jar),
+					HashContentDescriptor.createWithHash(coord.toString().getBytes("UTF-8")));
+		}
+		index.flush();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		BenchmarkSupport.deleteRecursively(tempDirectory);
+	}
+
+	@Benchmark
+	public int lookup() {
+		int found = 0;
+		for (ArtifactCoordinates coord : coordinates) {
+			if (index.lookup(coord) != null) {
+				++found;
+			}
+		}
+		if (found != coordinates.size()) {
+			throw new IllegalStateException("Artifacts missing from the index: " + (coordinates.size() - found));
+		}
+		return found;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.bench;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saker.build.file.content.HashContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayInputStream;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
+import saker.maven.classpath.impl.MavenClassPathEntry;
+import saker.maven.classpath.impl.MavenClassPathReference;
+import saker.maven.classpath.impl.MavenClassPathWorkerTaskFactory;
+import saker.maven.classpath.impl.SourceAttachmentRetrievingStructuredTaskResult;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+import saker.std.api.file.location.LocalFileLocation;
+
+/**
+ * Benchmarks the {@link java.io.Externalizable} serialization of {@link MavenClassPathReference}.
+ * <p>
+ * The references are serialized when the build database is persisted, and deserialized when it is loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MavenClassPathReferenceSerializationBenchmark {
+	@Param({ "10", "500", "5000" })
+	public int entryCount;
+
+	private MavenClassPathReference reference;
+	private byte[] serialized;
+
+	@Setup
+	public void setup() throws Exception {
+		MavenOperationConfiguration config = MavenOperationConfiguration.defaults();
+		List<ArtifactCoordinates> coordinates = BenchmarkSupport.createCoordinates(entryCount, "1.0");
+		List<MavenClassPathEntry> entries = new ArrayList<>(entryCount);
+		for (ArtifactCoordinates coord : coordinates) {
+			SakerPath path = SakerPath.valueOf("/repository/" + coord.getGroupId() + "/" + coord.getArtifactId()
+					+ "-" + coord.getVersion() + ".jar");
+			MavenClassPathEntry entry = new MavenClassPathEntry(LocalFileLocation.create(path),
+					HashContentDescriptor.createWithHash(coord.toString().getBytes("UTF-8")));
+			entry.setSourceAttachment(SourceAttachmentRetrievingStructuredTaskResult.createLocalizing(config,
+					MavenClassPathWorkerTaskFactory.createSourceArtifactCoordinates(coord), 0));
+			entry.setDocumentationAttachment(SourceAttachmentRetrievingStructuredTaskResult.createLocalizing(config,
+					MavenClassPathWorkerTaskFactory.createJavadocArtifactCoordinates(coord), 0));
+			entries.add(entry);
+		}
+		reference = new MavenClassPathReference(entries);
+		serialized = write();
+	}
+
+	@Benchmark
+	public byte[] write() throws Exception {
+		UnsyncByteArrayOutputStream baos = new UnsyncByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			oos.writeObject(reference);
+		}
+		return baos.toByteArray();
+	}
+
+	@Benchmark
+	public Object read() throws Exception {
+		try (ObjectInputStream ois = new ObjectInputStream(new UnsyncByteArrayInputStream(serialized))) {
+			return ois.readObject();
+		}
+	}
+}
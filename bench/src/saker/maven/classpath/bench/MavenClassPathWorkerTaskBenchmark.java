@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saker.build.runtime.environment.SakerEnvironment;
+import saker.build.task.TaskContext;
+import saker.java.compiler.api.classpath.ClassPathReference;
+import saker.maven.classpath.impl.MavenClassPathWorkerTaskFactory;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+import saker.maven.support.api.localize.ArtifactLocalizationWorkerTaskOutput;
+
+/**
+ * Benchmarks the class path creation of {@link MavenClassPathWorkerTaskFactory} for synthetic artifacts.
+ * <p>
+ * The localization tasks are stubbed, and complete immediately with the paths of generated JARs. If
+ * {@link #indexed} is <code>false</code>, snapshot versions are used so the artifacts are never served from the
+ * local repository index, and the localization outputs are always waited for. Otherwise the index is populated during
+ * the setup, so the measured runs use the warm index.
+ * <p>
+ * If {@link #environmentCache} is <code>false</code>, the environment property values are recomputed for every run,
+ * so the class path cache of the build daemon is not used, and the class path entries are created in every run. The
+ * ABI keys of the artifacts are still cached in memory, see {@link JarAbiHasherBenchmark} for the hashing itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MavenClassPathWorkerTaskBenchmark {
+	@Param({ "10", "500", "5000" })
+	public int artifactCount;
+
+	@Param({ "false", "true" })
+	public boolean indexed;
+
+	@Param({ "false", "true" })
+	public boolean environmentCache;
+
+	private Path tempDirectory;
+	private MavenClassPathWorkerTaskFactory worker;
+	private TaskContext taskContext;
+
+	@Setup
+	public void setup() throws Exception {
+		tempDirectory = Files.createTempDirectory("saker.maven.classpath.bench");
+
+		List<ArtifactCoordinates> coordinates = BenchmarkSupport.createCoordinates(artifactCount,
+				indexed ? "1.0" : "1.0-SNAPSHOT");
+		Map<ArtifactCoordinates, ArtifactLocalizationWorkerTaskOutput> localized = new HashMap<>();
+		for (ArtifactCoordinates coord : coordinates) {
+			Path jar = tempDirectory.resolve("repository").resolve(coord.getGroupId())
+					.resolve(coord.getArtifactId() + "-" + coord.getVersion() + ".jar");
+			BenchmarkSupport.writeArtifactJar(jar, coord);
+			localized.put(coord, BenchmarkSupport.createLocalizationWorkerOutput(coord, jar));
+		}
+		worker = new MavenClassPathWorkerTaskFactory(MavenOperationConfiguration.defaults(),
+				BenchmarkSupport.createInputs(coordinates),
+				MavenClassPathWorkerTaskFactory.LOCALIZATION_SHARDS_PER_ARTIFACT);
+		//keep the persistent caches separate from the ones used by builds
+		SakerEnvironment environment = BenchmarkSupport.createEnvironment(tempDirectory.resolve("storage"),
+				environmentCache);
+		taskContext = BenchmarkSupport.createTaskContext(environment, localized);
+		if (indexed) {
+			//record the artifacts in the local repository index
+			worker.run(taskContext);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		BenchmarkSupport.deleteRecursively(tempDirectory);
+	}
+
+	@Benchmark
+	public ClassPathReference run() throws Exception {
+		return worker.run(taskContext);
+	}
+}
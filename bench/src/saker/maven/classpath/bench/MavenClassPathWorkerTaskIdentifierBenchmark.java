@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.bench;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import saker.maven.classpath.impl.MavenClassPathWorkerTaskFactory;
+import saker.maven.classpath.impl.option.MavenClassPathEntryInput;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+
+/**
+ * Benchmarks the hash code and equality of the {@link MavenClassPathWorkerTaskFactory} task identifier.
+ * <p>
+ * The build system compares the identifiers when the task is started and when the build database is loaded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MavenClassPathWorkerTaskIdentifierBenchmark {
+	@Param({ "10", "500", "5000" })
+	public int artifactCount;
+
+	private Set<MavenClassPathEntryInput> inputs;
+	private MavenClassPathWorkerTaskFactory identifier;
+	private MavenClassPathWorkerTaskFactory equalIdentifier;
+	private MavenClassPathWorkerTaskFactory differentIdentifier;
+
+	@Setup
+	public void setup() {
+		MavenOperationConfiguration config = MavenOperationConfiguration.defaults();
+		List<ArtifactCoordinates> coordinates = BenchmarkSupport.createCoordinates(artifactCount, "1.0");
+		inputs = BenchmarkSupport.createInputs(coordinates);
+		identifier = new MavenClassPathWorkerTaskFactory(config, inputs);
+		//separate instances, so the equality check doesn't short-circuit on the same objects
+		equalIdentifier = new MavenClassPathWorkerTaskFactory(config,
+				BenchmarkSupport.createInputs(BenchmarkSupport.createCoordinates(artifactCount, "1.0")));
+		List<ArtifactCoordinates> differentcoordinates = BenchmarkSupport.createCoordinates(artifactCount, "1.0");
+		differentcoordinates.set(artifactCount - 1,
+				new ArtifactCoordinates("bench.other", "artifact", null, "jar", "1.0"));
+		differentIdentifier = new MavenClassPathWorkerTaskFactory(config,
+				BenchmarkSupport.createInputs(differentcoordinates));
+	}
+
+	@Benchmark
+	public MavenClassPathWorkerTaskFactory create() {
+		//the constructor computes the hash code of the inputs
+		return new MavenClassPathWorkerTaskFactory(MavenOperationConfiguration.defaults(), inputs);
+	}
+
+	@Benchmark
+	public int identifierHashCode() {
+		return identifier.hashCode();
+	}
+
+	@Benchmark
+	public boolean equalsEqual() {
+		return identifier.equals(equalIdentifier);
+	}
+
+	@Benchmark
+	public boolean equalsDifferent() {
+		return identifier.equals(differentIdentifier);
+	}
+}
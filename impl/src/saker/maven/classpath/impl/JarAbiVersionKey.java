@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import saker.build.file.SakerFile;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.TaskContext;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.maven.classpath.impl.util.JarAbiHasher;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import saker.std.api.file.location.FileLocationVisitor;
+import saker.std.api.file.location.LocalFileLocation;
+
+/**
+ * ABI version key of a JAR class path entry.
+ * <p>
+ * The key is based on the hash of the public and protected class signatures in the JAR. Two JARs that only differ in
+ * their implementation (e.g. method bodies) have equal keys.
+ */
+public final class JarAbiVersionKey implements Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int CACHE_SIZE = 4096;
+	/**
+	 * Computed ABI keys mapped to the implementation version keys of the JARs.
+	 * <p>
+	 * The implementation version keys uniquely identify the contents of the JARs, so they can be used to avoid
+	 * re-hashing of the same files.
+	 */
+	private static final Map<Object, JarAbiVersionKey> ABI_KEY_CACHE = Collections
+			.synchronizedMap(new LinkedHashMap<Object, JarAbiVersionKey>(64, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Object, JarAbiVersionKey> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+
+	private byte[] hash;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public JarAbiVersionKey() {
+	}
+
+	public JarAbiVersionKey(byte[] hash) {
+		this.hash = hash;
+	}
+
+	/**
+	 * Computes the ABI version key of the JAR at the given location.
+	 * <p>
+	 * The computed keys are cached based on the implementation version key argument. If the ABI key cannot be computed
+	 * (e.g. the file is not a JAR, or doesn't exist), <code>null</code> is returned.
+	 * 
+	 * @param taskcontext
+	 *            The task context to use when accessing execution files.
+	 * @param location
+	 *            The location of the JAR.
+	 * @param implementationversionkey
+	 *            The implementation version key of the file. If <code>null</code>, the ABI key is not computed.
+	 * @return The ABI version key or <code>null</code> if it cannot be determined.
+	 */
+	public static JarAbiVersionKey compute(TaskContext taskcontext, FileLocation location,
+			Object implementationversionkey) {
+		if (location == null || implementationversionkey == null) {
+			//the contents are not tracked, the ABI key could become stale
+			return null;
+		}
+		JarAbiVersionKey cached = ABI_KEY_CACHE.get(implementationversionkey);
+		if (cached != null) {
+			return cached;
+		}
+		JarAbiVersionKey[] result = { null };
+		try {
+			location.accept(new FileLocationVisitor() {
+				@Override
+				public void visit(LocalFileLocation loc) {
+					try (InputStream is = Files.newInputStream(LocalFileProvider.toRealPath(loc.getLocalPath()))) {
+						result[0] = new JarAbiVersionKey(JarAbiHasher.hash(is));
+					} catch (IOException e) {
+						logFailure(location, e);
+					}
+				}
+
+				@Override
+				public void visit(ExecutionFileLocation loc) {
+					SakerFile file = taskcontext.getTaskUtilities().resolveFileAtPath(loc.getPath());
+					if (file == null) {
+						return;
+					}
+					try (InputStream is = file.openInputStream()) {
+						result[0] = new JarAbiVersionKey(JarAbiHasher.hash(is));
+					} catch (IOException e) {
+						logFailure(location, e);
+					}
+				}
+			});
+		} catch (UnsupportedOperationException e) {
+			//unsupported file location type
+			return null;
+		}
+		if (result[0] != null) {
+			ABI_KEY_CACHE.put(implementationversionkey, result[0]);
+		}
+		return result[0];
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeInt(hash.length);
+		out.write(hash);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		hash = new byte[in.readInt()];
+		in.readFully(hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(hash);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		JarAbiVersionKey other = (JarAbiVersionKey) obj;
+		if (!Arrays.equals(hash, other.hash))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + StringUtils.toHexString(hash) + "]";
+	}
+
+	private static void logFailure(FileLocation location, IOException e) {
+		SakerLog.log().verbose().println("Failed to compute ABI version key of: " + location + " (" + e + ")");
+	}
+}
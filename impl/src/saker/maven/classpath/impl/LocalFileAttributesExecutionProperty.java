@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.ExecutionProperty;
+
+/**
+ * Execution property that reports the size and last modification time of a file on the local file system.
+ * <p>
+ * Unlike {@link LocalFileContentKeyExecutionProperty}, the value changes if the file is rewritten with the same
+ * contents. This is needed when the consumer of the file validates these attributes itself, e.g. the JVM when
+ * mapping a CDS archive.
+ * <p>
+ * The current value is <code>null</code> if the file doesn't exist or is a directory.
+ */
+public final class LocalFileAttributesExecutionProperty implements ExecutionProperty<String>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private SakerPath path;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public LocalFileAttributesExecutionProperty() {
+	}
+
+	public LocalFileAttributesExecutionProperty(SakerPath path) {
+		this.path = path;
+	}
+
+	@Override
+	public String getCurrentValue(ExecutionContext executioncontext) throws Exception {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(LocalFileProvider.toRealPath(path), BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		if (!attrs.isRegularFile()) {
+			return null;
+		}
+		return attrs.size() + ":" + attrs.lastModifiedTime().toMillis();
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(path);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		path = (SakerPath) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((path == null) ? 0 : path.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		LocalFileAttributesExecutionProperty other = (LocalFileAttributesExecutionProperty) obj;
+		if (path == null) {
+			if (other.path != null)
+				return false;
+		} else if (!path.equals(other.path))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + path + "]";
+	}
+}
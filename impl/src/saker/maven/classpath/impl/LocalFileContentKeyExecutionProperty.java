@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+import saker.build.file.content.ContentDescriptor;
+import saker.build.file.content.HashContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.ExecutionProperty;
+import saker.build.runtime.execution.SakerLog;
+import saker.maven.classpath.impl.util.ZipCentralDirectoryReader;
+
+/**
+ * Execution property that computes a content key for a file on the local file system.
+ * <p>
+ * For ZIP archives the key is the hash of the central directory, otherwise the hash of the whole file. The computed
+ * keys are cached by the size and last modification time of the files, so unchanged files are not read again.
+ * <p>
+ * The current value is <code>null</code> if the file doesn't exist or is a directory.
+ */
+public final class LocalFileContentKeyExecutionProperty
+		implements ExecutionProperty<ContentDescriptor>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int CACHE_SIZE = 4096;
+	/**
+	 * Files modified more recently than this are not cached, as a subsequent modification may not change the last
+	 * modification time due to the file system time resolution.
+	 */
+	private static final long RECENT_MODIFICATION_MILLIS = 2000;
+
+	private static final Map<Path, CachedKey> KEY_CACHE = Collections
+			.synchronizedMap(new LinkedHashMap<Path, CachedKey>(64, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Path, CachedKey> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+
+	private SakerPath path;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public LocalFileContentKeyExecutionProperty() {
+	}
+
+	public LocalFileContentKeyExecutionProperty(SakerPath path) {
+		this.path = path;
+	}
+
+	@Override
+	public ContentDescriptor getCurrentValue(ExecutionContext executioncontext) throws Exception {
+		Path realpath = LocalFileProvider.toRealPath(path);
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(realpath, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		if (!attrs.isRegularFile()) {
+			return null;
+		}
+		long size = attrs.size();
+		long lastmodified = attrs.lastModifiedTime().toMillis();
+		CachedKey cached = KEY_CACHE.get(realpath);
+		if (cached != null && cached.size == size && cached.lastModified == lastmodified) {
+			return cached.key;
+		}
+		ContentDescriptor key = HashContentDescriptor.createWithHash(hash(realpath));
+		if (System.currentTimeMillis() - lastmodified > RECENT_MODIFICATION_MILLIS) {
+			KEY_CACHE.put(realpath, new CachedKey(size, lastmodified, key));
+		}
+		return key;
+	}
+
+	private static byte[] hash(Path path) throws IOException {
+		try {
+			return ZipCentralDirectoryReader.hashCentralDirectory(path);
+		} catch (ZipException e) {
+			SakerLog.log().verbose().println("Hashing full contents of non-ZIP file: " + path);
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not available.", e);
+		}
+		byte[] buf = new byte[8192];
+		try (InputStream is = Files.newInputStream(path)) {
+			for (int read; (read = is.read(buf)) > 0;) {
+				digest.update(buf, 0, read);
+			}
+		}
+		return digest.digest();
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(path);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		path = (SakerPath) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((path == null) ? 0 : path.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		LocalFileContentKeyExecutionProperty other = (LocalFileContentKeyExecutionProperty) obj;
+		if (path == null) {
+			if (other.path != null)
+				return false;
+		} else if (!path.equals(other.path))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + path + "]";
+	}
+
+	private static final class CachedKey {
+		protected final long size;
+		protected final long lastModified;
+		protected final ContentDescriptor key;
+
+		public CachedKey(long size, long lastModified, ContentDescriptor key) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.key = key;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.ExecutionProperty;
+import saker.maven.classpath.impl.util.LocalRepositoryIndex;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+
+/**
+ * Execution property that looks up an artifact in the {@link LocalRepositoryIndex}.
+ * <p>
+ * The current value is <code>null</code> if the artifact is not indexed, or its file has been modified since it was
+ * indexed.
+ */
+public final class LocalRepositoryArtifactExecutionProperty
+		implements ExecutionProperty<LocalRepositoryIndex.IndexedArtifact>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private MavenOperationConfiguration configuration;
+	private ArtifactCoordinates coordinates;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public LocalRepositoryArtifactExecutionProperty() {
+	}
+
+	public LocalRepositoryArtifactExecutionProperty(MavenOperationConfiguration configuration,
+			ArtifactCoordinates coordinates) {
+		this.configuration = configuration;
+		this.coordinates = coordinates;
+	}
+
+	@Override
+	public LocalRepositoryIndex.IndexedArtifact getCurrentValue(ExecutionContext executioncontext) throws Exception {
+		LocalRepositoryIndex index = LocalRepositoryIndex.get(executioncontext.getEnvironment(), configuration);
+		if (index == null) {
+			return null;
+		}
+		return index.lookup(coordinates);
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(configuration);
+		out.writeObject(coordinates);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		configuration = (MavenOperationConfiguration) in.readObject();
+		coordinates = (ArtifactCoordinates) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((configuration == null) ? 0 : configuration.hashCode());
+		result = prime * result + ((coordinates == null) ? 0 : coordinates.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		LocalRepositoryArtifactExecutionProperty other = (LocalRepositoryArtifactExecutionProperty) obj;
+		if (configuration == null) {
+			if (other.configuration != null)
+				return false;
+		} else if (!configuration.equals(other.configuration))
+			return false;
+		if (coordinates == null) {
+			if (other.coordinates != null)
+				return false;
+		} else if (!coordinates.equals(other.coordinates))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + coordinates + "]";
+	}
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import saker.build.file.SakerFile;
+import saker.build.file.content.ContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.task.utils.StructuredTaskResult;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.build.thirdparty.saker.util.io.StreamUtils;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
+import saker.build.trace.BuildTrace;
+import saker.maven.classpath.impl.util.ParallelUtils;
+import saker.maven.classpath.impl.util.StorageUtils;
+import saker.maven.classpath.impl.util.ZipCentralDirectoryReader;
+import saker.maven.classpath.main.MavenClassPathCDSArchiveTaskFactory;
+
+/**
+ * Task that creates a class data sharing (CDS) archive for the classes of a class path.
+ * <p>
+ * The archive is created by running <code>java -Xshare:dump</code> with the class path and a class list. The class list
+ * is either the output of a training run (<code>-XX:DumpLoadedClassList</code>), or if not specified, all classes in
+ * the class path entries.
+ * <p>
+ * The archive is stored in the {@linkplain StorageUtils storage directory}, keyed by the local paths, sizes, last
+ * modification times and implementation version keys of the class path entries, the class list, and the JDK. The JVM
+ * disables the sharing if the path, size or modification time of a JAR differs from the ones recorded in the archive,
+ * so the archive is recreated if a JAR is rewritten even with the same contents. It is also recreated if the stored
+ * archive was modified. The task depends on the attributes of the JARs, the contents of the Java executable and the
+ * <code>release</code> file of the JDK, and the contents of the archive, so it is rerun if any of them change.
+ * <p>
+ * The class path may only contain JARs. The JVM refuses to dump an archive if a non-empty directory is on the class
+ * path, so the task fails with an {@link IllegalArgumentException} in that case.
+ * <p>
+ * The result is the local path of the archive. The archive can only be used with the same JDK, and the JVM must be
+ * started with the same class path (or one that starts with it), otherwise the JVM disables the sharing.
+ */
+public class MavenClassPathCDSArchiveWorkerTaskFactory
+		implements TaskFactory<SakerPath>, Task<SakerPath>, Externalizable, TaskIdentifier {
+	private static final long serialVersionUID = 1L;
+
+	private static final String DIRECTORY_NAME = "cds";
+
+	private static final String CLASS_FILE_EXTENSION = ".class";
+	private static final String MULTI_RELEASE_VERSIONS_PREFIX = "META-INF/versions/";
+	private static final String JDK_RELEASE_FILE_NAME = "release";
+
+	private StructuredTaskResult classPath;
+	private SakerPath classList;
+	private String javaHome;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public MavenClassPathCDSArchiveWorkerTaskFactory() {
+	}
+
+	/**
+	 * Creates a new instance.
+	 * 
+	 * @param classPath
+	 *            The class path.
+	 * @param classList
+	 *            The execution path of the class list file or <code>null</code> to use all classes of the class path.
+	 * @param javaHome
+	 *            The local path of the JDK that should create the archive.
+	 */
+	public MavenClassPathCDSArchiveWorkerTaskFactory(StructuredTaskResult classPath, SakerPath classList,
+			String javaHome) {
+		this.classPath = classPath;
+		this.classList = classList;
+		this.javaHome = javaHome;
+	}
+
+	@Override
+	public Task<? extends SakerPath> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public SakerPath run(TaskContext taskcontext) throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
+		}
+		taskcontext.setStandardOutDisplayIdentifier(MavenClassPathCDSArchiveTaskFactory.TASK_NAME);
+
+		Object cpobj = classPath.toResult(taskcontext);
+		if (!(cpobj instanceof MavenClassPathReference)) {
+			throw new IllegalArgumentException("Unsupported class path type for CDS archive: " + cpobj);
+		}
+		List<MavenClassPathEntry> entries = new ArrayList<>(((MavenClassPathReference) cpobj).getMavenEntries());
+		List<Path> paths = new ArrayList<>(entries.size());
+		List<Object> implkeys = new ArrayList<>(entries.size());
+		for (MavenClassPathEntry entry : entries) {
+			Path path = MavenClassPathIndex.getLocalPath(taskcontext, entry.getFileLocation());
+			if (path == null) {
+				throw new IOException("Class path entry not found: " + entry.getFileLocation());
+			}
+			if (Files.isDirectory(path)) {
+				throw new IllegalArgumentException(
+						"CDS archives can only be created for JAR class path entries, directory found: " + path);
+			}
+			//the JVM validates the paths, sizes and modification times of the JARs when mapping the archive
+			String attributes = taskcontext.getTaskUtilities()
+					.getReportExecutionDependency(new LocalFileAttributesExecutionProperty(SakerPath.valueOf(path)));
+			if (attributes == null) {
+				throw new FileNotFoundException("Class path entry not found: " + path);
+			}
+			paths.add(path);
+			implkeys.add(path.toString());
+			implkeys.add(attributes);
+			implkeys.add(entry.getImplementationVersionKey());
+		}
+
+		byte[] classlistbytes;
+		if (classList != null) {
+			SakerFile classlistfile = taskcontext.getTaskUtilities().resolveFileAtPath(classList);
+			if (classlistfile == null) {
+				throw new FileNotFoundException("Class list file not found: " + classList);
+			}
+			taskcontext.getTaskUtilities().reportInputFileDependency(null, classlistfile);
+			UnsyncByteArrayOutputStream classlistbuf = new UnsyncByteArrayOutputStream();
+			try (InputStream is = classlistfile.openInputStream()) {
+				StreamUtils.copyStream(is, classlistbuf);
+			}
+			classlistbytes = classlistbuf.toByteArray();
+		} else {
+			classlistbytes = createClassList(paths);
+		}
+
+		Path javahome = Paths.get(javaHome);
+		Path javaexe = getJavaExecutable(javahome);
+		//the archive is specific to the JDK build
+		List<ContentDescriptor> jdkkeys = new ArrayList<>();
+		jdkkeys.add(taskcontext.getTaskUtilities().getReportExecutionDependency(
+				new LocalFileContentKeyExecutionProperty(SakerPath.valueOf(javaexe))));
+		jdkkeys.add(taskcontext.getTaskUtilities().getReportExecutionDependency(
+				new LocalFileContentKeyExecutionProperty(SakerPath.valueOf(javahome.resolve(JDK_RELEASE_FILE_NAME)))));
+		String key = computeKey(implkeys, classlistbytes, javaexe, jdkkeys);
+		Path directory = StorageUtils.getStorageDirectory(taskcontext.getExecutionContext().getEnvironment())
+				.resolve(DIRECTORY_NAME);
+		StorageUtils.evictUnusedFiles(directory);
+		Path archivepath = directory.resolve(key.substring(0, 2)).resolve(key + ".jsa");
+		if (!StorageUtils.isStoredFileReusable(archivepath)) {
+			dumpArchive(javaexe, paths, classlistbytes, archivepath);
+			SakerLog.log().verbose().println("Created CDS archive for " + entries.size() + " class path entries: "
+					+ archivepath);
+		}
+		//rerun if the archive is modified or deleted by someone else
+		taskcontext.getTaskUtilities().getReportExecutionDependency(
+				new LocalFileContentKeyExecutionProperty(SakerPath.valueOf(archivepath)));
+		return SakerPath.valueOf(archivepath);
+	}
+
+	private static Path getJavaExecutable(Path javahome) throws FileNotFoundException {
+		Path bin = javahome.resolve("bin");
+		Path exe = bin.resolve("java.exe");
+		if (Files.isRegularFile(exe)) {
+			return exe;
+		}
+		exe = bin.resolve("java");
+		if (Files.isRegularFile(exe)) {
+			return exe;
+		}
+		throw new FileNotFoundException("Java executable not found in: " + javahome);
+	}
+
+	/**
+	 * Creates a class list that contains all classes of the given class path entries.
+	 * <p>
+	 * The classes that cannot be loaded (e.g. due to missing dependencies) are skipped by the JVM during the dump.
+	 */
+	private static byte[] createClassList(List<Path> paths) throws Exception {
+		List<Set<String>> classes = ParallelUtils.mapParallel(paths, path -> {
+			Set<String> result = new TreeSet<>();
+			for (String name : ZipCentralDirectoryReader.readEntryNames(path)) {
+				if (!name.endsWith(CLASS_FILE_EXTENSION) || name.startsWith(MULTI_RELEASE_VERSIONS_PREFIX)
+						|| name.endsWith("module-info.class") || name.endsWith("package-info.class")) {
+					continue;
+				}
+				result.add(name.substring(0, name.length() - CLASS_FILE_EXTENSION.length()));
+			}
+			return result;
+		});
+		StringBuilder sb = new StringBuilder();
+		Set<String> added = new TreeSet<>();
+		for (Set<String> entryclasses : classes) {
+			for (String cname : entryclasses) {
+				//the first entry on the class path wins
+				if (added.add(cname)) {
+					sb.append(cname);
+					sb.append('\n');
+				}
+			}
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String computeKey(List<Object> implkeys, byte[] classlist, Path javaexe,
+			List<ContentDescriptor> jdkkeys) throws IOException {
+		//the serialized form is stable between JVMs, unlike the hash codes
+		UnsyncByteArrayOutputStream baos = new UnsyncByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			oos.writeObject(implkeys);
+			oos.writeObject(classlist);
+			oos.writeUTF(javaexe.toString());
+			oos.writeObject(jdkkeys);
+		}
+		try {
+			return StringUtils.toHexString(MessageDigest.getInstance("SHA-256").digest(baos.toByteArray()));
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not available.", e);
+		}
+	}
+
+	private static void dumpArchive(Path javaexe, List<Path> paths, byte[] classlist, Path archivepath)
+			throws IOException, InterruptedException {
+		Path dir = archivepath.getParent();
+		Files.createDirectories(dir);
+		String prefix = archivepath.getFileName().toString();
+		Path classlistfile = Files.createTempFile(dir, prefix, ".classlist");
+		//the JVM doesn't overwrite an existing archive file, so only a name is reserved
+		Path tempfile = dir.resolve(prefix + "." + System.nanoTime() + ".tmp");
+		try {
+			Files.write(classlistfile, classlist);
+
+			StringBuilder cpsb = new StringBuilder();
+			for (Path path : paths) {
+				if (cpsb.length() > 0) {
+					cpsb.append(File.pathSeparatorChar);
+				}
+				cpsb.append(path.toString());
+			}
+			List<String> cmd = new ArrayList<>();
+			cmd.add(javaexe.toString());
+			cmd.add("-Xshare:dump");
+			cmd.add("-XX:SharedClassListFile=" + classlistfile);
+			cmd.add("-XX:SharedArchiveFile=" + tempfile);
+			cmd.add("-cp");
+			cmd.add(cpsb.toString());
+			ProcessBuilder pb = new ProcessBuilder(cmd);
+			pb.redirectErrorStream(true);
+			Process proc = pb.start();
+			proc.getOutputStream().close();
+			UnsyncByteArrayOutputStream output = new UnsyncByteArrayOutputStream();
+			try (InputStream is = proc.getInputStream()) {
+				StreamUtils.copyStream(is, output);
+			}
+			int exitcode = proc.waitFor();
+			if (exitcode != 0 || !Files.isRegularFile(tempfile)) {
+				throw new IOException("Failed to create CDS archive, exit code: " + exitcode + "\n"
+						+ new String(output.toByteArray(), StandardCharsets.UTF_8));
+			}
+			StorageUtils.storeFile(tempfile, archivepath);
+		} finally {
+			Files.deleteIfExists(classlistfile);
+			Files.deleteIfExists(tempfile);
+		}
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(classPath);
+		out.writeObject(classList);
+		out.writeObject(javaHome);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		classPath = (StructuredTaskResult) in.readObject();
+		classList = (SakerPath) in.readObject();
+		javaHome = (String) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((classList == null) ? 0 : classList.hashCode());
+		result = prime * result + ((classPath == null) ? 0 : classPath.hashCode());
+		result = prime * result + ((javaHome == null) ? 0 : javaHome.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MavenClassPathCDSArchiveWorkerTaskFactory other = (MavenClassPathCDSArchiveWorkerTaskFactory) obj;
+		if (classList == null) {
+			if (other.classList != null)
+				return false;
+		} else if (!classList.equals(other.classList))
+			return false;
+		if (classPath == null) {
+			if (other.classPath != null)
+				return false;
+		} else if (!classPath.equals(other.classPath))
+			return false;
+		if (javaHome == null) {
+			if (other.javaHome != null)
+				return false;
+		} else if (!javaHome.equals(other.javaHome))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + (classList != null ? "classList=" + classList + ", " : "")
+				+ "javaHome=" + javaHome + "]";
+	}
+}
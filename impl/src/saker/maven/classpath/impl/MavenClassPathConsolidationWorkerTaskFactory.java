@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.task.utils.StructuredTaskResult;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.build.thirdparty.saker.util.io.StreamUtils;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
+import saker.build.trace.BuildTrace;
+import saker.java.compiler.api.classpath.ClassPathReference;
+import saker.maven.classpath.impl.util.StorageUtils;
+import saker.maven.classpath.main.MavenClassPathTaskFactory;
+import saker.std.api.file.location.LocalFileLocation;
+
+/**
+ * Task that merges the entries of a class path into a single JAR.
+ * <p>
+ * The entries are merged with the same shadowing semantics as the class path lookup: if multiple entries contain a
+ * file with the same name, the one in the earliest entry is used. The service provider configuration files in
+ * <code>META-INF/services</code> are concatenated instead. The manifests, signatures and JAR indexes of the entries
+ * are not included. The module descriptors are not included either, as the merged JAR contains the packages of
+ * multiple modules.
+ * <p>
+ * The merged JAR is stored in the {@linkplain StorageUtils storage directory}, keyed by the implementation version
+ * keys of the entries. It is only recreated if the content of any entry changes, or if the stored JAR was modified.
+ * The task depends on the contents of the stored JAR, so it is rerun if the JAR is modified or deleted.
+ * <p>
+ * If an entry has no implementation version key, the class path is returned without consolidation.
+ */
+public class MavenClassPathConsolidationWorkerTaskFactory
+		implements TaskFactory<ClassPathReference>, Task<ClassPathReference>, Externalizable, TaskIdentifier {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Version of the merging algorithm. Part of the cache key, so the JARs are recreated if the algorithm changes.
+	 */
+	private static final int CONSOLIDATION_VERSION = 1;
+
+	private static final String DIRECTORY_NAME = "consolidated";
+
+	private static final String SERVICES_DIRECTORY = "META-INF/services/";
+	private static final String MULTI_RELEASE_VERSIONS_PREFIX = "META-INF/versions/";
+	private static final String MODULE_INFO_NAME = "module-info.class";
+
+	private static final String MULTI_RELEASE_ATTRIBUTE_NAME = "Multi-Release";
+
+	private StructuredTaskResult classPath;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public MavenClassPathConsolidationWorkerTaskFactory() {
+	}
+
+	public MavenClassPathConsolidationWorkerTaskFactory(StructuredTaskResult classPath) {
+		this.classPath = classPath;
+	}
+
+	@Override
+	public Task<? extends ClassPathReference> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public ClassPathReference run(TaskContext taskcontext) throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
+		}
+		taskcontext.setStandardOutDisplayIdentifier(MavenClassPathTaskFactory.TASK_NAME);
+
+		Object cpobj = classPath.toResult(taskcontext);
+		if (!(cpobj instanceof MavenClassPathReference)) {
+			throw new IllegalArgumentException("Unsupported class path type for consolidation: " + cpobj);
+		}
+		MavenClassPathReference fullclasspath = (MavenClassPathReference) cpobj;
+		Collection<? extends MavenClassPathEntry> entries = fullclasspath.getMavenEntries();
+
+		String key = computeKey(entries);
+		if (key == null) {
+			return reportResult(taskcontext, fullclasspath);
+		}
+		Path directory = StorageUtils.getStorageDirectory(taskcontext.getExecutionContext().getEnvironment())
+				.resolve(DIRECTORY_NAME);
+		StorageUtils.evictUnusedFiles(directory);
+		Path jarpath = directory.resolve(key.substring(0, 2)).resolve(key + ".jar");
+		if (!StorageUtils.isStoredFileReusable(jarpath)) {
+			writeConsolidatedJar(taskcontext, entries, jarpath);
+			SakerLog.log().verbose()
+					.println("Consolidated " + entries.size() + " class path entries into: " + jarpath);
+		}
+		//rerun if the JAR is modified or deleted by someone else
+		taskcontext.getTaskUtilities()
+				.getReportExecutionDependency(new LocalFileContentKeyExecutionProperty(SakerPath.valueOf(jarpath)));
+
+		MavenClassPathEntry resultentry = new MavenClassPathEntry(
+				LocalFileLocation.create(SakerPath.valueOf(jarpath)), key);
+		resultentry.setAbiVersionKey(getAbiVersionKey(entries));
+		List<MavenClassPathEntry> resultentries = new ArrayList<>();
+		resultentries.add(resultentry);
+		return reportResult(taskcontext, new MavenClassPathReference(resultentries));
+	}
+
+	private static ClassPathReference reportResult(TaskContext taskcontext, MavenClassPathReference result) {
+		taskcontext.reportSelfTaskOutputChangeDetector(new MavenClassPathReferenceTaskOutputChangeDetector(result,
+				MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL));
+		return result;
+	}
+
+	/**
+	 * Computes the cache key of the consolidated JAR based on the implementation version keys of the entries.
+	 * 
+	 * @return The key or <code>null</code> if it cannot be determined.
+	 */
+	private static String computeKey(Collection<? extends MavenClassPathEntry> entries) {
+		List<Object> implkeys = new ArrayList<>(entries.size());
+		for (MavenClassPathEntry entry : entries) {
+			Object implkey = entry.getImplementationVersionKey();
+			if (implkey == null) {
+				SakerLog.log().verbose().println(
+						"Class path is not consolidated, no implementation version key for: " + entry.getFileLocation());
+				return null;
+			}
+			implkeys.add(implkey);
+		}
+		//the serialized form is stable between JVMs, unlike the hash codes
+		UnsyncByteArrayOutputStream baos = new UnsyncByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			oos.writeInt(CONSOLIDATION_VERSION);
+			oos.writeObject(implkeys);
+		} catch (IOException e) {
+			SakerLog.log().verbose()
+					.println("Class path is not consolidated, failed to serialize version keys. (" + e + ")");
+			return null;
+		}
+		try {
+			return StringUtils.toHexString(MessageDigest.getInstance("SHA-256").digest(baos.toByteArray()));
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not available.", e);
+		}
+	}
+
+	private static Object getAbiVersionKey(Collection<? extends MavenClassPathEntry> entries) {
+		List<Object> result = new ArrayList<>(entries.size());
+		for (MavenClassPathEntry entry : entries) {
+			Object abikey = entry.getAbiVersionKey();
+			if (abikey == null) {
+				return null;
+			}
+			result.add(abikey);
+		}
+		return result;
+	}
+
+	private static void writeConsolidatedJar(TaskContext taskcontext, Collection<? extends MavenClassPathEntry> entries,
+			Path jarpath) throws IOException {
+		List<Path> paths = new ArrayList<>(entries.size());
+		boolean multirelease = false;
+		for (MavenClassPathEntry entry : entries) {
+			Path path = MavenClassPathIndex.getLocalPath(taskcontext, entry.getFileLocation());
+			if (path == null) {
+				throw new IOException("Class path entry not found: " + entry.getFileLocation());
+			}
+			paths.add(path);
+			if (!multirelease && !Files.isDirectory(path)) {
+				try (JarFile jf = new JarFile(path.toFile(), false)) {
+					Manifest jarmanifest = jf.getManifest();
+					multirelease = jarmanifest != null && "true"
+							.equalsIgnoreCase(jarmanifest.getMainAttributes().getValue(MULTI_RELEASE_ATTRIBUTE_NAME));
+				}
+			}
+		}
+		Manifest manifest = new Manifest();
+		Attributes mainattrs = manifest.getMainAttributes();
+		mainattrs.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (multirelease) {
+			//the versioned directories are merged as well
+			mainattrs.putValue(MULTI_RELEASE_ATTRIBUTE_NAME, "true");
+		}
+
+		Path dir = jarpath.getParent();
+		Files.createDirectories(dir);
+		//write to a temporary file first, so concurrent builds don't see partially written JARs
+		Path tempfile = Files.createTempFile(dir, jarpath.getFileName().toString(), ".tmp");
+		try {
+			Set<String> writtennames = new HashSet<>();
+			Map<String, UnsyncByteArrayOutputStream> services = new LinkedHashMap<>();
+			try (JarOutputStream jaros = new JarOutputStream(Files.newOutputStream(tempfile), manifest)) {
+				for (Path path : paths) {
+					if (Files.isDirectory(path)) {
+						addDirectory(path, jaros, writtennames, services);
+					} else {
+						addJar(path, jaros, writtennames, services);
+					}
+				}
+				for (Map.Entry<String, UnsyncByteArrayOutputStream> entry : services.entrySet()) {
+					jaros.putNextEntry(new ZipEntry(entry.getKey()));
+					entry.getValue().writeTo(jaros);
+					jaros.closeEntry();
+				}
+			}
+			StorageUtils.storeFile(tempfile, jarpath);
+		} finally {
+			Files.deleteIfExists(tempfile);
+		}
+	}
+
+	private static void addJar(Path path, JarOutputStream jaros, Set<String> writtennames,
+			Map<String, UnsyncByteArrayOutputStream> services) throws IOException {
+		try (JarFile jf = new JarFile(path.toFile(), false)) {
+			Enumeration<JarEntry> it = jf.entries();
+			while (it.hasMoreElements()) {
+				JarEntry je = it.nextElement();
+				String name = je.getName();
+				if (je.isDirectory() || isExcluded(name)) {
+					continue;
+				}
+				if (isServiceFile(name)) {
+					try (InputStream is = jf.getInputStream(je)) {
+						appendService(services, name, is);
+					}
+					continue;
+				}
+				if (!writtennames.add(name)) {
+					//shadowed by a preceding entry
+					continue;
+				}
+				jaros.putNextEntry(new ZipEntry(name));
+				try (InputStream is = jf.getInputStream(je)) {
+					StreamUtils.copyStream(is, jaros);
+				}
+				jaros.closeEntry();
+			}
+		}
+	}
+
+	private static void addDirectory(Path directory, JarOutputStream jaros, Set<String> writtennames,
+			Map<String, UnsyncByteArrayOutputStream> services) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (Stream<Path> stream = Files.walk(directory)) {
+			for (Iterator<Path> it = stream.iterator(); it.hasNext();) {
+				Path p = it.next();
+				if (Files.isRegularFile(p)) {
+					files.add(p);
+				}
+			}
+		}
+		//sort for deterministic output
+		files.sort(null);
+		for (Path file : files) {
+			String name = directory.relativize(file).toString().replace('\\', '/');
+			if (isExcluded(name)) {
+				continue;
+			}
+			if (isServiceFile(name)) {
+				try (InputStream is = Files.newInputStream(file)) {
+					appendService(services, name, is);
+				}
+				continue;
+			}
+			if (!writtennames.add(name)) {
+				continue;
+			}
+			jaros.putNextEntry(new ZipEntry(name));
+			Files.copy(file, jaros);
+			jaros.closeEntry();
+		}
+	}
+
+	private static boolean isExcluded(String name) {
+		if (isModuleInfo(name)) {
+			return true;
+		}
+		if (!name.startsWith("META-INF/") || name.indexOf('/', 9) >= 0) {
+			return false;
+		}
+		//the manifest, signatures and index of the entries are not valid for the merged JAR
+		String upper = name.toUpperCase(Locale.ROOT);
+		return upper.equals(JarFile.MANIFEST_NAME) || upper.equals("META-INF/INDEX.LIST") || upper.endsWith(".SF")
+				|| upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC")
+				|| upper.startsWith("META-INF/SIG-");
+	}
+
+	private static boolean isModuleInfo(String name) {
+		if (name.equals(MODULE_INFO_NAME)) {
+			return true;
+		}
+		//META-INF/versions/<version>/module-info.class
+		if (!name.startsWith(MULTI_RELEASE_VERSIONS_PREFIX) || !name.endsWith("/" + MODULE_INFO_NAME)) {
+			return false;
+		}
+		int versionend = name.indexOf('/', MULTI_RELEASE_VERSIONS_PREFIX.length());
+		return versionend == name.length() - MODULE_INFO_NAME.length() - 1;
+	}
+
+	private static boolean isServiceFile(String name) {
+		return name.startsWith(SERVICES_DIRECTORY) && name.length() > SERVICES_DIRECTORY.length()
+				&& name.indexOf('/', SERVICES_DIRECTORY.length()) < 0;
+	}
+
+	private static void appendService(Map<String, UnsyncByteArrayOutputStream> services, String name,
+			InputStream is) throws IOException {
+		UnsyncByteArrayOutputStream buf = services.computeIfAbsent(name, x -> new UnsyncByteArrayOutputStream());
+		StreamUtils.copyStream(is, buf);
+		//make sure the next file starts on a new line
+		buf.write('\n');
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(classPath);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		classPath = (StructuredTaskResult) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((classPath == null) ? 0 : classPath.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MavenClassPathConsolidationWorkerTaskFactory other = (MavenClassPathConsolidationWorkerTaskFactory) obj;
+		if (classPath == null) {
+			if (other.classPath != null)
+				return false;
+		} else if (!classPath.equals(other.classPath))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + classPath + "]";
+	}
+}
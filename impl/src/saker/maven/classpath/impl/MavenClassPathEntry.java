@@ -17,6 +17,7 @@ package saker.maven.classpath.impl;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.Collection;
@@ -26,17 +27,32 @@ import saker.build.task.utils.StructuredTaskResult;
 import saker.java.compiler.api.classpath.ClassPathEntry;
 import saker.java.compiler.api.classpath.ClassPathReference;
 import saker.java.compiler.api.classpath.JavaSourceDirectory;
+import saker.maven.classpath.impl.util.CompactExternalReader;
+import saker.maven.classpath.impl.util.CompactExternalWriter;
 import saker.std.api.file.location.FileLocation;
 
 public class MavenClassPathEntry implements ClassPathEntry, Externalizable {
 	private static final long serialVersionUID = 1L;
 
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int ATTACHMENT_OBJECT = 0;
+	private static final int ATTACHMENT_SOURCE_RETRIEVING = 1;
+
 	private FileLocation fileLocation;
 	private Object implementationVersionKey;
+	private Object abiVersionKey;
 
 	private StructuredTaskResult sourceAttachment;
 	private StructuredTaskResult documentationAttachment;
 
+	/**
+	 * The lazily computed hash code, 0 if not yet computed.
+	 * <p>
+	 * Reset when any of the fields are modified.
+	 */
+	private transient int hashCode;
+
 	/**
 	 * For {@link Externalizable}.
 	 */
@@ -58,18 +74,27 @@ public class MavenClassPathEntry implements ClassPathEntry, Externalizable {
 
 	public void setDocumentationAttachment(StructuredTaskResult documentationAttachment) {
 		this.documentationAttachment = documentationAttachment;
+		this.hashCode = 0;
 	}
 
 	public void setSourceAttachment(StructuredTaskResult sourceAttachment) {
 		this.sourceAttachment = sourceAttachment;
+		this.hashCode = 0;
 	}
 
 	public void setFileLocation(FileLocation fileLocation) {
 		this.fileLocation = fileLocation;
+		this.hashCode = 0;
 	}
 
 	public void setImplementationVersionKey(Object implementationVersionKey) {
 		this.implementationVersionKey = implementationVersionKey;
+		this.hashCode = 0;
+	}
+
+	public void setAbiVersionKey(Object abiVersionKey) {
+		this.abiVersionKey = abiVersionKey;
+		this.hashCode = 0;
 	}
 
 	public boolean hasInput() {
@@ -93,7 +118,7 @@ public class MavenClassPathEntry implements ClassPathEntry, Externalizable {
 
 	@Override
 	public Object getAbiVersionKey() {
-		return null;
+		return abiVersionKey;
 	}
 
 	@Override
@@ -113,24 +138,76 @@ public class MavenClassPathEntry implements ClassPathEntry, Externalizable {
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		out.writeObject(fileLocation);
-		out.writeObject(implementationVersionKey);
-		out.writeObject(sourceAttachment);
-		out.writeObject(documentationAttachment);
+		CompactExternalWriter writer = new CompactExternalWriter(out);
+		writer.writeFormatVersion(FORMAT_VERSION);
+		writeCompactExternal(writer);
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-		fileLocation = (FileLocation) in.readObject();
+		CompactExternalReader reader = new CompactExternalReader(in);
+		reader.readFormatVersion(FORMAT_VERSION);
+		readCompactExternal(reader);
+	}
+
+	void writeCompactExternal(CompactExternalWriter out) throws IOException {
+		out.writeFileLocation(fileLocation);
+		out.writeObject(implementationVersionKey);
+		out.writeObject(abiVersionKey);
+		writeAttachment(out, sourceAttachment);
+		writeAttachment(out, documentationAttachment);
+	}
+
+	void readCompactExternal(CompactExternalReader in) throws IOException, ClassNotFoundException {
+		fileLocation = in.readFileLocation();
 		implementationVersionKey = in.readObject();
-		sourceAttachment = (StructuredTaskResult) in.readObject();
-		documentationAttachment = (StructuredTaskResult) in.readObject();
+		abiVersionKey = in.readObject();
+		sourceAttachment = readAttachment(in);
+		documentationAttachment = readAttachment(in);
+		hashCode = 0;
+	}
+
+	private static void writeAttachment(CompactExternalWriter out, StructuredTaskResult attachment)
+			throws IOException {
+		if (attachment instanceof SourceAttachmentRetrievingStructuredTaskResult) {
+			out.writeByte(ATTACHMENT_SOURCE_RETRIEVING);
+			((SourceAttachmentRetrievingStructuredTaskResult) attachment).writeCompactExternal(out);
+			return;
+		}
+		out.writeByte(ATTACHMENT_OBJECT);
+		out.writeObject(attachment);
+	}
+
+	private static StructuredTaskResult readAttachment(CompactExternalReader in)
+			throws IOException, ClassNotFoundException {
+		int kind = in.readByte();
+		switch (kind) {
+			case ATTACHMENT_SOURCE_RETRIEVING: {
+				return SourceAttachmentRetrievingStructuredTaskResult.readCompactExternal(in);
+			}
+			case ATTACHMENT_OBJECT: {
+				return (StructuredTaskResult) in.readObject();
+			}
+			default: {
+				throw new InvalidObjectException("Invalid attachment kind: " + kind);
+			}
+		}
 	}
 
 	@Override
 	public int hashCode() {
+		int result = hashCode;
+		if (result == 0) {
+			result = computeHashCode();
+			hashCode = result;
+		}
+		return result;
+	}
+
+	private int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
+		result = prime * result + ((abiVersionKey == null) ? 0 : abiVersionKey.hashCode());
 		result = prime * result + ((documentationAttachment == null) ? 0 : documentationAttachment.hashCode());
 		result = prime * result + ((implementationVersionKey == null) ? 0 : implementationVersionKey.hashCode());
 		result = prime * result + ((fileLocation == null) ? 0 : fileLocation.hashCode());
@@ -147,6 +224,13 @@ public class MavenClassPathEntry implements ClassPathEntry, Externalizable {
 		if (getClass() != obj.getClass())
 			return false;
 		MavenClassPathEntry other = (MavenClassPathEntry) obj;
+		if (hashCode() != other.hashCode())
+			return false;
+		if (abiVersionKey == null) {
+			if (other.abiVersionKey != null)
+				return false;
+		} else if (!abiVersionKey.equals(other.abiVersionKey))
+			return false;
 		if (documentationAttachment == null) {
 			if (other.documentationAttachment != null)
 				return false;
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import saker.build.file.DirectoryVisitPredicate;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.TaskContext;
+import saker.maven.classpath.impl.util.ParallelUtils;
+import saker.maven.classpath.impl.util.ZipCentralDirectoryReader;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import saker.std.api.file.location.FileLocationVisitor;
+import saker.std.api.file.location.LocalFileLocation;
+
+/**
+ * Index of the packages and classes in the entries of a class path.
+ * <p>
+ * The index maps the package names to the class path entries that contain classes in them, and optionally the class
+ * names to the first entry that contains them. It can be used to find the entry of a class without scanning the class
+ * path entries one after the other.
+ * <p>
+ * The contents of JARs are determined by reading their central directory, and are cached based on the implementation
+ * version keys of the entries.
+ */
+public final class MavenClassPathIndex {
+	private static final int CACHE_SIZE = 1024;
+	/**
+	 * Contents of the JARs mapped to the implementation version keys of the entries.
+	 */
+	private static final Map<Object, EntryContents> CONTENTS_CACHE = Collections
+			.synchronizedMap(new LinkedHashMap<Object, EntryContents>(64, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Object, EntryContents> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+
+	private static final String CLASS_FILE_EXTENSION = ".class";
+	private static final String MULTI_RELEASE_VERSIONS_PREFIX = "META-INF/versions/";
+
+	private final Map<String, List<MavenClassPathEntry>> packageEntries;
+	private final Map<String, MavenClassPathEntry> classEntries;
+	private final Map<String, Set<String>> packageClasses;
+
+	private MavenClassPathIndex(Map<String, List<MavenClassPathEntry>> packageEntries,
+			Map<String, MavenClassPathEntry> classEntries, Map<String, Set<String>> packageClasses) {
+		this.packageEntries = packageEntries;
+		this.classEntries = classEntries;
+		this.packageClasses = packageClasses;
+	}
+
+	/**
+	 * Creates the index for the given class path entries.
+	 * <p>
+	 * The entries that cannot be read are omitted from the index.
+	 * 
+	 * @param taskcontext
+	 *            The task context to use when accessing execution files.
+	 * @param entries
+	 *            The class path entries in class path order.
+	 * @param includeclasses
+	 *            <code>true</code> to index the class names as well.
+	 * @return The created index.
+	 * @throws Exception
+	 *             If the concurrent indexing fails.
+	 */
+	public static MavenClassPathIndex create(TaskContext taskcontext,
+			Collection<? extends MavenClassPathEntry> entries, boolean includeclasses) throws Exception {
+		List<MavenClassPathEntry> entrylist = new ArrayList<>(entries);
+		List<EntryContents> contents = ParallelUtils.mapParallel(entrylist,
+				entry -> getEntryContents(taskcontext, entry));
+
+		Map<String, List<MavenClassPathEntry>> packageentries = new HashMap<>();
+		Map<String, MavenClassPathEntry> classentries = includeclasses ? new HashMap<>() : null;
+		Map<String, Set<String>> packageclasses = includeclasses ? new HashMap<>() : null;
+		for (int i = 0; i < entrylist.size(); i++) {
+			EntryContents entrycontents = contents.get(i);
+			if (entrycontents == null) {
+				continue;
+			}
+			MavenClassPathEntry entry = entrylist.get(i);
+			for (String pkg : entrycontents.packageNames) {
+				packageentries.computeIfAbsent(pkg, x -> new ArrayList<>(1)).add(entry);
+			}
+			if (classentries != null) {
+				for (String cname : entrycontents.classNames) {
+					//the first entry on the class path wins
+					if (classentries.putIfAbsent(cname, entry) == null) {
+						int lastdot = cname.lastIndexOf('.');
+						packageclasses.computeIfAbsent(lastdot < 0 ? "" : cname.substring(0, lastdot),
+								x -> new LinkedHashSet<>()).add(cname);
+					}
+				}
+			}
+		}
+		return new MavenClassPathIndex(packageentries, classentries, packageclasses);
+	}
+
+	/**
+	 * Gets the class path entries that contain classes in the given package.
+	 * 
+	 * @param packagename
+	 *            The package name. (E.g. <code>java.util</code>, or empty string for the default package.)
+	 * @return The entries in class path order. Empty if no entries contain the package.
+	 */
+	public List<MavenClassPathEntry> getPackageEntries(String packagename) {
+		List<MavenClassPathEntry> result = packageEntries.get(packagename);
+		if (result == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Checks if the class names were indexed.
+	 * 
+	 * @return <code>true</code> if {@link #getClassEntry(String)} can be used.
+	 */
+	public boolean isClassesIndexed() {
+		return classEntries != null;
+	}
+
+	/**
+	 * Gets the first class path entry that contains the class with the given name.
+	 * 
+	 * @param classname
+	 *            The binary name of the class. (E.g. <code>java.util.Map$Entry</code>.)
+	 * @return The entry or <code>null</code> if not found.
+	 * @throws IllegalStateException
+	 *             If the class names were not indexed.
+	 */
+	public MavenClassPathEntry getClassEntry(String classname) throws IllegalStateException {
+		if (classEntries == null) {
+			throw new IllegalStateException("Class names were not indexed.");
+		}
+		return classEntries.get(classname);
+	}
+
+	/**
+	 * Gets the names of the classes in the given package.
+	 * 
+	 * @param packagename
+	 *            The package name. (E.g. <code>java.util</code>, or empty string for the default package.)
+	 * @return The binary names of the classes. Empty if no entries contain the package.
+	 * @throws IllegalStateException
+	 *             If the class names were not indexed.
+	 */
+	public Set<String> getPackageClassNames(String packagename) throws IllegalStateException {
+		if (packageClasses == null) {
+			throw new IllegalStateException("Class names were not indexed.");
+		}
+		Set<String> result = packageClasses.get(packagename);
+		if (result == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Gets the packages that are present in multiple class path entries.
+	 * 
+	 * @return The split package names mapped to the entries that contain them, sorted by package name.
+	 */
+	public Map<String, List<MavenClassPathEntry>> getSplitPackages() {
+		Map<String, List<MavenClassPathEntry>> result = new TreeMap<>();
+		for (Map.Entry<String, List<MavenClassPathEntry>> entry : packageEntries.entrySet()) {
+			if (entry.getValue().size() > 1) {
+				result.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[packages=" + packageEntries.size()
+				+ (classEntries != null ? ", classes=" + classEntries.size() : "") + "]";
+	}
+
+	private static EntryContents getEntryContents(TaskContext taskcontext, MavenClassPathEntry entry) {
+		Object implkey = entry.getImplementationVersionKey();
+		if (implkey != null) {
+			EntryContents cached = CONTENTS_CACHE.get(implkey);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		FileLocation location = entry.getFileLocation();
+		Path path = getLocalPath(taskcontext, location);
+		if (path == null) {
+			return null;
+		}
+		EntryContents result;
+		try {
+			result = readContents(path);
+		} catch (IOException e) {
+			logFailure(location, e);
+			return null;
+		}
+		if (implkey != null) {
+			CONTENTS_CACHE.put(implkey, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the local file system path of a class path entry location.
+	 * <p>
+	 * Execution files are mirrored to the local file system.
+	 * 
+	 * @param taskcontext
+	 *            The task context.
+	 * @param location
+	 *            The file location.
+	 * @return The path or <code>null</code> if it cannot be determined.
+	 */
+	static Path getLocalPath(TaskContext taskcontext, FileLocation location) {
+		if (location == null) {
+			return null;
+		}
+		Path[] path = { null };
+		try {
+			location.accept(new FileLocationVisitor() {
+				@Override
+				public void visit(LocalFileLocation loc) {
+					path[0] = LocalFileProvider.toRealPath(loc.getLocalPath());
+				}
+
+				@Override
+				public void visit(ExecutionFileLocation loc) {
+					try {
+						path[0] = taskcontext.getTaskUtilities().mirrorFileAtPath(loc.getPath(),
+								DirectoryVisitPredicate.everything());
+					} catch (IOException e) {
+						logFailure(location, e);
+					}
+				}
+			});
+		} catch (UnsupportedOperationException e) {
+			//unsupported file location type
+			return null;
+		}
+		return path[0];
+	}
+
+	private static EntryContents readContents(Path path) throws IOException {
+		EntryContents result = new EntryContents();
+		if (Files.isDirectory(path)) {
+			try (Stream<Path> files = Files.walk(path)) {
+				files.filter(Files::isRegularFile).forEach(
+						f -> result.add(path.relativize(f).toString().replace(f.getFileSystem().getSeparator(), "/")));
+			}
+		} else {
+			for (String name : ZipCentralDirectoryReader.readEntryNames(path)) {
+				result.add(name);
+			}
+		}
+		return result;
+	}
+
+	private static void logFailure(FileLocation location, Exception e) {
+		SakerLog.log().verbose().println("Failed to index class path entry: " + location + " (" + e + ")");
+	}
+
+	private static final class EntryContents {
+		private final Collection<String> packageNames = new HashSet<>();
+		private final Collection<String> classNames = new ArrayList<>();
+
+		void add(String name) {
+			if (!name.endsWith(CLASS_FILE_EXTENSION)) {
+				return;
+			}
+			if (name.startsWith(MULTI_RELEASE_VERSIONS_PREFIX)) {
+				//versioned class of a multi-release JAR, strip the META-INF/versions/N/ prefix
+				int idx = name.indexOf('/', MULTI_RELEASE_VERSIONS_PREFIX.length());
+				if (idx < 0) {
+					return;
+				}
+				name = name.substring(idx + 1);
+			} else if (name.startsWith("META-INF/")) {
+				return;
+			}
+			String binaryname = name.substring(0, name.length() - CLASS_FILE_EXTENSION.length()).replace('/', '.');
+			int lastdot = binaryname.lastIndexOf('.');
+			String simplename = binaryname.substring(lastdot + 1);
+			if ("module-info".equals(simplename)) {
+				return;
+			}
+			packageNames.add(lastdot < 0 ? "" : binaryname.substring(0, lastdot));
+			if (!"package-info".equals(simplename)) {
+				classNames.add(binaryname);
+			}
+		}
+	}
+}
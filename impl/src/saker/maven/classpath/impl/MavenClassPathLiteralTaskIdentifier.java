@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import saker.build.task.identifier.TaskIdentifier;
+
+/**
+ * Task identifier of the {@link MavenClassPathLiteralWorkerTaskFactory} started by a frontend task.
+ * <p>
+ * The identifier is based on the frontend task, not on the contents of the class path. If the class path changes,
+ * the same task is re-run with the new contents, and the consumers that depend on it decide whether the change is
+ * relevant to them based on the selected fields. If the class path was part of the identifier, any change would
+ * result in a different task and a different frontend result, regardless of the selected fields.
+ */
+public final class MavenClassPathLiteralTaskIdentifier implements TaskIdentifier, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private TaskIdentifier frontendTaskId;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public MavenClassPathLiteralTaskIdentifier() {
+	}
+
+	public MavenClassPathLiteralTaskIdentifier(TaskIdentifier frontendTaskId) {
+		this.frontendTaskId = frontendTaskId;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(frontendTaskId);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		frontendTaskId = (TaskIdentifier) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((frontendTaskId == null) ? 0 : frontendTaskId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MavenClassPathLiteralTaskIdentifier other = (MavenClassPathLiteralTaskIdentifier) obj;
+		if (frontendTaskId == null) {
+			if (other.frontendTaskId != null)
+				return false;
+		} else if (!frontendTaskId.equals(other.frontendTaskId))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + frontendTaskId + "]";
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.trace.BuildTrace;
+import saker.java.compiler.api.classpath.ClassPathReference;
+
+/**
+ * Task that outputs an already constructed {@link MavenClassPathReference}.
+ * <p>
+ * Used when the class path is created by the frontend task itself, so the consumers can depend on it via
+ * {@link MavenClassPathReferenceStructuredTaskResult} in the same way as for the other class path tasks.
+ * <p>
+ * The task is started with a {@link MavenClassPathLiteralTaskIdentifier}.
+ */
+public class MavenClassPathLiteralWorkerTaskFactory
+		implements TaskFactory<ClassPathReference>, Task<ClassPathReference>, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private MavenClassPathReference classPath;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public MavenClassPathLiteralWorkerTaskFactory() {
+	}
+
+	public MavenClassPathLiteralWorkerTaskFactory(MavenClassPathReference classPath) {
+		this.classPath = classPath;
+	}
+
+	@Override
+	public Task<? extends ClassPathReference> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public ClassPathReference run(TaskContext taskcontext) throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
+		}
+		taskcontext.reportSelfTaskOutputChangeDetector(new MavenClassPathReferenceTaskOutputChangeDetector(classPath,
+				MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL));
+		return classPath;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(classPath);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		classPath = (MavenClassPathReference) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((classPath == null) ? 0 : classPath.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MavenClassPathLiteralWorkerTaskFactory other = (MavenClassPathLiteralWorkerTaskFactory) obj;
+		if (classPath == null) {
+			if (other.classPath != null)
+				return false;
+		} else if (!classPath.equals(other.classPath))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + classPath + "]";
+	}
+}
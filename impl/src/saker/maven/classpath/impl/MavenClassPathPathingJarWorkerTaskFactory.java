@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.task.utils.StructuredTaskResult;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
+import saker.build.trace.BuildTrace;
+import saker.java.compiler.api.classpath.ClassPathReference;
+import saker.maven.classpath.impl.util.ParallelUtils;
+import saker.maven.classpath.impl.util.StorageUtils;
+import saker.maven.classpath.impl.util.ZipCentralDirectoryReader;
+import saker.maven.classpath.main.MavenClassPathTaskFactory;
+import saker.std.api.file.location.LocalFileLocation;
+
+/**
+ * Task that creates a pathing JAR for a class path.
+ * <p>
+ * The pathing JAR only contains a manifest with a <code>Class-Path</code> attribute that references the entries of
+ * the class path by their absolute <code>file:</code> URIs. It can be used as the single class path element when
+ * launching a JVM.
+ * <p>
+ * The URIs are the local paths of the entries on the machine that runs this task. The task is not remote
+ * dispatchable, so in a build cluster these are the paths on the coordinator machine. The pathing JAR is only usable
+ * on the same machine. As the JAR is keyed by its contents, a new JAR is created if the entries are moved.
+ * <p>
+ * If all entries are JARs, a <code>META-INF/INDEX.LIST</code> JAR index is included as well. It maps the packages to
+ * the JARs that contain them, so the class loader doesn't need to open and probe the JARs in order. (The JAR index is
+ * ignored by the class loader on Java 18 and later, in which case only the <code>Class-Path</code> attribute is
+ * used.) Directory entries cannot be part of the JAR index, and the index overrides the <code>Class-Path</code>
+ * attribute, so it is omitted if the class path contains directories.
+ * <p>
+ * The JAR is stored in the {@linkplain StorageUtils storage directory}, keyed by the hash of its contents. The stored
+ * JAR is verified before reuse, and the task depends on its contents, so it is rerun if the JAR is modified or
+ * deleted.
+ */
+public class MavenClassPathPathingJarWorkerTaskFactory
+		implements TaskFactory<ClassPathReference>, Task<ClassPathReference>, Externalizable, TaskIdentifier {
+	private static final long serialVersionUID = 1L;
+
+	private static final String DIRECTORY_NAME = "pathing";
+
+	private static final String INDEX_NAME = "META-INF/INDEX.LIST";
+	private static final String MULTI_RELEASE_VERSIONS_PREFIX = "META-INF/versions/";
+
+	private StructuredTaskResult classPath;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public MavenClassPathPathingJarWorkerTaskFactory() {
+	}
+
+	public MavenClassPathPathingJarWorkerTaskFactory(StructuredTaskResult classPath) {
+		this.classPath = classPath;
+	}
+
+	@Override
+	public Task<? extends ClassPathReference> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public ClassPathReference run(TaskContext taskcontext) throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_WORKER);
+		}
+		taskcontext.setStandardOutDisplayIdentifier(MavenClassPathTaskFactory.TASK_NAME);
+
+		Object cpobj = classPath.toResult(taskcontext);
+		if (!(cpobj instanceof MavenClassPathReference)) {
+			throw new IllegalArgumentException("Unsupported class path type for pathing JAR: " + cpobj);
+		}
+		List<MavenClassPathEntry> entries = new ArrayList<>(((MavenClassPathReference) cpobj).getMavenEntries());
+
+		List<Path> paths = new ArrayList<>(entries.size());
+		boolean indexable = true;
+		for (MavenClassPathEntry entry : entries) {
+			Path path = MavenClassPathIndex.getLocalPath(taskcontext, entry.getFileLocation());
+			if (path == null) {
+				throw new IOException("Class path entry not found: " + entry.getFileLocation());
+			}
+			paths.add(path);
+			if (Files.isDirectory(path) || !path.getFileName().toString().endsWith(".jar")) {
+				//the JAR index only recognizes files with the .jar extension
+				indexable = false;
+			}
+		}
+
+		StringBuilder classpathsb = new StringBuilder();
+		for (Path path : paths) {
+			if (classpathsb.length() > 0) {
+				classpathsb.append(' ');
+			}
+			//the URI of directories end with a slash, as required by the class loader
+			classpathsb.append(path.toUri().toString());
+		}
+		Manifest manifest = new Manifest();
+		Attributes mainattrs = manifest.getMainAttributes();
+		mainattrs.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		mainattrs.put(Attributes.Name.CLASS_PATH, classpathsb.toString());
+
+		byte[] index = indexable ? createIndex(paths) : null;
+
+		UnsyncByteArrayOutputStream contentbytes = new UnsyncByteArrayOutputStream();
+		manifest.write(contentbytes);
+		if (index != null) {
+			contentbytes.write(index);
+		}
+		String key;
+		try {
+			key = StringUtils.toHexString(MessageDigest.getInstance("SHA-256").digest(contentbytes.toByteArray()));
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not available.", e);
+		}
+		Path directory = StorageUtils.getStorageDirectory(taskcontext.getExecutionContext().getEnvironment())
+				.resolve(DIRECTORY_NAME);
+		StorageUtils.evictUnusedFiles(directory);
+		Path jarpath = directory.resolve(key.substring(0, 2)).resolve(key + ".jar");
+		if (!StorageUtils.isStoredFileReusable(jarpath)) {
+			writeJar(jarpath, manifest, index);
+			SakerLog.log().verbose().println("Created pathing JAR for " + entries.size() + " class path entries"
+					+ (index == null ? " without JAR index" : "") + ": " + jarpath);
+		}
+		//rerun if the JAR is modified or deleted by someone else
+		taskcontext.getTaskUtilities()
+				.getReportExecutionDependency(new LocalFileContentKeyExecutionProperty(SakerPath.valueOf(jarpath)));
+
+		//the referenced files are part of the implementation and ABI, not only the pathing JAR itself
+		List<Object> implkeys = new ArrayList<>(entries.size() + 1);
+		List<Object> abikeys = new ArrayList<>(entries.size() + 1);
+		implkeys.add(key);
+		abikeys.add(key);
+		for (MavenClassPathEntry entry : entries) {
+			implkeys.add(entry.getImplementationVersionKey());
+			Object abikey = entry.getAbiVersionKey();
+			if (abikey == null) {
+				abikeys = null;
+			} else if (abikeys != null) {
+				abikeys.add(abikey);
+			}
+		}
+		MavenClassPathEntry resultentry = new MavenClassPathEntry(
+				LocalFileLocation.create(SakerPath.valueOf(jarpath)), implkeys);
+		resultentry.setAbiVersionKey(abikeys);
+		List<MavenClassPathEntry> resultentries = new ArrayList<>();
+		resultentries.add(resultentry);
+		MavenClassPathReference result = new MavenClassPathReference(resultentries);
+		taskcontext.reportSelfTaskOutputChangeDetector(new MavenClassPathReferenceTaskOutputChangeDetector(result,
+				MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL));
+		return result;
+	}
+
+	/**
+	 * Creates the contents of the JAR index for the given JARs.
+	 * <p>
+	 * The index uses the same format and package naming rules as the <code>jar -i</code> command.
+	 */
+	private static byte[] createIndex(List<Path> jars) throws Exception {
+		List<Set<String>> jarpackages = ParallelUtils.mapParallel(jars, jar -> {
+			Set<String> packages = new TreeSet<>();
+			for (String name : ZipCentralDirectoryReader.readEntryNames(jar)) {
+				if (name.equals("META-INF/") || name.equals(INDEX_NAME) || name.equals(JarFile.MANIFEST_NAME)
+						|| name.startsWith(MULTI_RELEASE_VERSIONS_PREFIX)) {
+					continue;
+				}
+				int idx = name.lastIndexOf('/');
+				//the files in the root are indexed by their names
+				packages.add(idx < 0 ? name : name.substring(0, idx));
+			}
+			return packages;
+		});
+		StringBuilder sb = new StringBuilder();
+		sb.append("JarIndex-Version: 1.0\n\n");
+		for (int i = 0; i < jars.size(); i++) {
+			sb.append(jars.get(i).toUri().toString());
+			sb.append('\n');
+			for (String pkg : jarpackages.get(i)) {
+				sb.append(pkg);
+				sb.append('\n');
+			}
+			sb.append('\n');
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void writeJar(Path jarpath, Manifest manifest, byte[] index) throws IOException {
+		Path dir = jarpath.getParent();
+		Files.createDirectories(dir);
+		//write to a temporary file first, so concurrent builds don't see partially written JARs
+		Path tempfile = Files.createTempFile(dir, jarpath.getFileName().toString(), ".tmp");
+		try {
+			try (JarOutputStream jaros = new JarOutputStream(Files.newOutputStream(tempfile), manifest)) {
+				if (index != null) {
+					jaros.putNextEntry(new ZipEntry(INDEX_NAME));
+					jaros.write(index);
+					jaros.closeEntry();
+				}
+			}
+			StorageUtils.storeFile(tempfile, jarpath);
+		} finally {
+			Files.deleteIfExists(tempfile);
+		}
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(classPath);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		classPath = (StructuredTaskResult) in.readObject();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((classPath == null) ? 0 : classPath.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MavenClassPathPathingJarWorkerTaskFactory other = (MavenClassPathPathingJarWorkerTaskFactory) obj;
+		if (classPath == null) {
+			if (other.classPath != null)
+				return false;
+		} else if (!classPath.equals(other.classPath))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + classPath + "]";
+	}
+}
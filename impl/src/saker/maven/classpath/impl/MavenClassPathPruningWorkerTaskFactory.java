@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import saker.build.file.SakerFile;
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.task.utils.StructuredTaskResult;
+import saker.build.task.utils.dependencies.RecursiveFileCollectionStrategy;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.build.trace.BuildTrace;
+import saker.java.compiler.api.classpath.ClassPathReference;
+import saker.maven.classpath.impl.util.ClassFileInfo;
+import saker.maven.classpath.impl.util.ClassPathUsageAnalyzer;
+import saker.maven.classpath.impl.util.ParallelUtils;
+import saker.maven.classpath.main.MavenClassPathTaskFactory;
+
+/**
+ * Task that removes the entries from a class path that are not used by the Java sources in the given directories.
+ * <p>
+ * The source files are scanned for the classes they may reference using {@link ClassPathUsageAnalyzer}. An entry of
+ * the class path is kept if it contains any of the referenced classes, or any of the classes in their supertypes and
+ * non-private member signatures, transitively. The order of the kept entries is unchanged.
+ * <p>
+ * As the usages are determined from the sources rather than a previous compilation output, a class path entry that a
+ * modified source file starts to use is added back before the sources are compiled. If the directories don't contain
+ * any source files, the class path is not pruned.
+ * <p>
+ * Classes that are only used by annotation processors or only referenced by simple names that are not imported (e.g.
+ * nested classes inherited from a supertype in an other entry) may not be detected, so the pruned class path should
+ * only be used for compilation.
+ */
+public class MavenClassPathPruningWorkerTaskFactory
+		implements TaskFactory<ClassPathReference>, Task<ClassPathReference>, Externalizable, TaskIdentifier {
+	private static final long serialVersionUID = 1L;
+
+	private static final String CLASS_FILE_EXTENSION = ".class";
+	private static final String SOURCE_FILE_EXTENSION = ".java";
+
+	private StructuredTaskResult classPath;
+	private Set<SakerPath> sourceDirectories;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public MavenClassPathPruningWorkerTaskFactory() {
+	}
+
+	public MavenClassPathPruningWorkerTaskFactory(StructuredTaskResult classPath, Set<SakerPath> sourceDirectories) {
+		this.classPath = classPath;
+		this.sourceDirectories = ImmutableUtils.makeImmutableNavigableSet(sourceDirectories);
+	}
+
+	@Override
+	public Task<? extends ClassPathReference> createTask(ExecutionContext executioncontext) {
+		return this;
+	}
+
+	@Override
+	public ClassPathReference run(TaskContext taskcontext) throws Exception {
+		if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+			BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_CONFIGURATION);
+		}
+		taskcontext.setStandardOutDisplayIdentifier(MavenClassPathTaskFactory.TASK_NAME);
+
+		Object cpobj = classPath.toResult(taskcontext);
+		if (!(cpobj instanceof MavenClassPathReference)) {
+			throw new IllegalArgumentException("Unsupported class path type for pruning: " + cpobj);
+		}
+		MavenClassPathReference fullclasspath = (MavenClassPathReference) cpobj;
+
+		List<SakerFile> sourcefiles = new ArrayList<>();
+		for (SakerPath dir : sourceDirectories) {
+			NavigableMap<SakerPath, SakerFile> files = taskcontext.getTaskUtilities()
+					.collectFilesReportInputFileAndAdditionDependency(null, RecursiveFileCollectionStrategy.create(dir));
+			for (SakerFile f : files.values()) {
+				if (f.getName().endsWith(SOURCE_FILE_EXTENSION)) {
+					sourcefiles.add(f);
+				}
+			}
+		}
+		if (sourcefiles.isEmpty()) {
+			//no sources, can't determine what is used
+			return reportResult(taskcontext, fullclasspath);
+		}
+
+		Set<String> packagenames = ConcurrentHashMap.newKeySet();
+		Set<String> qualifiednames = ConcurrentHashMap.newKeySet();
+		ParallelUtils.mapParallel(sourcefiles, f -> {
+			ClassPathUsageAnalyzer.scanSource(f.getContent(), packagenames, qualifiednames);
+			return null;
+		});
+
+		Collection<? extends MavenClassPathEntry> entries = fullclasspath.getMavenEntries();
+		MavenClassPathIndex index = fullclasspath.getIndex(taskcontext, true);
+
+		Set<MavenClassPathEntry> usedentries;
+		Map<MavenClassPathEntry, ZipFile> openedjars = new HashMap<>();
+		try {
+			usedentries = ClassPathUsageAnalyzer.collectUsedEntries(packagenames, qualifiednames,
+					new ClassPathUsageAnalyzer.ClassPathLookup<MavenClassPathEntry>() {
+						@Override
+						public MavenClassPathEntry getClassEntry(String classname) {
+							return index.getClassEntry(classname);
+						}
+
+						@Override
+						public Collection<String> getPackageClassNames(String packagename) {
+							return index.getPackageClassNames(packagename);
+						}
+
+						@Override
+						public ClassFileInfo readClass(MavenClassPathEntry entry, String classname) {
+							return MavenClassPathPruningWorkerTaskFactory.readClass(taskcontext, entry,
+									classname.replace('.', '/'), openedjars);
+						}
+					});
+		} finally {
+			for (ZipFile zf : openedjars.values()) {
+				try {
+					zf.close();
+				} catch (IOException e) {
+					//ignore
+				}
+			}
+		}
+
+		List<MavenClassPathEntry> resultentries = new ArrayList<>();
+		for (MavenClassPathEntry entry : entries) {
+			if (usedentries.contains(entry)) {
+				resultentries.add(entry);
+			}
+		}
+		SakerLog.log().verbose().println("Pruned class path from " + entries.size() + " to " + resultentries.size()
+				+ " entries based on: " + sourceDirectories);
+		return reportResult(taskcontext, new MavenClassPathReference(resultentries));
+	}
+
+	private static ClassPathReference reportResult(TaskContext taskcontext, MavenClassPathReference result) {
+		taskcontext.reportSelfTaskOutputChangeDetector(new MavenClassPathReferenceTaskOutputChangeDetector(result,
+				MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL));
+		return result;
+	}
+
+	private static ClassFileInfo readClass(TaskContext taskcontext, MavenClassPathEntry entry, String internalname,
+			Map<MavenClassPathEntry, ZipFile> openedjars) {
+		String entryname = internalname + CLASS_FILE_EXTENSION;
+		try {
+			ZipFile zf = openedjars.get(entry);
+			if (zf == null) {
+				Path path = MavenClassPathIndex.getLocalPath(taskcontext, entry.getFileLocation());
+				if (path == null) {
+					return null;
+				}
+				if (Files.isDirectory(path)) {
+					Path classfile = path.resolve(entryname);
+					if (!Files.isRegularFile(classfile)) {
+						return null;
+					}
+					try (InputStream is = Files.newInputStream(classfile)) {
+						return ClassFileInfo.parse(is);
+					}
+				}
+				zf = new ZipFile(path.toFile());
+				openedjars.put(entry, zf);
+			}
+			ZipEntry ze = zf.getEntry(entryname);
+			if (ze == null) {
+				//may be in a versioned directory of a multi-release JAR, the base version is enough for supertypes
+				return null;
+			}
+			try (InputStream is = zf.getInputStream(ze)) {
+				return ClassFileInfo.parse(is);
+			}
+		} catch (IOException e) {
+			SakerLog.log().verbose().println(
+					"Failed to read class " + internalname + " from: " + entry.getFileLocation() + " (" + e + ")");
+			return null;
+		}
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(classPath);
+		out.writeObject(sourceDirectories);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		classPath = (StructuredTaskResult) in.readObject();
+		@SuppressWarnings("unchecked")
+		Set<SakerPath> dirs = (Set<SakerPath>) in.readObject();
+		sourceDirectories = dirs;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((classPath == null) ? 0 : classPath.hashCode());
+		result = prime * result + ((sourceDirectories == null) ? 0 : sourceDirectories.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MavenClassPathPruningWorkerTaskFactory other = (MavenClassPathPruningWorkerTaskFactory) obj;
+		if (classPath == null) {
+			if (other.classPath != null)
+				return false;
+		} else if (!classPath.equals(other.classPath))
+			return false;
+		if (sourceDirectories == null) {
+			if (other.sourceDirectories != null)
+				return false;
+		} else if (!sourceDirectories.equals(other.sourceDirectories))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + sourceDirectories + "]";
+	}
+}
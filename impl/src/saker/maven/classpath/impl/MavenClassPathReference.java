@@ -17,18 +17,60 @@ package saker.maven.classpath.impl;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
-import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.build.task.TaskContext;
 import saker.java.compiler.api.classpath.ClassPathEntry;
 import saker.java.compiler.api.classpath.ClassPathReference;
+import saker.maven.classpath.impl.util.CompactExternalReader;
+import saker.maven.classpath.impl.util.CompactExternalWriter;
 
+/**
+ * Class path consisting of Maven class path entries.
+ * <p>
+ * The class path may include other class path references as its elements. The included references are not copied,
+ * but shared with this class path, and their entries are part of this class path at the position of the reference.
+ * <p>
+ * The {@linkplain ClassPathEntry#getAdditionalClassPathReferences() additional references} of the included entries are
+ * kept on the entries, and are not part of {@link #getEntries()}. They are processed transitively by the consumers of
+ * the class path, and by {@link #getMavenEntries()}.
+ */
 public class MavenClassPathReference implements ClassPathReference, Externalizable {
 	private static final long serialVersionUID = 1L;
 
-	private Collection<? extends MavenClassPathEntry> entries;
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int ELEMENT_ENTRY = 0;
+	private static final int ELEMENT_REFERENCE = 1;
+
+	/**
+	 * The elements of the class path in order.
+	 * <p>
+	 * Each element is either a {@link MavenClassPathEntry} or an included {@link ClassPathReference}.
+	 */
+	private Collection<?> elements;
+
+	private transient int hashCode;
+	/**
+	 * The entries of the class path, including the entries of the included references.
+	 * <p>
+	 * Same as {@link #elements} if there are no included references.
+	 */
+	private transient volatile Collection<? extends ClassPathEntry> flattenedEntries;
+	/**
+	 * The lazily created index of the class path.
+	 */
+	private transient volatile MavenClassPathIndex index;
 
 	/**
 	 * For {@link Externalizable}.
@@ -37,38 +79,227 @@ public class MavenClassPathReference implements ClassPathReference, Externalizab
 	}
 
 	public MavenClassPathReference(Collection<? extends MavenClassPathEntry> entries) {
-		this.entries = entries;
+		this.elements = entries;
+		this.hashCode = computeHashCode();
+	}
+
+	/**
+	 * Creates a class path that includes other class path references.
+	 * 
+	 * @param elements
+	 *            The elements of the class path in order. Each element must be a {@link MavenClassPathEntry} or a
+	 *            {@link ClassPathReference}.
+	 * @return The created class path.
+	 * @throws IllegalArgumentException
+	 *             If an element has an invalid type.
+	 */
+	public static MavenClassPathReference createComposite(List<?> elements) throws IllegalArgumentException {
+		for (Object elem : elements) {
+			if (!(elem instanceof MavenClassPathEntry) && !(elem instanceof ClassPathReference)) {
+				throw new IllegalArgumentException("Invalid class path element: " + elem);
+			}
+		}
+		MavenClassPathReference result = new MavenClassPathReference();
+		result.elements = Collections.unmodifiableList(elements);
+		result.hashCode = result.computeHashCode();
+		return result;
 	}
 
 	@Override
 	public Collection<? extends ClassPathEntry> getEntries() {
-		return entries;
+		Collection<? extends ClassPathEntry> result = flattenedEntries;
+		if (result != null) {
+			return result;
+		}
+		if (elements == null) {
+			return null;
+		}
+		result = flatten();
+		flattenedEntries = result;
+		return result;
+	}
+
+	/**
+	 * Gets the Maven entries of this class path, including the ones in the included references.
+	 * <p>
+	 * The additional class path references of the entries are visited transitively, and their entries are placed
+	 * after the entry that declares them. The entries that are not {@link MavenClassPathEntry} instances are not part
+	 * of the result.
+	 * 
+	 * @return The entries. May be empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public Collection<? extends MavenClassPathEntry> getMavenEntries() {
+		Collection<? extends ClassPathEntry> entries = getEntries();
+		if (entries == null) {
+			return Collections.emptyList();
+		}
+		if (entries == elements) {
+			//only maven entries, which have no additional references
+			return (Collection<? extends MavenClassPathEntry>) entries;
+		}
+		Set<MavenClassPathEntry> result = new LinkedHashSet<>();
+		Set<ClassPathReference> visitedreferences = Collections.newSetFromMap(new IdentityHashMap<>());
+		visitedreferences.add(this);
+		collectMavenEntries(entries, result, visitedreferences);
+		return result;
+	}
+
+	private static void collectMavenEntries(Collection<? extends ClassPathEntry> entries,
+			Set<MavenClassPathEntry> result, Set<ClassPathReference> visitedreferences) {
+		for (ClassPathEntry entry : entries) {
+			if (entry instanceof MavenClassPathEntry) {
+				result.add((MavenClassPathEntry) entry);
+			}
+			Collection<? extends ClassPathReference> additionals = entry.getAdditionalClassPathReferences();
+			if (additionals == null) {
+				continue;
+			}
+			for (ClassPathReference additionalref : additionals) {
+				if (additionalref == null || !visitedreferences.add(additionalref)) {
+					//already visited, avoid cycles
+					continue;
+				}
+				Collection<? extends ClassPathEntry> additionalentries = additionalref.getEntries();
+				if (additionalentries != null) {
+					collectMavenEntries(additionalentries, result, visitedreferences);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the class path references that are included in this class path.
+	 * 
+	 * @return The included references in order. May be empty.
+	 */
+	public List<ClassPathReference> getIncludedReferences() {
+		if (elements == null) {
+			return Collections.emptyList();
+		}
+		List<ClassPathReference> result = new ArrayList<>();
+		for (Object elem : elements) {
+			if (elem instanceof ClassPathReference) {
+				result.add((ClassPathReference) elem);
+			}
+		}
+		return result;
 	}
 
-//	public Collection<SakerPath> getArtifactPaths() {
-//		Collection<SakerPath> result = new ArrayList<>();
-//		for (MavenClassPathEntry entry : entries) {
-//			result.add(entry.getPath());
-//		}
-//		return result;
-//	}
+	@SuppressWarnings("unchecked")
+	private Collection<? extends ClassPathEntry> flatten() {
+		boolean hasreferences = false;
+		for (Object elem : elements) {
+			if (elem instanceof ClassPathReference
+					|| ((ClassPathEntry) elem).getAdditionalClassPathReferences() != null) {
+				hasreferences = true;
+				break;
+			}
+		}
+		if (!hasreferences) {
+			return (Collection<? extends ClassPathEntry>) elements;
+		}
+		Set<ClassPathEntry> result = new LinkedHashSet<>();
+		for (Object elem : elements) {
+			if (elem instanceof ClassPathReference) {
+				Collection<? extends ClassPathEntry> refentries = ((ClassPathReference) elem).getEntries();
+				if (refentries != null) {
+					result.addAll(refentries);
+				}
+			} else {
+				result.add((ClassPathEntry) elem);
+			}
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Gets the package index of this class path.
+	 * <p>
+	 * The index is created on the first call, and is cached in this reference afterwards.
+	 * 
+	 * @param taskcontext
+	 *            The task context to use when accessing execution files.
+	 * @param includeclasses
+	 *            <code>true</code> if the class names should be indexed as well.
+	 * @return The index.
+	 * @throws Exception
+	 *             If the indexing fails.
+	 * @see MavenClassPathIndex
+	 */
+	public MavenClassPathIndex getIndex(TaskContext taskcontext, boolean includeclasses) throws Exception {
+		MavenClassPathIndex result = index;
+		if (result != null && (!includeclasses || result.isClassesIndexed())) {
+			return result;
+		}
+		result = MavenClassPathIndex.create(taskcontext, getMavenEntries(), includeclasses);
+		index = result;
+		return result;
+	}
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		SerialUtils.writeExternalCollection(out, entries);
+		CompactExternalWriter writer = new CompactExternalWriter(out);
+		writer.writeFormatVersion(FORMAT_VERSION);
+		if (elements == null) {
+			writer.writeVarInt(0);
+		} else {
+			//+1 to differentiate null from empty
+			writer.writeVarInt(elements.size() + 1);
+			for (Object elem : elements) {
+				if (elem instanceof MavenClassPathEntry) {
+					writer.writeByte(ELEMENT_ENTRY);
+					((MavenClassPathEntry) elem).writeCompactExternal(writer);
+				} else {
+					//written as an object, so the same reference instances are shared in the stream
+					writer.writeByte(ELEMENT_REFERENCE);
+					writer.writeObject(elem);
+				}
+			}
+		}
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-		entries = SerialUtils.readExternalImmutableLinkedHashSet(in);
+		CompactExternalReader reader = new CompactExternalReader(in);
+		reader.readFormatVersion(FORMAT_VERSION);
+		int size = reader.readVarInt() - 1;
+		if (size < 0) {
+			elements = null;
+		} else {
+			List<Object> readelements = new ArrayList<>(size);
+			boolean hasreferences = false;
+			for (int i = 0; i < size; i++) {
+				int kind = reader.readByte();
+				switch (kind) {
+					case ELEMENT_ENTRY: {
+						MavenClassPathEntry entry = new MavenClassPathEntry();
+						entry.readCompactExternal(reader);
+						readelements.add(entry);
+						break;
+					}
+					case ELEMENT_REFERENCE: {
+						readelements.add(reader.readObject());
+						hasreferences = true;
+						break;
+					}
+					default: {
+						throw new InvalidObjectException("Invalid class path element kind: " + kind);
+					}
+				}
+			}
+			if (hasreferences) {
+				elements = Collections.unmodifiableList(readelements);
+			} else {
+				elements = Collections.unmodifiableSet(new LinkedHashSet<>(readelements));
+			}
+		}
+		hashCode = computeHashCode();
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((entries == null) ? 0 : entries.hashCode());
-		return result;
+		return hashCode;
 	}
 
 	@Override
@@ -80,17 +311,46 @@ public class MavenClassPathReference implements ClassPathReference, Externalizab
 		if (getClass() != obj.getClass())
 			return false;
 		MavenClassPathReference other = (MavenClassPathReference) obj;
-		if (entries == null) {
-			if (other.entries != null)
+		if (hashCode != other.hashCode)
+			return false;
+		if (elements == null) {
+			if (other.elements != null)
 				return false;
-		} else if (!entries.equals(other.entries))
+		} else if (other.elements == null || !elementsEqual(elements, other.elements))
+			return false;
+		return true;
+	}
+
+	/**
+	 * Compares the elements in order, regardless of the collection types.
+	 */
+	private static boolean elementsEqual(Collection<?> first, Collection<?> second) {
+		if (first.size() != second.size()) {
 			return false;
+		}
+		Iterator<?> it = second.iterator();
+		for (Object elem : first) {
+			if (!elem.equals(it.next())) {
+				return false;
+			}
+		}
 		return true;
 	}
 
+	private int computeHashCode() {
+		if (elements == null) {
+			return 0;
+		}
+		int result = 1;
+		for (Object elem : elements) {
+			result = 31 * result + elem.hashCode();
+		}
+		return result;
+	}
+
 	@Override
 	public String toString() {
-		return getClass().getSimpleName() + "[" + (entries != null ? "entries=" + entries : "") + "]";
+		return getClass().getSimpleName() + "[" + (elements != null ? "elements=" + elements : "") + "]";
 	}
 
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import saker.build.runtime.environment.EnvironmentProperty;
+import saker.build.runtime.environment.SakerEnvironment;
+
+/**
+ * Build environment level cache of the class path references created by {@link MavenClassPathWorkerTaskFactory}.
+ * <p>
+ * The cache allows identical class paths that are requested by different builds or projects in the same build
+ * environment to be shared, instead of being created by each worker task. Sharing the reference also shares its
+ * lazily computed {@linkplain MavenClassPathReference#getIndex index}.
+ * <p>
+ * The references are keyed by the worker task and the version keys of the inputs. The least recently used references
+ * are evicted.
+ * <p>
+ * The worker task only looks up the cache if the contents of all artifacts are known from the local repository index,
+ * so a cache hit skips the localization, verification and hashing of the artifacts. The cache is accessed without
+ * reporting an environment dependency, as the result doesn't depend on its state.
+ */
+public final class MavenClassPathReferenceCache {
+	private static final int CACHE_SIZE = 256;
+
+	private final Map<CacheKey, MavenClassPathReference> references = new LinkedHashMap<CacheKey, MavenClassPathReference>(
+			64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CacheKey, MavenClassPathReference> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	private MavenClassPathReferenceCache() {
+	}
+
+	/**
+	 * Gets a cached class path reference.
+	 * 
+	 * @param worker
+	 *            The worker task that creates the class path.
+	 * @param inputkeys
+	 *            The version keys of the worker inputs.
+	 * @return The cached reference or <code>null</code> if not found.
+	 */
+	public MavenClassPathReference get(MavenClassPathWorkerTaskFactory worker, List<?> inputkeys) {
+		synchronized (references) {
+			return references.get(new CacheKey(worker, inputkeys));
+		}
+	}
+
+	/**
+	 * Caches a class path reference.
+	 * 
+	 * @param worker
+	 *            The worker task that created the class path.
+	 * @param inputkeys
+	 *            The version keys of the worker inputs.
+	 * @param reference
+	 *            The created reference.
+	 */
+	public void put(MavenClassPathWorkerTaskFactory worker, List<?> inputkeys, MavenClassPathReference reference) {
+		synchronized (references) {
+			references.put(new CacheKey(worker, inputkeys), reference);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + references.size() + "]";
+	}
+
+	/**
+	 * Environment property that provides the cache instance of the build environment.
+	 * <p>
+	 * The build environment stores the computed property values, so the same cache instance is returned for the
+	 * subsequent builds as well.
+	 */
+	public static final class EnvironmentCacheProperty
+			implements EnvironmentProperty<MavenClassPathReferenceCache>, Externalizable {
+		private static final long serialVersionUID = 1L;
+
+		public static final EnvironmentCacheProperty INSTANCE = new EnvironmentCacheProperty();
+
+		/**
+		 * For {@link Externalizable}.
+		 */
+		public EnvironmentCacheProperty() {
+		}
+
+		@Override
+		public MavenClassPathReferenceCache getCurrentValue(SakerEnvironment environment) throws Exception {
+			return new MavenClassPathReferenceCache();
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+		}
+
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		}
+
+		@Override
+		public int hashCode() {
+			return getClass().getName().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj != null && this.getClass() == obj.getClass();
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName();
+		}
+	}
+
+	private static final class CacheKey {
+		private final MavenClassPathWorkerTaskFactory worker;
+		private final List<?> inputKeys;
+
+		public CacheKey(MavenClassPathWorkerTaskFactory worker, List<?> inputKeys) {
+			this.worker = worker;
+			this.inputKeys = inputKeys;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((inputKeys == null) ? 0 : inputKeys.hashCode());
+			result = prime * result + ((worker == null) ? 0 : worker.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			if (inputKeys == null) {
+				if (other.inputKeys != null)
+					return false;
+			} else if (!inputKeys.equals(other.inputKeys))
+				return false;
+			if (worker == null) {
+				if (other.worker != null)
+					return false;
+			} else if (!worker.equals(other.worker))
+				return false;
+			return true;
+		}
+	}
+}
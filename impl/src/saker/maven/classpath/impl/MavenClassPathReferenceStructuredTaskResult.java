@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import saker.build.task.TaskContext;
+import saker.build.task.TaskResultDependencyHandle;
+import saker.build.task.TaskResultResolver;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.task.utils.StructuredObjectTaskResult;
+import saker.build.util.property.IDEConfigurationRequiredExecutionProperty;
+
+/**
+ * Structured task result that retrieves a {@link MavenClassPathReference} task output, and only reports dependency on
+ * the selected fields of its entries.
+ * <p>
+ * The change detector is set on the dependency of the task that resolves this result, so the selection doesn't affect
+ * other tasks that use the same class path. If the build execution generates IDE configurations, the attachments are
+ * always considered, as they are part of the generated configuration.
+ * 
+ * @see MavenClassPathReferenceTaskOutputChangeDetector
+ */
+public class MavenClassPathReferenceStructuredTaskResult implements StructuredObjectTaskResult, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	private TaskIdentifier taskId;
+	private int fields;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public MavenClassPathReferenceStructuredTaskResult() {
+	}
+
+	public MavenClassPathReferenceStructuredTaskResult(TaskIdentifier taskId, int fields) {
+		this.taskId = taskId;
+		this.fields = fields;
+	}
+
+	@Override
+	public Object toResult(TaskResultResolver results) throws NullPointerException, RuntimeException {
+		return toResultDependencyHandle(results).get();
+	}
+
+	@Override
+	public TaskResultDependencyHandle toResultDependencyHandle(TaskResultResolver results)
+			throws NullPointerException {
+		TaskResultDependencyHandle dephandle = results.getTaskResultDependencyHandle(taskId);
+		Object result = dephandle.get();
+		if (result instanceof MavenClassPathReference) {
+			dephandle.setTaskOutputChangeDetector(new MavenClassPathReferenceTaskOutputChangeDetector(
+					(MavenClassPathReference) result, getDependencyFields(results)));
+		}
+		return dephandle;
+	}
+
+	private int getDependencyFields(TaskResultResolver results) {
+		if (fields != MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL && results instanceof TaskContext) {
+			Boolean ideconfigrequired = ((TaskContext) results).getTaskUtilities()
+					.getReportExecutionDependency(IDEConfigurationRequiredExecutionProperty.INSTANCE);
+			if (Boolean.TRUE.equals(ideconfigrequired)) {
+				return MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL;
+			}
+		}
+		return fields;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(taskId);
+		out.writeInt(fields);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		taskId = (TaskIdentifier) in.readObject();
+		fields = in.readInt();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + fields;
+		result = prime * result + ((taskId == null) ? 0 : taskId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MavenClassPathReferenceStructuredTaskResult other = (MavenClassPathReferenceStructuredTaskResult) obj;
+		if (fields != other.fields)
+			return false;
+		if (taskId == null) {
+			if (other.taskId != null)
+				return false;
+		} else if (!taskId.equals(other.taskId))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[" + taskId + "]";
+	}
+}
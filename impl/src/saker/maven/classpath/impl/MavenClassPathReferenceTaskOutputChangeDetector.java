@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
+
+import saker.build.task.dependencies.TaskOutputChangeDetector;
+import saker.java.compiler.api.classpath.ClassPathEntry;
+
+/**
+ * {@link TaskOutputChangeDetector} that compares {@link MavenClassPathReference} task outputs entry by entry, only
+ * checking the selected fields of the entries.
+ * <p>
+ * Consumers that only depend on some aspects of the class path (e.g. the file locations of the entries) can use this
+ * detector to avoid being invalidated when some other aspect of it changes (e.g. a source attachment).
+ */
+public final class MavenClassPathReferenceTaskOutputChangeDetector implements TaskOutputChangeDetector, Externalizable {
+	private static final long serialVersionUID = 1L;
+
+	public static final int FIELD_FILE_LOCATION = 1 << 0;
+	public static final int FIELD_IMPLEMENTATION_VERSION_KEY = 1 << 1;
+	public static final int FIELD_ABI_VERSION_KEY = 1 << 2;
+	public static final int FIELD_SOURCE_ATTACHMENT = 1 << 3;
+	public static final int FIELD_DOCUMENTATION_ATTACHMENT = 1 << 4;
+
+	/**
+	 * Only the locations of the entries, for consumers that don't read the contents of the class path.
+	 */
+	public static final int FIELDS_LOCATIONS = FIELD_FILE_LOCATION;
+	/**
+	 * The locations and the ABI of the entries, for consumers that only depend on the public signatures of the
+	 * classes, e.g. compilation.
+	 */
+	public static final int FIELDS_LOCATIONS_ABI = FIELD_FILE_LOCATION | FIELD_ABI_VERSION_KEY;
+	/**
+	 * The fields that determine the contents of the class path, without the attachments.
+	 */
+	public static final int FIELDS_CLASSPATH = FIELD_FILE_LOCATION | FIELD_IMPLEMENTATION_VERSION_KEY
+			| FIELD_ABI_VERSION_KEY;
+	public static final int FIELDS_ALL = FIELDS_CLASSPATH | FIELD_SOURCE_ATTACHMENT | FIELD_DOCUMENTATION_ATTACHMENT;
+
+	private MavenClassPathReference expected;
+	private int fields;
+
+	/**
+	 * For {@link Externalizable}.
+	 */
+	public MavenClassPathReferenceTaskOutputChangeDetector() {
+	}
+
+	public MavenClassPathReferenceTaskOutputChangeDetector(MavenClassPathReference expected, int fields) {
+		this.expected = expected;
+		this.fields = fields;
+	}
+
+	@Override
+	public boolean isChanged(Object taskoutput) {
+		if (!(taskoutput instanceof MavenClassPathReference)) {
+			return true;
+		}
+		Collection<? extends ClassPathEntry> expectedentries = expected.getEntries();
+		Collection<? extends ClassPathEntry> entries = ((MavenClassPathReference) taskoutput).getEntries();
+		if (expectedentries.size() != entries.size()) {
+			return true;
+		}
+		Iterator<? extends ClassPathEntry> it = entries.iterator();
+		for (ClassPathEntry expectedentry : expectedentries) {
+			if (isEntryChanged(expectedentry, it.next(), fields)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the selected fields of the argument class path entries differ.
+	 * 
+	 * @param expected
+	 *            The expected entry.
+	 * @param entry
+	 *            The entry to check.
+	 * @param fields
+	 *            The fields to compare. Bitwise OR combination of the <code>FIELD_*</code> constants in this class. If
+	 *            the ABI version key is selected but the entries don't have one, the implementation version keys are
+	 *            compared instead.
+	 * @return <code>true</code> if any of the selected fields are different.
+	 */
+	public static boolean isEntryChanged(ClassPathEntry expected, ClassPathEntry entry, int fields) {
+		if (((fields & FIELD_FILE_LOCATION) == FIELD_FILE_LOCATION)
+				&& !Objects.equals(expected.getFileLocation(), entry.getFileLocation())) {
+			return true;
+		}
+		if (((fields & FIELD_IMPLEMENTATION_VERSION_KEY) == FIELD_IMPLEMENTATION_VERSION_KEY)
+				&& !Objects.equals(expected.getImplementationVersionKey(), entry.getImplementationVersionKey())) {
+			return true;
+		}
+		if (((fields & FIELD_ABI_VERSION_KEY) == FIELD_ABI_VERSION_KEY)) {
+			Object expectedabi = expected.getAbiVersionKey();
+			Object abi = entry.getAbiVersionKey();
+			if (!Objects.equals(expectedabi, abi)) {
+				return true;
+			}
+			if (expectedabi == null
+					&& !Objects.equals(expected.getImplementationVersionKey(), entry.getImplementationVersionKey())) {
+				//the ABI is unknown, any change of the implementation may change it
+				return true;
+			}
+		}
+		if (((fields & FIELD_SOURCE_ATTACHMENT) == FIELD_SOURCE_ATTACHMENT)
+				&& !Objects.equals(expected.getSourceAttachment(), entry.getSourceAttachment())) {
+			return true;
+		}
+		if (((fields & FIELD_DOCUMENTATION_ATTACHMENT) == FIELD_DOCUMENTATION_ATTACHMENT)
+				&& !Objects.equals(expected.getDocumentationAttachment(), entry.getDocumentationAttachment())) {
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		out.writeObject(expected);
+		out.writeInt(fields);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		expected = (MavenClassPathReference) in.readObject();
+		fields = in.readInt();
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((expected == null) ? 0 : expected.hashCode());
+		result = prime * result + fields;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		MavenClassPathReferenceTaskOutputChangeDetector other = (MavenClassPathReferenceTaskOutputChangeDetector) obj;
+		if (expected == null) {
+			if (other.expected != null)
+				return false;
+		} else if (!expected.equals(other.expected))
+			return false;
+		if (fields != other.fields)
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[fields=" + Integer.toBinaryString(fields) + "]";
+	}
+}
@@ -17,37 +17,60 @@ package saker.maven.classpath.impl;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 
+import saker.build.file.SakerDirectory;
+import saker.build.file.SakerFile;
+import saker.build.file.content.ContentDescriptor;
+import saker.build.file.provider.LocalFileProvider;
 import saker.build.runtime.execution.ExecutionContext;
 import saker.build.task.Task;
 import saker.build.task.TaskContext;
 import saker.build.task.TaskFactory;
+import saker.build.task.TaskFuture;
 import saker.build.task.identifier.TaskIdentifier;
-import saker.build.task.utils.StructuredListTaskResult;
 import saker.build.task.utils.StructuredTaskResult;
-import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
-import saker.build.thirdparty.saker.util.io.SerialUtils;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
 import saker.build.trace.BuildTrace;
-import saker.build.util.property.IDEConfigurationRequiredExecutionProperty;
 import saker.java.compiler.api.classpath.ClassPathReference;
+import saker.maven.classpath.impl.option.ArtifactMavenClassPathInputOption;
 import saker.maven.classpath.impl.option.LiteralStructuredTaskResult;
 import saker.maven.classpath.impl.option.MavenClassPathEntryInput;
 import saker.maven.classpath.impl.option.MavenClassPathInputOption;
+import saker.maven.classpath.impl.option.TaskResultMavenClassPathInputOption;
+import saker.maven.classpath.impl.util.ArtifactChecksumVerifier;
+import saker.maven.classpath.impl.util.ArtifactCoordinatesInterner;
+import saker.maven.classpath.impl.util.CompactExternalReader;
+import saker.maven.classpath.impl.util.CompactExternalWriter;
+import saker.maven.classpath.impl.util.LocalRepositoryIndex;
+import saker.maven.classpath.impl.util.MissingArtifactCache;
+import saker.maven.classpath.impl.util.ParallelUtils;
+import saker.maven.classpath.impl.util.VersionConflictStrategy;
 import saker.maven.classpath.main.MavenClassPathTaskFactory;
 import saker.maven.support.api.ArtifactCoordinates;
 import saker.maven.support.api.MavenOperationConfiguration;
+import saker.maven.support.api.download.ArtifactDownloadTaskOutput;
+import saker.maven.support.api.download.ArtifactDownloadUtils;
+import saker.maven.support.api.download.ArtifactDownloadWorkerTaskOutput;
 import saker.maven.support.api.localize.ArtifactLocalizationTaskOutput;
 import saker.maven.support.api.localize.ArtifactLocalizationUtils;
 import saker.maven.support.api.localize.ArtifactLocalizationWorkerTaskOutput;
+import saker.std.api.file.location.ExecutionFileLocation;
 import saker.std.api.file.location.FileLocation;
+import saker.std.api.file.location.FileLocationVisitor;
 import saker.std.api.file.location.LocalFileLocation;
 
 public class MavenClassPathWorkerTaskFactory
@@ -55,8 +78,48 @@ public class MavenClassPathWorkerTaskFactory
 
 	private static final long serialVersionUID = 1L;
 
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int FLAG_CLUSTER_MODE = 1 << 0;
+	private static final int FLAG_VERIFY_CHECKSUMS = 1 << 1;
+
+	/**
+	 * Localization sharding mode that localizes all artifacts using a single task.
+	 */
+	public static final int LOCALIZATION_SHARDS_NONE = 0;
+	/**
+	 * Localization sharding mode that localizes each artifact using its own task.
+	 */
+	public static final int LOCALIZATION_SHARDS_PER_ARTIFACT = -1;
+
 	private MavenOperationConfiguration configuration;
 	private Set<MavenClassPathEntryInput> inputs;
+	/**
+	 * The localization sharding mode.
+	 * <p>
+	 * Either {@link #LOCALIZATION_SHARDS_NONE}, {@link #LOCALIZATION_SHARDS_PER_ARTIFACT}, or a positive number of hash
+	 * buckets the artifacts are distributed into.
+	 */
+	private int localizationShards;
+	private VersionConflictStrategy versionConflictStrategy = VersionConflictStrategy.NONE;
+	/**
+	 * Whether or not the artifacts are downloaded to the build directory instead of being localized.
+	 * <p>
+	 * The entries of the artifacts are execution files in this case, so the tasks running on build clusters can access
+	 * them as other execution files, instead of the local repository of the coordinator.
+	 */
+	private boolean clusterMode;
+	/**
+	 * Whether or not the localized artifacts are verified against the checksum files in the local repository.
+	 */
+	private boolean verifyChecksums;
+
+	/**
+	 * The cached hash code of this task identifier.
+	 * <p>
+	 * Computing it requires hashing all of the inputs, which can be expensive for large class paths.
+	 */
+	private transient int hashCode;
 
 	/**
 	 * For {@link Externalizable}.
@@ -66,11 +129,44 @@ public class MavenClassPathWorkerTaskFactory
 
 	public MavenClassPathWorkerTaskFactory(MavenOperationConfiguration configuration,
 			Set<MavenClassPathEntryInput> input) {
+		this(configuration, input, LOCALIZATION_SHARDS_NONE);
+	}
+
+	public MavenClassPathWorkerTaskFactory(MavenOperationConfiguration configuration,
+			Set<MavenClassPathEntryInput> input, int localizationShards) throws IllegalArgumentException {
+		this(configuration, input, localizationShards, VersionConflictStrategy.NONE);
+	}
+
+	public MavenClassPathWorkerTaskFactory(MavenOperationConfiguration configuration,
+			Set<MavenClassPathEntryInput> input, int localizationShards,
+			VersionConflictStrategy versionConflictStrategy) throws IllegalArgumentException {
+		this(configuration, input, localizationShards, versionConflictStrategy, false);
+	}
+
+	public MavenClassPathWorkerTaskFactory(MavenOperationConfiguration configuration,
+			Set<MavenClassPathEntryInput> input, int localizationShards,
+			VersionConflictStrategy versionConflictStrategy, boolean clusterMode) throws IllegalArgumentException {
+		this(configuration, input, localizationShards, versionConflictStrategy, clusterMode, false);
+	}
+
+	public MavenClassPathWorkerTaskFactory(MavenOperationConfiguration configuration,
+			Set<MavenClassPathEntryInput> input, int localizationShards,
+			VersionConflictStrategy versionConflictStrategy, boolean clusterMode, boolean verifyChecksums)
+			throws IllegalArgumentException {
+		Objects.requireNonNull(versionConflictStrategy, "version conflict strategy");
+		if (localizationShards < LOCALIZATION_SHARDS_PER_ARTIFACT) {
+			throw new IllegalArgumentException("Invalid localization shard count: " + localizationShards);
+		}
 		if (configuration == null) {
 			configuration = MavenOperationConfiguration.defaults();
 		}
 		this.configuration = configuration;
 		this.inputs = input;
+		this.localizationShards = localizationShards;
+		this.versionConflictStrategy = versionConflictStrategy;
+		this.clusterMode = clusterMode;
+		this.verifyChecksums = verifyChecksums;
+		this.hashCode = computeHashCode();
 	}
 
 	@Override
@@ -86,135 +182,557 @@ public class MavenClassPathWorkerTaskFactory
 		taskcontext.setStandardOutDisplayIdentifier(MavenClassPathTaskFactory.TASK_NAME);
 
 		Set<ArtifactCoordinates> coordinputs = new LinkedHashSet<>();
-		Set<ArtifactCoordinates> sourcedlcoordinputs = new LinkedHashSet<>();
 
 		for (MavenClassPathEntryInput in : inputs) {
 			in.getInput().accept(new ArtifactCoordinateCollectorVisitor(coordinputs));
-			MavenClassPathInputOption srcattachment = in.getSourceAttachment();
-			if (srcattachment != null) {
-				srcattachment.accept(new ArtifactCoordinateCollectorVisitor(sourcedlcoordinputs));
+		}
+
+		//collapse the conflicting versions before localization, so the shadowed artifacts are not retrieved
+		Set<ArtifactCoordinates> selectedcoordinates = versionConflictStrategy.resolve(coordinputs);
+
+		LocalRepositoryIndex index = clusterMode ? null
+				: LocalRepositoryIndex.get(taskcontext.getExecutionContext().getEnvironment(), configuration);
+		//if all artifacts are in the local repository index, the localization tasks are not started
+		Map<ArtifactCoordinates, RetrievedArtifact> indexedartifacts = getIndexedArtifacts(taskcontext, index,
+				selectedcoordinates);
+		Map<ArtifactCoordinates, TaskFuture<?>> localizefutures = new HashMap<>();
+		if (indexedartifacts == null) {
+			for (Set<ArtifactCoordinates> shard : shardCoordinates(selectedcoordinates)) {
+				TaskFuture<?> future = startArtifactRetrieval(taskcontext, configuration, shard, clusterMode);
+				for (ArtifactCoordinates coord : shard) {
+					localizefutures.put(coord, future);
+				}
 			}
 		}
 
-		TaskFactory<? extends ArtifactLocalizationTaskOutput> localizetaskfactory = ArtifactLocalizationUtils
-				.createLocalizeArtifactsTaskFactory(configuration, coordinputs);
-		TaskIdentifier dltaskid = ArtifactLocalizationUtils.createLocalizeArtifactsTaskIdentifier(configuration,
-				coordinputs);
+		//wait for the task results while the artifacts are being localized
+		Map<StructuredTaskResult, Object> resolvedtaskresults = resolveTaskResults(taskcontext);
+
+		long missingattachmentttl = MissingArtifactCache.getTtlMillis(taskcontext);
 
-		TaskIdentifier sourcedltaskid;
-		if (taskcontext.getTaskUtilities()
-				.getReportExecutionDependency(IDEConfigurationRequiredExecutionProperty.INSTANCE)) {
-			TaskFactory<? extends ArtifactLocalizationTaskOutput> sourcedltaskfactory = ArtifactLocalizationUtils
-					.createLocalizeArtifactsTaskFactory(configuration, sourcedlcoordinputs);
-			sourcedltaskid = ArtifactLocalizationUtils.createLocalizeArtifactsTaskIdentifier(configuration,
-					sourcedlcoordinputs);
-			taskcontext.startTask(sourcedltaskid, sourcedltaskfactory, null);
+		List<ArtifactCoordinates> coordinatelist = new ArrayList<>(selectedcoordinates);
+		MavenClassPathReferenceCache cache = null;
+		if (isEnvironmentCacheable()) {
+			//the cache is an implementation detail, no dependency is reported on it
+			cache = taskcontext.getExecutionContext().getEnvironment()
+					.getEnvironmentPropertyCurrentValue(MavenClassPathReferenceCache.EnvironmentCacheProperty.INSTANCE);
+			if (indexedartifacts != null) {
+				//the content of the artifacts is known without localization, so the cache can be checked before
+				//verifying and hashing them
+				MavenClassPathReference cached = cache.get(this, getCacheInputKeys(missingattachmentttl,
+						resolvedtaskresults, coordinatelist, indexedartifacts));
+				if (cached != null) {
+					return reportResult(taskcontext, cached);
+				}
+			}
+		}
+
+		//wait for the localizations concurrently, so the ABI of an artifact can be computed as soon as it is
+		//localized, regardless of the localization of the preceding artifacts
+		List<RetrievedArtifact> localizationoutputlist = ParallelUtils.mapParallel(coordinatelist, coord -> {
+			RetrievedArtifact dlres;
+			if (indexedartifacts != null) {
+				dlres = indexedartifacts.get(coord);
+			} else {
+				dlres = getRetrievalResult(taskcontext, index, localizefutures.get(coord), coord);
+			}
+			if (dlres != null) {
+				if (verifyChecksums && dlres.fileLocation instanceof LocalFileLocation) {
+					//the verified files are cached, so only the modified artifacts are hashed again
+					ArtifactChecksumVerifier.verify(
+							LocalFileProvider.toRealPath(((LocalFileLocation) dlres.fileLocation).getLocalPath()));
+				}
+				//the computed key is cached, and used when the entry is created
+				JarAbiVersionKey.compute(taskcontext, dlres.fileLocation, dlres.contentDescriptor);
+			}
+			return dlres;
+		});
+		if (index != null) {
+			index.flush();
+		}
+		Map<ArtifactCoordinates, RetrievedArtifact> localizationoutputs = new HashMap<>();
+		for (int i = 0; i < coordinatelist.size(); i++) {
+			localizationoutputs.put(coordinatelist.get(i), localizationoutputlist.get(i));
+		}
+
+		List<MavenClassPathEntryInput> inputlist = new ArrayList<>(inputs);
+		List<List<Object>> createdelements = ParallelUtils.mapParallel(inputlist,
+				in -> createElements(taskcontext, in, selectedcoordinates, localizationoutputs, resolvedtaskresults,
+						missingattachmentttl));
+		Collection<Object> elements = new LinkedHashSet<>();
+		boolean hasreferences = false;
+		for (List<Object> inelements : createdelements) {
+			if (inelements == null) {
+				//the execution was aborted
+				return null;
+			}
+			for (Object elem : inelements) {
+				elements.add(elem);
+				if (elem instanceof ClassPathReference) {
+					hasreferences = true;
+				}
+			}
+		}
+
+		MavenClassPathReference result;
+		if (hasreferences) {
+			//the included references are shared instead of copying their entries
+			result = MavenClassPathReference.createComposite(new ArrayList<>(elements));
 		} else {
-			sourcedltaskid = null;
+			@SuppressWarnings("unchecked")
+			Collection<MavenClassPathEntry> entries = (Collection<MavenClassPathEntry>) (Collection<?>) elements;
+			result = new MavenClassPathReference(entries);
+		}
+		if (cache != null) {
+			cache.put(this, getCacheInputKeys(missingattachmentttl, resolvedtaskresults, coordinatelist,
+					localizationoutputs), result);
 		}
-		ArtifactLocalizationTaskOutput localizeoutput = taskcontext.getTaskUtilities().runTaskResult(dltaskid,
-				localizetaskfactory);
+		return reportResult(taskcontext, result);
+	}
+
+	private static ClassPathReference reportResult(TaskContext taskcontext, MavenClassPathReference result) {
+		taskcontext.reportSelfTaskOutputChangeDetector(new MavenClassPathReferenceTaskOutputChangeDetector(result,
+				MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL));
+		return result;
+	}
 
-		Map<ArtifactCoordinates, ArtifactLocalizationWorkerTaskOutput> coordinatelocalizationoutputs = new HashMap<>();
-		StructuredListTaskResult dlresultslist = localizeoutput.getLocalizationResults();
-		Iterator<? extends StructuredTaskResult> it = dlresultslist.resultIterator();
-		while (it.hasNext()) {
-			ArtifactLocalizationWorkerTaskOutput dlres = (ArtifactLocalizationWorkerTaskOutput) it.next()
+	/**
+	 * Creates the class path elements for the given input.
+	 * <p>
+	 * The elements are {@link MavenClassPathEntry} instances, or included {@link ClassPathReference} instances.
+	 * 
+	 * @return The elements. Empty if the input shouldn't be part of the class path. <code>null</code> if the input
+	 *             has an unsupported type, and the execution was aborted.
+	 */
+	private List<Object> createElements(TaskContext taskcontext, MavenClassPathEntryInput in,
+			Set<ArtifactCoordinates> selectedcoordinates,
+			Map<ArtifactCoordinates, RetrievedArtifact> localizationoutputs,
+			Map<StructuredTaskResult, Object> resolvedtaskresults, long missingattachmentttl) {
+		List<Object> elements = new ArrayList<>(1);
+		MavenClassPathEntry entry = new MavenClassPathEntry();
+		boolean[] aborted = { false };
+		in.getInput().accept(new MavenClassPathInputOption.Visitor() {
+			@Override
+			public void visit(StructuredTaskResult taskresult) {
+				Object res = resolvedtaskresults.get(taskresult);
+				if (res == null) {
+					//don't include this class path entry in the result
+					return;
+				}
+				if (res instanceof FileLocation) {
+					entry.setFileLocation((FileLocation) res);
+					return;
+				}
+				if (res instanceof ClassPathReference) {
+					elements.add(res);
+					return;
+				}
+				if (res instanceof Object[]) {
+					res = Arrays.asList((Object[]) res);
+				}
+				if (res instanceof Iterable<?>) {
+					for (Object o : (Iterable<?>) res) {
+						if (o == null) {
+							continue;
+						}
+						if (o instanceof FileLocation) {
+							elements.add(createFileEntry(taskcontext, (FileLocation) o));
+						} else if (o instanceof ClassPathReference) {
+							elements.add(o);
+						} else {
+							abortUnsupported("Unsupported class path element type: ", o);
+							return;
+						}
+					}
+					return;
+				}
+				abortUnsupported("Unsupported class path entry type: ", res);
+			}
+
+			private void abortUnsupported(String message, Object value) {
+				taskcontext.abortExecution(
+						new IllegalArgumentException(message + value + " (" + value.getClass().getName() + ")"));
+				aborted[0] = true;
+			}
+
+			@Override
+			public void visit(FileLocation file) {
+				entry.setFileLocation(file);
+			}
+
+			@Override
+			public void visit(ArtifactCoordinates artifact) {
+				if (!selectedcoordinates.contains(artifact)) {
+					//an other version of the artifact is used
+					return;
+				}
+				RetrievedArtifact dlres = localizationoutputs.get(artifact);
+				if (dlres == null) {
+					throw new RuntimeException("Failed to localize classpath artifact: " + artifact);
+				}
+				FileLocation filelocation = dlres.fileLocation;
+				ContentDescriptor contentdescriptor = dlres.contentDescriptor;
+				entry.setFileLocation(filelocation);
+				entry.setImplementationVersionKey(contentdescriptor);
+				entry.setAbiVersionKey(JarAbiVersionKey.compute(taskcontext, filelocation, contentdescriptor));
+			}
+		});
+		if (aborted[0]) {
+			return null;
+		}
+		if (!entry.hasInput()) {
+			//input not set, or resolved to multiple elements
+			return elements;
+		}
+		if (entry.getImplementationVersionKey() == null) {
+			StructuredTaskResult inimplkey = in.getImplementationVersionKey();
+			if (inimplkey != null) {
+				entry.setImplementationVersionKey(resolvedtaskresults.get(inimplkey));
+			} else {
+				//no key specified, track the contents of the file
+				inferContentKey(taskcontext, entry);
+			}
+		}
+		entry.setSourceAttachment(createAttachmentResult(in.getSourceAttachment(), missingattachmentttl));
+		entry.setDocumentationAttachment(createAttachmentResult(in.getDocumentationAttachment(), missingattachmentttl));
+		elements.add(entry);
+		return elements;
+	}
+
+	private static MavenClassPathEntry createFileEntry(TaskContext taskcontext, FileLocation filelocation) {
+		MavenClassPathEntry entry = new MavenClassPathEntry();
+		entry.setFileLocation(filelocation);
+		inferContentKey(taskcontext, entry);
+		return entry;
+	}
+
+	/**
+	 * Sets the implementation and ABI version keys of the entry based on the contents of its file.
+	 */
+	private static void inferContentKey(TaskContext taskcontext, MavenClassPathEntry entry) {
+		FileLocation filelocation = entry.getFileLocation();
+		Object contentkey = getContentKey(taskcontext, filelocation);
+		if (contentkey != null) {
+			entry.setImplementationVersionKey(contentkey);
+			entry.setAbiVersionKey(JarAbiVersionKey.compute(taskcontext, filelocation, contentkey));
+		}
+	}
+
+	/**
+	 * Checks if the created class path can be stored in the {@link MavenClassPathReferenceCache}.
+	 * <p>
+	 * It can be cached if the contents of all entries are determined by the localized artifacts or the specified
+	 * version keys. The inferred content keys of files are not part of the cache key, and the dependencies on them are
+	 * reported during the entry creation. Task result inputs may resolve to multiple files with inferred keys, so they
+	 * are not cached.
+	 */
+	private static List<Object> getCacheInputKeys(long missingattachmentttl,
+			Map<StructuredTaskResult, Object> resolvedtaskresults, List<ArtifactCoordinates> coordinates,
+			Map<ArtifactCoordinates, RetrievedArtifact> retrievedartifacts) {
+		List<Object> result = new ArrayList<>(coordinates.size() * 2 + 2);
+		result.add(missingattachmentttl);
+		result.add(resolvedtaskresults);
+		for (ArtifactCoordinates coord : coordinates) {
+			RetrievedArtifact dlres = retrievedartifacts.get(coord);
+			if (dlres != null) {
+				result.add(dlres.fileLocation);
+				result.add(dlres.contentDescriptor);
+			} else {
+				result.add(null);
+			}
+		}
+		return result;
+	}
+
+	private boolean isEnvironmentCacheable() {
+		for (MavenClassPathEntryInput in : inputs) {
+			MavenClassPathInputOption input = in.getInput();
+			if (input instanceof ArtifactMavenClassPathInputOption) {
+				continue;
+			}
+			if (input instanceof TaskResultMavenClassPathInputOption || in.getImplementationVersionKey() == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the content key of the file at the given location and reports a dependency on it.
+	 * <p>
+	 * No key is inferred for directories, the same way as {@link LocalFileContentKeyExecutionProperty} does for local
+	 * directories.
+	 * 
+	 * @return The content key or <code>null</code> if not available.
+	 */
+	private static Object getContentKey(TaskContext taskcontext, FileLocation location) {
+		Object[] result = { null };
+		try {
+			location.accept(new FileLocationVisitor() {
+				@Override
+				public void visit(LocalFileLocation loc) {
+					result[0] = taskcontext.getTaskUtilities().getReportExecutionDependency(
+							new LocalFileContentKeyExecutionProperty(loc.getLocalPath()));
+				}
+
+				@Override
+				public void visit(ExecutionFileLocation loc) {
+					SakerFile file = taskcontext.getTaskUtilities().resolveFileAtPath(loc.getPath());
+					if (file == null || file instanceof SakerDirectory) {
+						//the content descriptor of directories doesn't depend on the contained files
+						return;
+					}
+					taskcontext.getTaskUtilities().reportInputFileDependency(null, file);
+					result[0] = file.getContentDescriptor();
+				}
+			});
+		} catch (UnsupportedOperationException e) {
+			//unsupported file location type
+			return null;
+		}
+		return result[0];
+	}
+
+	/**
+	 * Gets the artifacts from the local repository index.
+	 * <p>
+	 * A dependency is reported on the index entry of each artifact, so the task is re-run if an artifact is modified
+	 * or removed from the local repository.
+	 * 
+	 * @return The indexed artifacts, or <code>null</code> if the index is not available or any of the artifacts are
+	 *             not indexed.
+	 */
+	private Map<ArtifactCoordinates, RetrievedArtifact> getIndexedArtifacts(TaskContext taskcontext,
+			LocalRepositoryIndex index, Set<ArtifactCoordinates> coordinates) {
+		if (index == null || coordinates.isEmpty()) {
+			return null;
+		}
+		for (ArtifactCoordinates coord : coordinates) {
+			if (!LocalRepositoryIndex.isIndexable(coord) || index.lookup(coord) == null) {
+				return null;
+			}
+		}
+		Map<ArtifactCoordinates, RetrievedArtifact> result = new HashMap<>();
+		for (ArtifactCoordinates coord : coordinates) {
+			LocalRepositoryIndex.IndexedArtifact indexed = taskcontext.getTaskUtilities().getReportExecutionDependency(
+					new LocalRepositoryArtifactExecutionProperty(configuration, coord));
+			if (indexed == null) {
+				//modified concurrently
+				return null;
+			}
+			result.put(coord,
+					new RetrievedArtifact(LocalFileLocation.create(indexed.getPath()), indexed.getContentDescriptor()));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the result of the localization or download task for the given artifact.
+	 * <p>
+	 * The localized artifacts are added to the local repository index if it's available. The index stores the content
+	 * descriptor of the localization, so the entries are the same when they are later retrieved from the index.
+	 * 
+	 * @return The retrieved artifact or <code>null</code> if it is not available.
+	 */
+	private static RetrievedArtifact getRetrievalResult(TaskContext taskcontext, LocalRepositoryIndex index,
+			TaskFuture<?> future, ArtifactCoordinates artifact) {
+		if (future == null) {
+			return null;
+		}
+		Object output = future.get();
+		if (output instanceof ArtifactDownloadTaskOutput) {
+			StructuredTaskResult coordresult = ((ArtifactDownloadTaskOutput) output).getDownloadResult(artifact);
+			if (coordresult == null) {
+				return null;
+			}
+			ArtifactDownloadWorkerTaskOutput dlres = (ArtifactDownloadWorkerTaskOutput) coordresult
 					.toResult(taskcontext);
-			coordinatelocalizationoutputs.put(dlres.getCoordinates(), dlres);
+			if (dlres == null) {
+				return null;
+			}
+			return new RetrievedArtifact(ExecutionFileLocation.create(dlres.getPath()), dlres.getContentDescriptor());
 		}
+		StructuredTaskResult coordresult = ((ArtifactLocalizationTaskOutput) output).getLocalizationResult(artifact);
+		if (coordresult == null) {
+			return null;
+		}
+		ArtifactLocalizationWorkerTaskOutput locres = (ArtifactLocalizationWorkerTaskOutput) coordresult
+				.toResult(taskcontext);
+		if (locres == null) {
+			return null;
+		}
+		if (index != null) {
+			//the same content descriptor is used when the artifact is found in the index later
+			index.record(artifact, locres.getLocalPath(), locres.getContentDescriptor());
+		}
+		return new RetrievedArtifact(LocalFileLocation.create(locres.getLocalPath()), locres.getContentDescriptor());
+	}
 
-		Collection<MavenClassPathEntry> entries = new LinkedHashSet<>();
+	/**
+	 * Creates the structured task result for a source or documentation attachment.
+	 * <p>
+	 * Attachment artifacts are not localized by the class path task. They are retrieved lazily when the attachment is
+	 * requested by a consumer (e.g. when IDE configuration is generated), so they never delay the creation of the
+	 * class path.
+	 */
+	private StructuredTaskResult createAttachmentResult(MavenClassPathInputOption attachment,
+			long missingattachmentttl) {
+		if (attachment == null) {
+			return null;
+		}
+		StructuredTaskResult[] result = { null };
+		attachment.accept(new MavenClassPathInputOption.Visitor() {
+			@Override
+			public void visit(StructuredTaskResult taskresult) {
+				result[0] = taskresult;
+			}
+
+			@Override
+			public void visit(FileLocation file) {
+				result[0] = new LiteralStructuredTaskResult(file);
+			}
+
+			@Override
+			public void visit(ArtifactCoordinates artifact) {
+				if (clusterMode) {
+					result[0] = SourceAttachmentRetrievingStructuredTaskResult.createDownloading(configuration,
+							artifact, missingattachmentttl);
+				} else {
+					result[0] = SourceAttachmentRetrievingStructuredTaskResult.createLocalizing(configuration,
+							artifact, missingattachmentttl);
+				}
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Resolves the task results that the inputs of this class path refer to.
+	 * <p>
+	 * The results are waited for concurrently, so the referenced tasks can finish in any order.
+	 * 
+	 * @return The resolved results mapped to the structured task results.
+	 */
+	private Map<StructuredTaskResult, Object> resolveTaskResults(TaskContext taskcontext) throws Exception {
+		Set<StructuredTaskResult> taskresults = new LinkedHashSet<>();
 		for (MavenClassPathEntryInput in : inputs) {
-			MavenClassPathEntry entry = new MavenClassPathEntry();
+			boolean[] artifactinput = { false };
 			in.getInput().accept(new MavenClassPathInputOption.Visitor() {
 				@Override
 				public void visit(StructuredTaskResult taskresult) {
-					Object res = taskresult.toResult(taskcontext);
-					if (res == null) {
-						//don't include this class path entry in the result
-						return;
-					}
-					if (res instanceof FileLocation) {
-						entry.setFileLocation((FileLocation) res);
-						return;
-					}
-					// XXX support more input types
-					throw new UnsupportedOperationException("unsupported class path entry type: " + res);
+					taskresults.add(taskresult);
 				}
 
 				@Override
 				public void visit(FileLocation file) {
-					entry.setFileLocation(file);
 				}
 
 				@Override
 				public void visit(ArtifactCoordinates artifact) {
-					ArtifactLocalizationWorkerTaskOutput dlres = coordinatelocalizationoutputs.get(artifact);
-					if (dlres == null) {
-						throw new RuntimeException("Failed to localize classpath artifact: " + artifact);
-					}
-					entry.setFileLocation(LocalFileLocation.create(dlres.getLocalPath()));
-					entry.setImplementationVersionKey(dlres.getContentDescriptor());
+					artifactinput[0] = true;
 				}
 			});
-			if (!entry.hasInput()) {
-				//input not set, don't include the entry
-				continue;
+			StructuredTaskResult implkey = in.getImplementationVersionKey();
+			if (implkey != null && !artifactinput[0]) {
+				//the implementation version key of artifacts is the localized content descriptor
+				taskresults.add(implkey);
+			}
+		}
+		if (taskresults.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		List<StructuredTaskResult> resultlist = new ArrayList<>(taskresults);
+		List<Object> resolved = ParallelUtils.mapParallel(resultlist, tr -> tr.toResult(taskcontext));
+		Map<StructuredTaskResult, Object> result = new HashMap<>();
+		for (int i = 0; i < resultlist.size(); i++) {
+			result.put(resultlist.get(i), resolved.get(i));
+		}
+		return result;
+	}
+
+	/**
+	 * Splits the artifacts into the sets that should be localized by the same task based on the sharding mode.
+	 * <p>
+	 * The assignment of an artifact to a shard only depends on the artifact itself, so adding or removing an artifact
+	 * only changes the task of the affected shard. The other localization tasks keep their identifiers and are not
+	 * re-run.
+	 */
+	private Collection<Set<ArtifactCoordinates>> shardCoordinates(Set<ArtifactCoordinates> coordinates) {
+		if (coordinates.isEmpty()) {
+			return Collections.emptyList();
+		}
+		switch (localizationShards) {
+			case LOCALIZATION_SHARDS_NONE: {
+				return Collections.singletonList(coordinates);
 			}
-			if (entry.getImplementationVersionKey() == null) {
-				StructuredTaskResult inimplkey = in.getImplementationVersionKey();
-				if (inimplkey != null) {
-					entry.setImplementationVersionKey(inimplkey.toResult(taskcontext));
+			case LOCALIZATION_SHARDS_PER_ARTIFACT: {
+				List<Set<ArtifactCoordinates>> result = new ArrayList<>(coordinates.size());
+				for (ArtifactCoordinates coord : coordinates) {
+					result.add(ImmutableUtils.singletonSet(coord));
 				}
+				return result;
 			}
-			MavenClassPathInputOption srcattachment = in.getSourceAttachment();
-			if (srcattachment != null) {
-				srcattachment.accept(new MavenClassPathInputOption.Visitor() {
-					@Override
-					public void visit(StructuredTaskResult taskresult) {
-						entry.setSourceAttachment(taskresult);
-					}
-
-					@Override
-					public void visit(FileLocation file) {
-						entry.setSourceAttachment(new LiteralStructuredTaskResult(file));
-					}
-
-					@Override
-					public void visit(ArtifactCoordinates artifact) {
-						entry.setSourceAttachment(
-								new SourceAttachmentRetrievingStructuredTaskResult(sourcedltaskid, artifact));
-					}
-				});
+			default: {
+				//use a tree map so the shards are started in a deterministic order
+				Map<Integer, Set<ArtifactCoordinates>> buckets = new TreeMap<>();
+				for (ArtifactCoordinates coord : coordinates) {
+					//the hash of the string representation is stable between JVM runs
+					int bucket = Math.floorMod(coord.toString().hashCode(), localizationShards);
+					buckets.computeIfAbsent(bucket, x -> new LinkedHashSet<>()).add(coord);
+				}
+				return buckets.values();
 			}
-			entries.add(entry);
 		}
-
-		MavenClassPathReference result = new MavenClassPathReference(entries);
-		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
-		return result;
 	}
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		out.writeObject(configuration);
-		SerialUtils.writeExternalCollection(out, inputs);
+		CompactExternalWriter writer = new CompactExternalWriter(out);
+		writer.writeFormatVersion(FORMAT_VERSION);
+		writer.writeObject(configuration);
+		writer.writeVarInt(localizationShards + 1);
+		writer.writeByte(versionConflictStrategy.ordinal());
+		int flags = 0;
+		if (clusterMode) {
+			flags |= FLAG_CLUSTER_MODE;
+		}
+		if (verifyChecksums) {
+			flags |= FLAG_VERIFY_CHECKSUMS;
+		}
+		writer.writeByte(flags);
+		writer.writeVarInt(inputs.size());
+		for (MavenClassPathEntryInput input : inputs) {
+			input.writeCompactExternal(writer);
+		}
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-		configuration = (MavenOperationConfiguration) in.readObject();
-		inputs = SerialUtils.readExternalImmutableLinkedHashSet(in);
+		CompactExternalReader reader = new CompactExternalReader(in);
+		reader.readFormatVersion(FORMAT_VERSION);
+		configuration = (MavenOperationConfiguration) reader.readObject();
+		localizationShards = reader.readVarInt() - 1;
+		int strategyordinal = reader.readByte();
+		VersionConflictStrategy[] strategies = VersionConflictStrategy.values();
+		if (strategyordinal >= strategies.length) {
+			throw new InvalidObjectException("Invalid version conflict strategy: " + strategyordinal);
+		}
+		versionConflictStrategy = strategies[strategyordinal];
+		int flags = reader.readByte();
+		clusterMode = (flags & FLAG_CLUSTER_MODE) == FLAG_CLUSTER_MODE;
+		verifyChecksums = (flags & FLAG_VERIFY_CHECKSUMS) == FLAG_VERIFY_CHECKSUMS;
+		int size = reader.readVarInt();
+		Set<MavenClassPathEntryInput> readinputs = new LinkedHashSet<>();
+		for (int i = 0; i < size; i++) {
+			readinputs.add(MavenClassPathEntryInput.readCompactExternal(reader));
+		}
+		inputs = Collections.unmodifiableSet(readinputs);
+		hashCode = computeHashCode();
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((configuration == null) ? 0 : configuration.hashCode());
-		result = prime * result + ((inputs == null) ? 0 : inputs.hashCode());
-		return result;
+		return hashCode;
 	}
 
 	@Override
@@ -226,6 +744,16 @@ public class MavenClassPathWorkerTaskFactory
 		if (getClass() != obj.getClass())
 			return false;
 		MavenClassPathWorkerTaskFactory other = (MavenClassPathWorkerTaskFactory) obj;
+		if (hashCode != other.hashCode)
+			return false;
+		if (localizationShards != other.localizationShards)
+			return false;
+		if (versionConflictStrategy != other.versionConflictStrategy)
+			return false;
+		if (clusterMode != other.clusterMode)
+			return false;
+		if (verifyChecksums != other.verifyChecksums)
+			return false;
 		if (configuration == null) {
 			if (other.configuration != null)
 				return false;
@@ -239,6 +767,19 @@ public class MavenClassPathWorkerTaskFactory
 		return true;
 	}
 
+	private int computeHashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((configuration == null) ? 0 : configuration.hashCode());
+		result = prime * result + ((inputs == null) ? 0 : inputs.hashCode());
+		result = prime * result + localizationShards;
+		//use the ordinal, as the hash code of enums is not stable between JVMs
+		result = prime * result + versionConflictStrategy.ordinal();
+		result = prime * result + (clusterMode ? 1231 : 1237);
+		result = prime * result + (verifyChecksums ? 1231 : 1237);
+		return result;
+	}
+
 	@Override
 	public String toString() {
 		return getClass().getSimpleName() + "[]";
@@ -248,9 +789,78 @@ public class MavenClassPathWorkerTaskFactory
 		//always expect the sources to be in an artifact with "jar" extension
 		//    e.g. for aar (android libs) artifacts, the sources are still in a "jar" artifact, so using the same 
 		//         extension will fail
-		ArtifactCoordinates sourceacoords = new ArtifactCoordinates(dlacoords.getGroupId(), dlacoords.getArtifactId(),
-				"sources", "jar", dlacoords.getVersion());
-		return sourceacoords;
+		return ArtifactCoordinatesInterner.deriveSources(dlacoords);
+	}
+
+	/**
+	 * Starts the localization of a single artifact using the same task as the
+	 * {@linkplain #LOCALIZATION_SHARDS_PER_ARTIFACT per-artifact} sharding mode.
+	 * <p>
+	 * Can be used to start the localization of artifacts as soon as they are known, before the class path task is
+	 * created. The class path task will use the results of the already started tasks.
+	 * 
+	 * @param taskcontext
+	 *            The task context.
+	 * @param configuration
+	 *            The Maven configuration.
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @param clustermode
+	 *            Whether the artifact is downloaded to the build directory instead of being localized.
+	 */
+	public static void startArtifactRetrieval(TaskContext taskcontext, MavenOperationConfiguration configuration,
+			ArtifactCoordinates coordinates, boolean clustermode) {
+		if (configuration == null) {
+			configuration = MavenOperationConfiguration.defaults();
+		}
+		if (!clustermode && LocalRepositoryIndex.isIndexable(coordinates)) {
+			LocalRepositoryIndex index = LocalRepositoryIndex
+					.get(taskcontext.getExecutionContext().getEnvironment(), configuration);
+			if (index != null && index.lookup(coordinates) != null) {
+				//the worker task uses the index, no need to localize
+				return;
+			}
+		}
+		startArtifactRetrieval(taskcontext, configuration, ImmutableUtils.singletonSet(coordinates), clustermode);
+	}
+
+	/**
+	 * Starts the task that retrieves the given artifacts.
+	 * <p>
+	 * In cluster mode the artifacts are downloaded to the build directory, otherwise they are localized to the local
+	 * repository.
+	 * 
+	 * @return The future of the started task. Its result is either an {@link ArtifactDownloadTaskOutput} or an
+	 *             {@link ArtifactLocalizationTaskOutput}.
+	 */
+	private static TaskFuture<?> startArtifactRetrieval(TaskContext taskcontext,
+			MavenOperationConfiguration configuration, Set<ArtifactCoordinates> coordinates, boolean clustermode) {
+		if (clustermode) {
+			return taskcontext.startTask(
+					ArtifactDownloadUtils.createDownloadArtifactsTaskIdentifier(configuration, coordinates),
+					ArtifactDownloadUtils.createDownloadArtifactsTaskFactory(configuration, coordinates), null);
+		}
+		return taskcontext.startTask(
+				ArtifactLocalizationUtils.createLocalizeArtifactsTaskIdentifier(configuration, coordinates),
+				ArtifactLocalizationUtils.createLocalizeArtifactsTaskFactory(configuration, coordinates), null);
+	}
+
+	public static ArtifactCoordinates createJavadocArtifactCoordinates(ArtifactCoordinates dlacoords) {
+		//the javadoc is in a "jar" artifact, same as the sources
+		return ArtifactCoordinatesInterner.deriveJavadoc(dlacoords);
+	}
+
+	/**
+	 * The file and content descriptor of a localized or downloaded artifact.
+	 */
+	private static final class RetrievedArtifact {
+		protected final FileLocation fileLocation;
+		protected final ContentDescriptor contentDescriptor;
+
+		public RetrievedArtifact(FileLocation fileLocation, ContentDescriptor contentDescriptor) {
+			this.fileLocation = fileLocation;
+			this.contentDescriptor = contentDescriptor;
+		}
 	}
 
 	private static final class ArtifactCoordinateCollectorVisitor implements MavenClassPathInputOption.Visitor {
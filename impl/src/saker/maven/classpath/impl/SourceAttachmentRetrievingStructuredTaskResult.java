@@ -17,26 +17,68 @@ package saker.maven.classpath.impl;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
+import saker.build.runtime.environment.SakerEnvironment;
 import saker.build.runtime.execution.SakerLog;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskFactory;
 import saker.build.task.TaskResultResolver;
 import saker.build.task.identifier.TaskIdentifier;
 import saker.build.task.utils.StructuredTaskResult;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.maven.classpath.impl.util.CompactExternalReader;
+import saker.maven.classpath.impl.util.CompactExternalWriter;
+import saker.maven.classpath.impl.util.MissingArtifactCache;
 import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
 import saker.maven.support.api.download.ArtifactDownloadTaskOutput;
+import saker.maven.support.api.download.ArtifactDownloadUtils;
 import saker.maven.support.api.download.ArtifactDownloadWorkerTaskOutput;
 import saker.maven.support.api.localize.ArtifactLocalizationTaskOutput;
+import saker.maven.support.api.localize.ArtifactLocalizationUtils;
 import saker.maven.support.api.localize.ArtifactLocalizationWorkerTaskOutput;
 import saker.std.api.file.location.ExecutionFileLocation;
 import saker.std.api.file.location.LocalFileLocation;
 
+/**
+ * Structured task result that lazily retrieves an attachment artifact (sources or javadoc) of a class path entry.
+ * <p>
+ * The artifact is localized or downloaded by a task that is dedicated to the given artifact. The task is only started
+ * when the result is first requested by a task, so the attachments that nobody uses are never retrieved. As the task
+ * is keyed on a single artifact, adding or removing other entries of the class path doesn't cause it to be re-run.
+ * <p>
+ * Artifacts that are not found in the repositories are recorded in the {@link MissingArtifactCache}, and are not
+ * requested again until the cache entry expires. Libraries commonly don't publish source or javadoc artifacts, so this
+ * avoids repeatedly looking them up in the remote repositories. Other failures (e.g. network errors) are not recorded.
+ */
 public class SourceAttachmentRetrievingStructuredTaskResult implements StructuredTaskResult, Externalizable {
 	private static final long serialVersionUID = 1L;
 
-	private TaskIdentifier downloadOrLocalizeTaskId;
+	private static final int RETRIEVAL_LOCALIZE = 0;
+	private static final int RETRIEVAL_DOWNLOAD = 1;
+
+	/**
+	 * The name of the exception class that Maven Resolver uses to report that an artifact is not available in the
+	 * repositories.
+	 * <p>
+	 * Checked by name, as the class is not visible to this bundle.
+	 */
+	private static final String ARTIFACT_NOT_FOUND_EXCEPTION_CLASS_NAME = //
+			"org.eclipse.aether.transfer.ArtifactNotFoundException";
+
+	private MavenOperationConfiguration configuration;
 	private ArtifactCoordinates coordinates;
+	private int retrieval;
+	/**
+	 * Only affects how long a missing artifact is not requested again, so it is not part of the equality.
+	 */
+	private long missingCacheTtlMillis;
 
 	/**
 	 * For {@link Externalizable}.
@@ -44,14 +86,86 @@ public class SourceAttachmentRetrievingStructuredTaskResult implements Structure
 	public SourceAttachmentRetrievingStructuredTaskResult() {
 	}
 
-	public SourceAttachmentRetrievingStructuredTaskResult(TaskIdentifier downloadOrLocalizeTaskId, ArtifactCoordinates coordinates) {
-		this.downloadOrLocalizeTaskId = downloadOrLocalizeTaskId;
+	private SourceAttachmentRetrievingStructuredTaskResult(MavenOperationConfiguration configuration,
+			ArtifactCoordinates coordinates, int retrieval, long missingCacheTtlMillis) {
+		this.configuration = configuration;
 		this.coordinates = coordinates;
+		this.retrieval = retrieval;
+		this.missingCacheTtlMillis = missingCacheTtlMillis;
+	}
+
+	/**
+	 * Creates a new attachment result that localizes the artifact to the local Maven repository.
+	 * 
+	 * @param configuration
+	 *            The Maven configuration to use.
+	 * @param coordinates
+	 *            The coordinates of the attachment artifact.
+	 * @param missingcachettlmillis
+	 *            The time-to-live of the missing artifact cache entries. See
+	 *            {@link MissingArtifactCache#getTtlMillis(TaskContext)}.
+	 * @return The created structured task result.
+	 */
+	public static SourceAttachmentRetrievingStructuredTaskResult createLocalizing(
+			MavenOperationConfiguration configuration, ArtifactCoordinates coordinates, long missingcachettlmillis) {
+		return new SourceAttachmentRetrievingStructuredTaskResult(configuration, coordinates, RETRIEVAL_LOCALIZE,
+				missingcachettlmillis);
+	}
+
+	/**
+	 * Creates a new attachment result that downloads the artifact to the build directory.
+	 * 
+	 * @param configuration
+	 *            The Maven configuration to use.
+	 * @param coordinates
+	 *            The coordinates of the attachment artifact.
+	 * @param missingcachettlmillis
+	 *            The time-to-live of the missing artifact cache entries. See
+	 *            {@link MissingArtifactCache#getTtlMillis(TaskContext)}.
+	 * @return The created structured task result.
+	 */
+	public static SourceAttachmentRetrievingStructuredTaskResult createDownloading(
+			MavenOperationConfiguration configuration, ArtifactCoordinates coordinates, long missingcachettlmillis) {
+		return new SourceAttachmentRetrievingStructuredTaskResult(configuration, coordinates, RETRIEVAL_DOWNLOAD,
+				missingcachettlmillis);
+	}
+
+	public ArtifactCoordinates getCoordinates() {
+		return coordinates;
 	}
 
 	@Override
 	public Object toResult(TaskResultResolver results) {
-		Object actualres = StructuredTaskResult.getActualTaskResult(downloadOrLocalizeTaskId, results);
+		//the missing artifact cache can only be used if the retrieval task can be started
+		SakerEnvironment environment = results instanceof TaskContext
+				? ((TaskContext) results).getExecutionContext().getEnvironment()
+				: null;
+		if (environment != null && MissingArtifactCache.isKnownMissing(environment, configuration, coordinates,
+				missingCacheTtlMillis)) {
+			return null;
+		}
+		Set<ArtifactCoordinates> coordset = ImmutableUtils.singletonSet(coordinates);
+		TaskIdentifier taskid;
+		TaskFactory<?> taskfactory;
+		if (retrieval == RETRIEVAL_DOWNLOAD) {
+			taskid = ArtifactDownloadUtils.createDownloadArtifactsTaskIdentifier(configuration, coordset);
+			taskfactory = ArtifactDownloadUtils.createDownloadArtifactsTaskFactory(configuration, coordset);
+		} else {
+			taskid = ArtifactLocalizationUtils.createLocalizeArtifactsTaskIdentifier(configuration, coordset);
+			taskfactory = ArtifactLocalizationUtils.createLocalizeArtifactsTaskFactory(configuration, coordset);
+		}
+		Object actualres;
+		try {
+			if (results instanceof TaskContext) {
+				//start the retrieval on first request
+				//if the task was already started by someone else, this is a no-op
+				((TaskContext) results).startTask(taskid, taskfactory, null);
+			}
+			actualres = StructuredTaskResult.getActualTaskResult(taskid, results);
+		} catch (Exception e) {
+			handleRetrievalFailure(environment, e);
+			return null;
+		}
 		if (actualres instanceof ArtifactDownloadTaskOutput) {
 			try {
 				ArtifactDownloadTaskOutput dloutput = (ArtifactDownloadTaskOutput) actualres;
@@ -66,8 +180,7 @@ public class SourceAttachmentRetrievingStructuredTaskResult implements Structure
 				ArtifactDownloadWorkerTaskOutput dlworkerout = (ArtifactDownloadWorkerTaskOutput) dlresult;
 				return ExecutionFileLocation.create(dlworkerout.getPath());
 			} catch (Exception e) {
-				SakerLog.log().verbose()
-						.println("Failed to retrieve source attachment: " + coordinates + " (" + e + ")");
+				handleRetrievalFailure(environment, e);
 			}
 		}
 		if (actualres instanceof ArtifactLocalizationTaskOutput) {
@@ -84,8 +197,7 @@ public class SourceAttachmentRetrievingStructuredTaskResult implements Structure
 				ArtifactLocalizationWorkerTaskOutput dlworkerout = (ArtifactLocalizationWorkerTaskOutput) dlresult;
 				return LocalFileLocation.create(dlworkerout.getLocalPath());
 			} catch (Exception e) {
-				SakerLog.log().verbose()
-						.println("Failed to retrieve source attachment: " + coordinates + " (" + e + ")");
+				handleRetrievalFailure(environment, e);
 			}
 		}
 		return null;
@@ -93,22 +205,47 @@ public class SourceAttachmentRetrievingStructuredTaskResult implements Structure
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		out.writeObject(downloadOrLocalizeTaskId);
+		out.writeObject(configuration);
 		out.writeObject(coordinates);
+		out.writeByte(retrieval);
+		out.writeLong(missingCacheTtlMillis);
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-		downloadOrLocalizeTaskId = (TaskIdentifier) in.readObject();
+		configuration = (MavenOperationConfiguration) in.readObject();
 		coordinates = (ArtifactCoordinates) in.readObject();
+		retrieval = in.readUnsignedByte();
+		missingCacheTtlMillis = in.readLong();
+	}
+
+	void writeCompactExternal(CompactExternalWriter out) throws IOException {
+		out.writeSharedObject(configuration);
+		out.writeArtifactCoordinates(coordinates);
+		out.writeByte(retrieval);
+		out.getObjectOutput().writeLong(missingCacheTtlMillis);
+	}
+
+	static SourceAttachmentRetrievingStructuredTaskResult readCompactExternal(CompactExternalReader in)
+			throws IOException, ClassNotFoundException {
+		MavenOperationConfiguration configuration = (MavenOperationConfiguration) in.readSharedObject();
+		ArtifactCoordinates coordinates = in.readArtifactCoordinates();
+		int retrieval = in.readByte();
+		if (retrieval != RETRIEVAL_LOCALIZE && retrieval != RETRIEVAL_DOWNLOAD) {
+			throw new InvalidObjectException("Invalid attachment retrieval kind: " + retrieval);
+		}
+		long missingcachettlmillis = in.getObjectInput().readLong();
+		return new SourceAttachmentRetrievingStructuredTaskResult(configuration, coordinates, retrieval,
+				missingcachettlmillis);
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
+		result = prime * result + ((configuration == null) ? 0 : configuration.hashCode());
 		result = prime * result + ((coordinates == null) ? 0 : coordinates.hashCode());
-		result = prime * result + ((downloadOrLocalizeTaskId == null) ? 0 : downloadOrLocalizeTaskId.hashCode());
+		result = prime * result + retrieval;
 		return result;
 	}
 
@@ -121,15 +258,17 @@ public class SourceAttachmentRetrievingStructuredTaskResult implements Structure
 		if (getClass() != obj.getClass())
 			return false;
 		SourceAttachmentRetrievingStructuredTaskResult other = (SourceAttachmentRetrievingStructuredTaskResult) obj;
+		if (configuration == null) {
+			if (other.configuration != null)
+				return false;
+		} else if (!configuration.equals(other.configuration))
+			return false;
 		if (coordinates == null) {
 			if (other.coordinates != null)
 				return false;
 		} else if (!coordinates.equals(other.coordinates))
 			return false;
-		if (downloadOrLocalizeTaskId == null) {
-			if (other.downloadOrLocalizeTaskId != null)
-				return false;
-		} else if (!downloadOrLocalizeTaskId.equals(other.downloadOrLocalizeTaskId))
+		if (retrieval != other.retrieval)
 			return false;
 		return true;
 	}
@@ -139,4 +278,21 @@ public class SourceAttachmentRetrievingStructuredTaskResult implements Structure
 		return getClass().getSimpleName() + "[" + coordinates + "]";
 	}
 
+	private void handleRetrievalFailure(SakerEnvironment environment, Exception e) {
+		if (environment != null && isArtifactNotFound(e)) {
+			MissingArtifactCache.recordMissing(environment, configuration, coordinates);
+		}
+		SakerLog.log().verbose().println("Failed to retrieve attachment artifact: " + coordinates + " (" + e + ")");
+	}
+
+	private static boolean isArtifactNotFound(Throwable e) {
+		Set<Throwable> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Throwable t = e; t != null && visited.add(t); t = t.getCause()) {
+			if (ARTIFACT_NOT_FOUND_EXCEPTION_CLASS_NAME.equals(t.getClass().getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
\ No newline at end of file
@@ -22,6 +22,10 @@ public class ArtifactMavenClassPathInputOption implements MavenClassPathInputOpt
 		this.artifact = artifact;
 	}
 
+	public ArtifactCoordinates getArtifact() {
+		return artifact;
+	}
+
 	@Override
 	public void accept(Visitor visitor) {
 		visitor.visit(artifact);
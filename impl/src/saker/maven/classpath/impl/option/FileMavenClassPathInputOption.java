@@ -22,6 +22,10 @@ public class FileMavenClassPathInputOption implements MavenClassPathInputOption,
 		this.file = file;
 	}
 
+	public FileLocation getFile() {
+		return file;
+	}
+
 	@Override
 	public void accept(Visitor visitor) {
 		visitor.visit(file);
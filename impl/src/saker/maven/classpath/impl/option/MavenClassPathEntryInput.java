@@ -2,19 +2,46 @@ package saker.maven.classpath.impl.option;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
 import saker.build.task.utils.StructuredTaskResult;
+import saker.maven.classpath.impl.MavenClassPathWorkerTaskFactory;
+import saker.maven.classpath.impl.util.CompactExternalReader;
+import saker.maven.classpath.impl.util.CompactExternalWriter;
+import saker.maven.support.api.ArtifactCoordinates;
 
 public class MavenClassPathEntryInput implements Externalizable {
 	private static final long serialVersionUID = 1L;
 
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int OPTION_NULL = 0;
+	private static final int OPTION_OBJECT = 1;
+	private static final int OPTION_ARTIFACT = 2;
+	private static final int OPTION_FILE = 3;
+	private static final int OPTION_TASK_RESULT = 4;
+	/**
+	 * The option is an artifact with the source coordinates derived from the input artifact.
+	 * 
+	 * @see MavenClassPathWorkerTaskFactory#createSourceArtifactCoordinates(ArtifactCoordinates)
+	 */
+	private static final int OPTION_DERIVED_SOURCES_ARTIFACT = 5;
+	/**
+	 * The option is an artifact with the javadoc coordinates derived from the input artifact.
+	 * 
+	 * @see MavenClassPathWorkerTaskFactory#createJavadocArtifactCoordinates(ArtifactCoordinates)
+	 */
+	private static final int OPTION_DERIVED_JAVADOC_ARTIFACT = 6;
+
 	private MavenClassPathInputOption input;
 	private StructuredTaskResult implementationVersionKey;
 	private MavenClassPathInputOption sourceAttachment;
 	private MavenClassPathInputOption documentationAttachment;
 
+	private transient int hashCode;
+
 	/**
 	 * For {@link Externalizable}.
 	 */
@@ -27,6 +54,7 @@ public class MavenClassPathEntryInput implements Externalizable {
 		this.implementationVersionKey = implementationVersionKey;
 		this.sourceAttachment = sourceAttachment;
 		this.documentationAttachment = documentationAttachment;
+		this.hashCode = computeHashCode();
 	}
 
 	public MavenClassPathInputOption getInput() {
@@ -47,22 +75,127 @@ public class MavenClassPathEntryInput implements Externalizable {
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		out.writeObject(input);
-		out.writeObject(implementationVersionKey);
-		out.writeObject(sourceAttachment);
-		out.writeObject(documentationAttachment);
+		CompactExternalWriter writer = new CompactExternalWriter(out);
+		writer.writeFormatVersion(FORMAT_VERSION);
+		writeCompactExternal(writer);
 	}
 
 	@Override
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-		input = (MavenClassPathInputOption) in.readObject();
+		CompactExternalReader reader = new CompactExternalReader(in);
+		reader.readFormatVersion(FORMAT_VERSION);
+		readCompactExternalImpl(reader);
+	}
+
+	public void writeCompactExternal(CompactExternalWriter out) throws IOException {
+		writeOption(out, input, null);
+		out.writeObject(implementationVersionKey);
+		ArtifactCoordinates inputartifact = input instanceof ArtifactMavenClassPathInputOption
+				? ((ArtifactMavenClassPathInputOption) input).getArtifact()
+				: null;
+		writeOption(out, sourceAttachment, inputartifact);
+		writeOption(out, documentationAttachment, inputartifact);
+	}
+
+	public static MavenClassPathEntryInput readCompactExternal(CompactExternalReader in)
+			throws IOException, ClassNotFoundException {
+		MavenClassPathEntryInput result = new MavenClassPathEntryInput();
+		result.readCompactExternalImpl(in);
+		return result;
+	}
+
+	private void readCompactExternalImpl(CompactExternalReader in) throws IOException, ClassNotFoundException {
+		input = readOption(in, null);
 		implementationVersionKey = (StructuredTaskResult) in.readObject();
-		sourceAttachment = (MavenClassPathInputOption) in.readObject();
-		documentationAttachment = (MavenClassPathInputOption) in.readObject();
+		ArtifactCoordinates inputartifact = input instanceof ArtifactMavenClassPathInputOption
+				? ((ArtifactMavenClassPathInputOption) input).getArtifact()
+				: null;
+		sourceAttachment = readOption(in, inputartifact);
+		documentationAttachment = readOption(in, inputartifact);
+		hashCode = computeHashCode();
+	}
+
+	private static void writeOption(CompactExternalWriter out, MavenClassPathInputOption option,
+			ArtifactCoordinates inputartifact) throws IOException {
+		if (option == null) {
+			out.writeByte(OPTION_NULL);
+			return;
+		}
+		if (option instanceof ArtifactMavenClassPathInputOption) {
+			ArtifactCoordinates artifact = ((ArtifactMavenClassPathInputOption) option).getArtifact();
+			if (inputartifact != null && artifact != null) {
+				if (artifact.equals(MavenClassPathWorkerTaskFactory.createSourceArtifactCoordinates(inputartifact))) {
+					out.writeByte(OPTION_DERIVED_SOURCES_ARTIFACT);
+					return;
+				}
+				if (artifact.equals(MavenClassPathWorkerTaskFactory.createJavadocArtifactCoordinates(inputartifact))) {
+					out.writeByte(OPTION_DERIVED_JAVADOC_ARTIFACT);
+					return;
+				}
+			}
+			out.writeByte(OPTION_ARTIFACT);
+			out.writeArtifactCoordinates(artifact);
+			return;
+		}
+		if (option instanceof FileMavenClassPathInputOption) {
+			out.writeByte(OPTION_FILE);
+			out.writeFileLocation(((FileMavenClassPathInputOption) option).getFile());
+			return;
+		}
+		if (option instanceof TaskResultMavenClassPathInputOption) {
+			out.writeByte(OPTION_TASK_RESULT);
+			out.writeObject(((TaskResultMavenClassPathInputOption) option).getTaskResult());
+			return;
+		}
+		out.writeByte(OPTION_OBJECT);
+		out.writeObject(option);
+	}
+
+	private static MavenClassPathInputOption readOption(CompactExternalReader in, ArtifactCoordinates inputartifact)
+			throws IOException, ClassNotFoundException {
+		int kind = in.readByte();
+		switch (kind) {
+			case OPTION_NULL: {
+				return null;
+			}
+			case OPTION_OBJECT: {
+				return (MavenClassPathInputOption) in.readObject();
+			}
+			case OPTION_ARTIFACT: {
+				return new ArtifactMavenClassPathInputOption(in.readArtifactCoordinates());
+			}
+			case OPTION_DERIVED_SOURCES_ARTIFACT: {
+				if (inputartifact == null) {
+					throw new InvalidObjectException("Derived sources artifact without input artifact.");
+				}
+				return new ArtifactMavenClassPathInputOption(
+						MavenClassPathWorkerTaskFactory.createSourceArtifactCoordinates(inputartifact));
+			}
+			case OPTION_DERIVED_JAVADOC_ARTIFACT: {
+				if (inputartifact == null) {
+					throw new InvalidObjectException("Derived javadoc artifact without input artifact.");
+				}
+				return new ArtifactMavenClassPathInputOption(
+						MavenClassPathWorkerTaskFactory.createJavadocArtifactCoordinates(inputartifact));
+			}
+			case OPTION_FILE: {
+				return new FileMavenClassPathInputOption(in.readFileLocation());
+			}
+			case OPTION_TASK_RESULT: {
+				return new TaskResultMavenClassPathInputOption((StructuredTaskResult) in.readObject());
+			}
+			default: {
+				throw new InvalidObjectException("Invalid input option kind: " + kind);
+			}
+		}
 	}
 
 	@Override
 	public int hashCode() {
+		return hashCode;
+	}
+
+	private int computeHashCode() {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((documentationAttachment == null) ? 0 : documentationAttachment.hashCode());
@@ -81,6 +214,8 @@ public class MavenClassPathEntryInput implements Externalizable {
 		if (getClass() != obj.getClass())
 			return false;
 		MavenClassPathEntryInput other = (MavenClassPathEntryInput) obj;
+		if (hashCode != other.hashCode)
+			return false;
 		if (documentationAttachment == null) {
 			if (other.documentationAttachment != null)
 				return false;
@@ -22,6 +22,10 @@ public class TaskResultMavenClassPathInputOption implements MavenClassPathInputO
 		this.taskResult = taskresult;
 	}
 
+	public StructuredTaskResult getTaskResult() {
+		return taskResult;
+	}
+
 	@Override
 	public void accept(Visitor visitor) {
 		visitor.visit(taskResult);
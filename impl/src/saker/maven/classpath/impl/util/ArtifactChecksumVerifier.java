@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import saker.build.runtime.execution.SakerLog;
+import saker.build.thirdparty.saker.util.StringUtils;
+
+/**
+ * Verifies the artifacts in the local Maven repository against the checksum files next to them.
+ * <p>
+ * The checksum files are stored by Maven when the artifacts are downloaded, with the <code>.sha256</code> or
+ * <code>.sha1</code> extension appended to the file name. The <code>.sha256</code> checksum is used if both are
+ * present. Artifacts without checksum files are not verified.
+ * <p>
+ * The size and last modification time of the verified files are cached, so unchanged files are not hashed again.
+ */
+public final class ArtifactChecksumVerifier {
+	private static final int CACHE_SIZE = 4096;
+	/**
+	 * Files modified more recently than this are not cached, as a subsequent modification may not change the last
+	 * modification time due to the file system time resolution.
+	 */
+	private static final long RECENT_MODIFICATION_MILLIS = 2000;
+
+	private static final String[][] CHECKSUM_ALGORITHMS = { //
+			{ ".sha256", "SHA-256" }, //
+			{ ".sha1", "SHA-1" }, //
+	};
+
+	private static final Pattern BSD_CHECKSUM_LINE = Pattern.compile(".+= [0-9A-Fa-f]+");
+
+	private static final Map<Path, VerifiedFile> VERIFIED_CACHE = Collections
+			.synchronizedMap(new LinkedHashMap<Path, VerifiedFile>(64, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Path, VerifiedFile> eldest) {
+					return size() > CACHE_SIZE;
+				}
+			});
+
+	private ArtifactChecksumVerifier() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Verifies the artifact file at the given path.
+	 * 
+	 * @param path
+	 *            The path of the artifact.
+	 * @throws IOException
+	 *             If the checksum doesn't match, or in case of I/O error.
+	 */
+	public static void verify(Path path) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+		if (!attrs.isRegularFile()) {
+			return;
+		}
+		long size = attrs.size();
+		long lastmodified = attrs.lastModifiedTime().toMillis();
+		VerifiedFile cached = VERIFIED_CACHE.get(path);
+		if (cached != null && cached.size == size && cached.lastModified == lastmodified) {
+			return;
+		}
+		String filename = path.getFileName().toString();
+		for (String[] algorithm : CHECKSUM_ALGORITHMS) {
+			String expected;
+			try {
+				expected = readChecksum(path.resolveSibling(filename + algorithm[0]));
+			} catch (NoSuchFileException e) {
+				continue;
+			}
+			String actual = StringUtils.toHexString(hash(path, algorithm[1]));
+			if (!actual.equalsIgnoreCase(expected)) {
+				throw new IOException("Checksum mismatch for artifact: " + path + " expected " + algorithm[1] + ": "
+						+ expected + " actual: " + actual);
+			}
+			if (System.currentTimeMillis() - lastmodified > RECENT_MODIFICATION_MILLIS) {
+				VERIFIED_CACHE.put(path, new VerifiedFile(size, lastmodified));
+			}
+			return;
+		}
+		SakerLog.log().verbose().println("No checksum file found to verify artifact: " + path);
+	}
+
+	/**
+	 * Reads the checksum from the file.
+	 * <p>
+	 * The checksum files may contain the name of the file after the checksum (<code>&lt;checksum&gt; *file.jar</code>),
+	 * or be in the BSD format (<code>SHA1 (file.jar) = &lt;checksum&gt;</code>), the same as accepted by Maven.
+	 */
+	private static String readChecksum(Path checksumfile) throws IOException {
+		String content = new String(Files.readAllBytes(checksumfile), StandardCharsets.UTF_8).trim();
+		int lineend = content.indexOf('\n');
+		String line = (lineend < 0 ? content : content.substring(0, lineend)).trim();
+		if (BSD_CHECKSUM_LINE.matcher(line).matches()) {
+			return line.substring(line.lastIndexOf(' ') + 1);
+		}
+		int idx = 0;
+		while (idx < line.length() && !Character.isWhitespace(line.charAt(idx))) {
+			++idx;
+		}
+		return line.substring(0, idx);
+	}
+
+	private static byte[] hash(Path path, String algorithm) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(algorithm + " is not available.", e);
+		}
+		byte[] buf = new byte[8192];
+		try (InputStream is = Files.newInputStream(path)) {
+			for (int read; (read = is.read(buf)) > 0;) {
+				digest.update(buf, 0, read);
+			}
+		}
+		return digest.digest();
+	}
+
+	private static final class VerifiedFile {
+		protected final long size;
+		protected final long lastModified;
+
+		public VerifiedFile(long size, long lastModified) {
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+}
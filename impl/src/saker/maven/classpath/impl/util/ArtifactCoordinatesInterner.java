@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import saker.build.thirdparty.saker.util.ObjectUtils;
+import saker.maven.support.api.ArtifactCoordinates;
+
+/**
+ * Weak interning pool for {@link ArtifactCoordinates}.
+ * <p>
+ * Equal coordinates that are used by multiple class path tasks are represented by the same instance, so the build
+ * environment doesn't retain duplicate coordinate objects and strings. The pool doesn't prevent the coordinates from
+ * being garbage collected.
+ */
+public final class ArtifactCoordinatesInterner {
+	private static final Map<ArtifactCoordinates, WeakReference<ArtifactCoordinates>> POOL = new WeakHashMap<>();
+
+	private static final Map<ArtifactCoordinates, WeakReference<ArtifactCoordinates>> DERIVED_SOURCES = 
+			new WeakHashMap<>();
+	private static final Map<ArtifactCoordinates, WeakReference<ArtifactCoordinates>> DERIVED_JAVADOCS = 
+			new WeakHashMap<>();
+
+	private ArtifactCoordinatesInterner() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Gets the canonical instance of the given coordinates.
+	 * 
+	 * @param coordinates
+	 *            The coordinates.
+	 * @return The canonical instance that is equal to the argument. <code>null</code> if the argument is
+	 *             <code>null</code>.
+	 */
+	public static ArtifactCoordinates intern(ArtifactCoordinates coordinates) {
+		if (coordinates == null) {
+			return null;
+		}
+		synchronized (POOL) {
+			ArtifactCoordinates result = ObjectUtils.getReference(POOL.get(coordinates));
+			if (result != null) {
+				return result;
+			}
+			POOL.put(coordinates, new WeakReference<>(coordinates));
+			return coordinates;
+		}
+	}
+
+	/**
+	 * Parses and interns the coordinates in the given string.
+	 * 
+	 * @param coordinates
+	 *            The coordinates string.
+	 * @return The canonical coordinates.
+	 * @throws IllegalArgumentException
+	 *             If the format is invalid.
+	 * @see ArtifactCoordinates#valueOf(String)
+	 */
+	public static ArtifactCoordinates valueOf(String coordinates) throws IllegalArgumentException {
+		Objects.requireNonNull(coordinates, "coordinates");
+		return intern(ArtifactCoordinates.valueOf(coordinates));
+	}
+
+	/**
+	 * Parses and interns the coordinates in the given collection.
+	 * <p>
+	 * The elements are converted to strings, and the <code>null</code> or empty ones are ignored. Each distinct
+	 * string is only parsed once.
+	 * 
+	 * @param coordinates
+	 *            The coordinate elements.
+	 * @return The parsed coordinates in iteration order, without duplicates.
+	 * @throws IllegalArgumentException
+	 *             If the format of an element is invalid.
+	 */
+	public static Set<ArtifactCoordinates> valueOfAll(Iterable<?> coordinates) throws IllegalArgumentException {
+		Set<ArtifactCoordinates> result = new LinkedHashSet<>();
+		Map<String, ArtifactCoordinates> parsed = new HashMap<>();
+		for (Object o : coordinates) {
+			String coordstr = Objects.toString(o, null);
+			if (ObjectUtils.isNullOrEmpty(coordstr)) {
+				continue;
+			}
+			ArtifactCoordinates coord = parsed.get(coordstr);
+			if (coord == null) {
+				coord = valueOf(coordstr);
+				parsed.put(coordstr, coord);
+			}
+			result.add(coord);
+		}
+		return result;
+	}
+
+	/**
+	 * Interns the given coordinates.
+	 * 
+	 * @param coordinates
+	 *            The coordinates.
+	 * @return The canonical coordinates in iteration order.
+	 */
+	public static Set<ArtifactCoordinates> internAll(Collection<? extends ArtifactCoordinates> coordinates) {
+		Set<ArtifactCoordinates> result = new LinkedHashSet<>();
+		for (ArtifactCoordinates coord : coordinates) {
+			result.add(intern(coord));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the canonical coordinates of the source artifact for the given artifact.
+	 * <p>
+	 * The derived coordinates are cached for the canonical instances.
+	 * 
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @return The source artifact coordinates with the <code>sources</code> classifier and <code>jar</code> extension.
+	 */
+	public static ArtifactCoordinates deriveSources(ArtifactCoordinates coordinates) {
+		return derive(DERIVED_SOURCES, coordinates, "sources");
+	}
+
+	/**
+	 * Gets the canonical coordinates of the documentation artifact for the given artifact.
+	 * <p>
+	 * The derived coordinates are cached for the canonical instances.
+	 * 
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @return The documentation artifact coordinates with the <code>javadoc</code> classifier and <code>jar</code>
+	 *             extension.
+	 */
+	public static ArtifactCoordinates deriveJavadoc(ArtifactCoordinates coordinates) {
+		return derive(DERIVED_JAVADOCS, coordinates, "javadoc");
+	}
+
+	private static ArtifactCoordinates derive(Map<ArtifactCoordinates, WeakReference<ArtifactCoordinates>> derivedmap,
+			ArtifactCoordinates coordinates, String classifier) {
+		ArtifactCoordinates result;
+		synchronized (derivedmap) {
+			result = ObjectUtils.getReference(derivedmap.get(coordinates));
+		}
+		if (result != null) {
+			return result;
+		}
+		result = intern(new ArtifactCoordinates(coordinates.getGroupId(), coordinates.getArtifactId(), classifier,
+				"jar", coordinates.getVersion()));
+		synchronized (derivedmap) {
+			derivedmap.put(coordinates, new WeakReference<>(result));
+		}
+		return result;
+	}
+}
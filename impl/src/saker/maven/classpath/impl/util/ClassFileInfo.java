@@ -0,0 +1,750 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Minimal Java class file parser that reads the declaration level information of a class.
+ * <p>
+ * Only the information that is required for fingerprinting and dependency analysis of classes is read. The method
+ * bodies are skipped.
+ */
+public final class ClassFileInfo {
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_PRIVATE = 0x0002;
+	public static final int ACC_PROTECTED = 0x0004;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_BRIDGE = 0x0040;
+	public static final int ACC_VARARGS = 0x0080;
+	public static final int ACC_INTERFACE = 0x0200;
+	public static final int ACC_ABSTRACT = 0x0400;
+	public static final int ACC_SYNTHETIC = 0x1000;
+	public static final int ACC_ANNOTATION = 0x2000;
+	public static final int ACC_ENUM = 0x4000;
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int CONSTANT_Utf8 = 1;
+	private static final int CONSTANT_Integer = 3;
+	private static final int CONSTANT_Float = 4;
+	private static final int CONSTANT_Long = 5;
+	private static final int CONSTANT_Double = 6;
+	private static final int CONSTANT_Class = 7;
+	private static final int CONSTANT_String = 8;
+	private static final int CONSTANT_Fieldref = 9;
+	private static final int CONSTANT_Methodref = 10;
+	private static final int CONSTANT_InterfaceMethodref = 11;
+	private static final int CONSTANT_NameAndType = 12;
+	private static final int CONSTANT_MethodHandle = 15;
+	private static final int CONSTANT_MethodType = 16;
+	private static final int CONSTANT_Dynamic = 17;
+	private static final int CONSTANT_InvokeDynamic = 18;
+	private static final int CONSTANT_Module = 19;
+	private static final int CONSTANT_Package = 20;
+
+	private int accessFlags;
+	private String className;
+	private String superClassName;
+	private List<String> interfaceNames;
+	private String signature;
+	private List<String> annotationTypes;
+	private List<String> annotations;
+	private List<String> innerClasses;
+	private List<String> permittedSubclassNames;
+	private List<String> recordComponents;
+	private List<Member> fields;
+	private List<Member> methods;
+	private Set<String> referencedClassNames;
+
+	private ClassFileInfo() {
+	}
+
+	/**
+	 * Parses the argument class file bytes.
+	 * 
+	 * @param bytes
+	 *            The contents of the class file.
+	 * @return The parsed information.
+	 * @throws IOException
+	 *             If the class file is malformed.
+	 */
+	public static ClassFileInfo parse(byte[] bytes) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			ClassFileInfo result = new ClassFileInfo();
+			result.read(in);
+			return result;
+		} catch (IndexOutOfBoundsException | ClassCastException e) {
+			throw new IOException("Malformed class file.", e);
+		}
+	}
+
+	/**
+	 * Parses the class file read from the argument stream.
+	 * 
+	 * @param is
+	 *            The input stream of the class file. It is not closed by this method.
+	 * @return The parsed information.
+	 * @throws IOException
+	 *             In case of I/O error or if the class file is malformed.
+	 */
+	public static ClassFileInfo parse(InputStream is) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int read; (read = is.read(buffer)) > 0;) {
+			baos.write(buffer, 0, read);
+		}
+		return parse(baos.toByteArray());
+	}
+
+	public int getAccessFlags() {
+		return accessFlags;
+	}
+
+	/**
+	 * Gets the internal name of the class. (E.g. <code>java/lang/Object</code>)
+	 * 
+	 * @return The class name.
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	public String getSuperClassName() {
+		return superClassName;
+	}
+
+	public List<String> getInterfaceNames() {
+		return interfaceNames;
+	}
+
+	public String getSignature() {
+		return signature;
+	}
+
+	/**
+	 * Gets the descriptors of the annotation types that are present on the class.
+	 * 
+	 * @return The annotation type descriptors.
+	 */
+	public List<String> getAnnotationTypes() {
+		return annotationTypes;
+	}
+
+	/**
+	 * Gets the annotations that are present on the class, including their element values.
+	 * <p>
+	 * Each annotation is formatted as a string that contains its type descriptor and element values.
+	 * 
+	 * @return The formatted annotations.
+	 */
+	public List<String> getAnnotations() {
+		return annotations;
+	}
+
+	/**
+	 * Gets the entries of the <code>InnerClasses</code> attribute that describe this class or the classes declared
+	 * in it.
+	 * <p>
+	 * Each entry is formatted as the inner class name, outer class name, simple name and access flags of the nested
+	 * class.
+	 * 
+	 * @return The formatted entries.
+	 */
+	public List<String> getInnerClasses() {
+		return innerClasses;
+	}
+
+	/**
+	 * Gets the internal names of the classes in the <code>PermittedSubclasses</code> attribute.
+	 * 
+	 * @return The permitted subclass names. Empty if the class is not sealed.
+	 */
+	public List<String> getPermittedSubclassNames() {
+		return permittedSubclassNames;
+	}
+
+	/**
+	 * Gets the components of the <code>Record</code> attribute.
+	 * <p>
+	 * Each component is formatted as its name, descriptor, signature and annotations.
+	 * 
+	 * @return The formatted record components. Empty if the class is not a record.
+	 */
+	public List<String> getRecordComponents() {
+		return recordComponents;
+	}
+
+	public List<Member> getFields() {
+		return fields;
+	}
+
+	public List<Member> getMethods() {
+		return methods;
+	}
+
+	/**
+	 * Gets the internal names of the classes that are referenced by this class.
+	 * <p>
+	 * The result contains the classes in the constant pool, and the ones that are referenced from the descriptors and
+	 * signatures of the class, its members, and the member references in the constant pool. Array types are resolved
+	 * to their element types. The result may contain the name of the class itself.
+	 * 
+	 * @return The referenced class names.
+	 */
+	public Set<String> getReferencedClassNames() {
+		return referencedClassNames;
+	}
+
+	/**
+	 * Collects the internal class names that are present in the argument field, method descriptor, or generic
+	 * signature.
+	 * 
+	 * @param descriptor
+	 *            The descriptor or signature. May be <code>null</code>.
+	 * @param result
+	 *            The collection to add the class names to.
+	 */
+	public static void collectDescriptorClassNames(String descriptor, Collection<? super String> result) {
+		if (descriptor == null) {
+			return;
+		}
+		int len = descriptor.length();
+		for (int i = 0; i < len; i++) {
+			char c = descriptor.charAt(i);
+			if (c != 'L' || (i > 0 && !isTypeStartDelimiter(descriptor.charAt(i - 1)))) {
+				continue;
+			}
+			int end = i + 1;
+			while (end < len) {
+				char ec = descriptor.charAt(end);
+				if (ec == ';' || ec == '<') {
+					break;
+				}
+				++end;
+			}
+			if (end > i + 1) {
+				result.add(descriptor.substring(i + 1, end));
+			}
+			i = end;
+		}
+	}
+
+	private static boolean isTypeStartDelimiter(char c) {
+		switch (c) {
+			case '(':
+			case ')':
+			case '[':
+			case '<':
+			case '>':
+			case ';':
+			case ':':
+			case '+':
+			case '-':
+			case '^':
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Invalid class file magic.");
+		}
+		//minor and major versions
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+
+		Object[] cp = readConstantPool(in);
+
+		Set<String> referenced = new LinkedHashSet<>();
+		for (int i = 1; i < cp.length; i++) {
+			Object c = cp[i];
+			if (c instanceof ClassConstant) {
+				String cname = (String) cp[((ClassConstant) c).nameIndex];
+				if (cname.startsWith("[")) {
+					collectDescriptorClassNames(cname, referenced);
+				} else {
+					referenced.add(cname);
+				}
+			} else if (c instanceof DescriptorConstant) {
+				collectDescriptorClassNames((String) cp[((DescriptorConstant) c).descriptorIndex], referenced);
+			}
+		}
+
+		accessFlags = in.readUnsignedShort();
+		className = getClassNameConstant(cp, in.readUnsignedShort());
+		superClassName = getClassNameConstant(cp, in.readUnsignedShort());
+		int interfacecount = in.readUnsignedShort();
+		List<String> itfs = new ArrayList<>(interfacecount);
+		for (int i = 0; i < interfacecount; i++) {
+			itfs.add(getClassNameConstant(cp, in.readUnsignedShort()));
+		}
+		interfaceNames = Collections.unmodifiableList(itfs);
+		fields = readMembers(in, cp);
+		methods = readMembers(in, cp);
+
+		List<String> annots = new ArrayList<>();
+		List<String> formattedannots = new ArrayList<>();
+		List<String> inners = new ArrayList<>();
+		List<String> permitted = new ArrayList<>();
+		List<String> components = new ArrayList<>();
+		int attrcount = in.readUnsignedShort();
+		for (int i = 0; i < attrcount; i++) {
+			String attrname = (String) cp[in.readUnsignedShort()];
+			int len = in.readInt();
+			switch (attrname) {
+				case "Signature": {
+					signature = (String) cp[in.readUnsignedShort()];
+					break;
+				}
+				case "RuntimeVisibleAnnotations":
+				case "RuntimeInvisibleAnnotations": {
+					readAnnotations(in, cp, annots, formattedannots);
+					break;
+				}
+				case "InnerClasses": {
+					readInnerClasses(in, cp, inners);
+					break;
+				}
+				case "PermittedSubclasses": {
+					int count = in.readUnsignedShort();
+					for (int j = 0; j < count; j++) {
+						permitted.add(getClassNameConstant(cp, in.readUnsignedShort()));
+					}
+					break;
+				}
+				case "Record": {
+					readRecordComponents(in, cp, referenced, components);
+					break;
+				}
+				default: {
+					skipFully(in, len);
+					break;
+				}
+			}
+		}
+		annotationTypes = Collections.unmodifiableList(annots);
+		annotations = Collections.unmodifiableList(formattedannots);
+		innerClasses = Collections.unmodifiableList(inners);
+		permittedSubclassNames = Collections.unmodifiableList(permitted);
+		recordComponents = Collections.unmodifiableList(components);
+
+		collectDescriptorClassNames(signature, referenced);
+		for (String annot : annotationTypes) {
+			collectDescriptorClassNames(annot, referenced);
+		}
+		for (List<Member> members : Arrays.asList(fields, methods)) {
+			for (Member m : members) {
+				collectDescriptorClassNames(m.descriptor, referenced);
+				collectDescriptorClassNames(m.signature, referenced);
+				for (String annot : m.annotationTypes) {
+					collectDescriptorClassNames(annot, referenced);
+				}
+			}
+		}
+		referencedClassNames = Collections.unmodifiableSet(referenced);
+	}
+
+	private static List<Member> readMembers(DataInputStream in, Object[] cp) throws IOException {
+		int count = in.readUnsignedShort();
+		List<Member> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Member m = new Member();
+			m.accessFlags = in.readUnsignedShort();
+			m.name = (String) cp[in.readUnsignedShort()];
+			m.descriptor = (String) cp[in.readUnsignedShort()];
+			List<String> annots = new ArrayList<>();
+			List<String> formattedannots = new ArrayList<>();
+			List<String> exceptions = new ArrayList<>();
+			int attrcount = in.readUnsignedShort();
+			for (int j = 0; j < attrcount; j++) {
+				String attrname = (String) cp[in.readUnsignedShort()];
+				int len = in.readInt();
+				switch (attrname) {
+					case "Signature": {
+						m.signature = (String) cp[in.readUnsignedShort()];
+						break;
+					}
+					case "ConstantValue": {
+						Object val = cp[in.readUnsignedShort()];
+						if (val instanceof StringConstant) {
+							val = ((StringConstant) val).value;
+						}
+						m.constantValue = val;
+						break;
+					}
+					case "Exceptions": {
+						int excount = in.readUnsignedShort();
+						for (int k = 0; k < excount; k++) {
+							exceptions.add(getClassNameConstant(cp, in.readUnsignedShort()));
+						}
+						break;
+					}
+					case "RuntimeVisibleAnnotations":
+					case "RuntimeInvisibleAnnotations": {
+						readAnnotations(in, cp, annots, formattedannots);
+						break;
+					}
+					case "AnnotationDefault": {
+						StringBuilder sb = new StringBuilder();
+						readAnnotationElementValue(in, cp, sb);
+						m.annotationDefault = sb.toString();
+						break;
+					}
+					default: {
+						skipFully(in, len);
+						break;
+					}
+				}
+			}
+			m.annotationTypes = Collections.unmodifiableList(annots);
+			m.annotations = Collections.unmodifiableList(formattedannots);
+			m.exceptionNames = Collections.unmodifiableList(exceptions);
+			result.add(m);
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	private static void readAnnotations(DataInputStream in, Object[] cp, List<String> types, List<String> formatted)
+			throws IOException {
+		int count = in.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			types.add(readAnnotation(in, cp, sb));
+			formatted.add(sb.toString());
+		}
+	}
+
+	/**
+	 * Reads an annotation and appends its type and element values to the string builder.
+	 * 
+	 * @return The type descriptor of the annotation.
+	 */
+	private static String readAnnotation(DataInputStream in, Object[] cp, StringBuilder sb) throws IOException {
+		String type = (String) cp[in.readUnsignedShort()];
+		sb.append(type).append('(');
+		int paircount = in.readUnsignedShort();
+		for (int i = 0; i < paircount; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append((String) cp[in.readUnsignedShort()]).append('=');
+			readAnnotationElementValue(in, cp, sb);
+		}
+		sb.append(')');
+		return type;
+	}
+
+	private static void readAnnotationElementValue(DataInputStream in, Object[] cp, StringBuilder sb)
+			throws IOException {
+		int tag = in.readUnsignedByte();
+		sb.append((char) tag);
+		switch (tag) {
+			case 'e': {
+				//enum type name and constant name
+				sb.append((String) cp[in.readUnsignedShort()]).append('.').append((String) cp[in.readUnsignedShort()]);
+				break;
+			}
+			case 'c': {
+				//return type descriptor of the class
+				sb.append((String) cp[in.readUnsignedShort()]);
+				break;
+			}
+			case '@': {
+				readAnnotation(in, cp, sb);
+				break;
+			}
+			case '[': {
+				int count = in.readUnsignedShort();
+				sb.append('{');
+				for (int i = 0; i < count; i++) {
+					if (i > 0) {
+						sb.append(',');
+					}
+					readAnnotationElementValue(in, cp, sb);
+				}
+				sb.append('}');
+				break;
+			}
+			default: {
+				//const_value_index, the string constants point directly to the UTF8 entry
+				sb.append(cp[in.readUnsignedShort()]);
+				break;
+			}
+		}
+	}
+
+	private void readInnerClasses(DataInputStream in, Object[] cp, List<String> result) throws IOException {
+		int count = in.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			String inner = getClassNameConstant(cp, in.readUnsignedShort());
+			String outer = getClassNameConstant(cp, in.readUnsignedShort());
+			int nameindex = in.readUnsignedShort();
+			String name = nameindex == 0 ? null : (String) cp[nameindex];
+			int access = in.readUnsignedShort();
+			if (className.equals(inner) || className.equals(outer)) {
+				result.add(inner + " " + outer + " " + name + " " + access);
+			}
+		}
+	}
+
+	private static void readRecordComponents(DataInputStream in, Object[] cp, Set<String> referenced,
+			List<String> result) throws IOException {
+		int count = in.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			String name = (String) cp[in.readUnsignedShort()];
+			String descriptor = (String) cp[in.readUnsignedShort()];
+			String componentsignature = null;
+			List<String> annottypes = new ArrayList<>();
+			List<String> formattedannots = new ArrayList<>();
+			int attrcount = in.readUnsignedShort();
+			for (int j = 0; j < attrcount; j++) {
+				String attrname = (String) cp[in.readUnsignedShort()];
+				int len = in.readInt();
+				switch (attrname) {
+					case "Signature": {
+						componentsignature = (String) cp[in.readUnsignedShort()];
+						break;
+					}
+					case "RuntimeVisibleAnnotations":
+					case "RuntimeInvisibleAnnotations": {
+						readAnnotations(in, cp, annottypes, formattedannots);
+						break;
+					}
+					default: {
+						skipFully(in, len);
+						break;
+					}
+				}
+			}
+			collectDescriptorClassNames(descriptor, referenced);
+			collectDescriptorClassNames(componentsignature, referenced);
+			for (String annot : annottypes) {
+				collectDescriptorClassNames(annot, referenced);
+			}
+			result.add(name + " " + descriptor + " " + componentsignature + " " + formattedannots);
+		}
+	}
+
+	private static Object[] readConstantPool(DataInputStream in) throws IOException {
+		int count = in.readUnsignedShort();
+		Object[] cp = new Object[count];
+		for (int i = 1; i < count; i++) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+				case CONSTANT_Utf8: {
+					cp[i] = in.readUTF();
+					break;
+				}
+				case CONSTANT_Integer: {
+					cp[i] = in.readInt();
+					break;
+				}
+				case CONSTANT_Float: {
+					cp[i] = in.readFloat();
+					break;
+				}
+				case CONSTANT_Long: {
+					cp[i] = in.readLong();
+					//takes two slots
+					++i;
+					break;
+				}
+				case CONSTANT_Double: {
+					cp[i] = in.readDouble();
+					//takes two slots
+					++i;
+					break;
+				}
+				case CONSTANT_Class: {
+					cp[i] = new ClassConstant(in.readUnsignedShort());
+					break;
+				}
+				case CONSTANT_String: {
+					cp[i] = new StringConstant(in.readUnsignedShort());
+					break;
+				}
+				case CONSTANT_MethodType: {
+					cp[i] = new DescriptorConstant(in.readUnsignedShort());
+					break;
+				}
+				case CONSTANT_NameAndType: {
+					//name index
+					in.readUnsignedShort();
+					cp[i] = new DescriptorConstant(in.readUnsignedShort());
+					break;
+				}
+				case CONSTANT_Module:
+				case CONSTANT_Package: {
+					in.readUnsignedShort();
+					break;
+				}
+				case CONSTANT_MethodHandle: {
+					skipFully(in, 3);
+					break;
+				}
+				case CONSTANT_Fieldref:
+				case CONSTANT_Methodref:
+				case CONSTANT_InterfaceMethodref:
+				case CONSTANT_Dynamic:
+				case CONSTANT_InvokeDynamic: {
+					skipFully(in, 4);
+					break;
+				}
+				default: {
+					throw new IOException("Unknown constant pool tag: " + tag + " at index: " + i);
+				}
+			}
+		}
+		for (int i = 1; i < count; i++) {
+			Object c = cp[i];
+			if (c instanceof StringConstant) {
+				StringConstant sc = (StringConstant) c;
+				sc.value = (String) cp[sc.utfIndex];
+			}
+		}
+		return cp;
+	}
+
+	private static String getClassNameConstant(Object[] cp, int index) {
+		if (index == 0) {
+			return null;
+		}
+		return (String) cp[((ClassConstant) cp[index]).nameIndex];
+	}
+
+	private static void skipFully(DataInputStream in, int len) throws IOException {
+		while (len > 0) {
+			int skipped = in.skipBytes(len);
+			if (skipped <= 0) {
+				throw new IOException("Unexpected end of class file.");
+			}
+			len -= skipped;
+		}
+	}
+
+	private static final class ClassConstant {
+		final int nameIndex;
+
+		ClassConstant(int nameIndex) {
+			this.nameIndex = nameIndex;
+		}
+	}
+
+	/**
+	 * A constant that refers to a descriptor. (<code>NameAndType</code> and <code>MethodType</code>)
+	 */
+	private static final class DescriptorConstant {
+		final int descriptorIndex;
+
+		DescriptorConstant(int descriptorIndex) {
+			this.descriptorIndex = descriptorIndex;
+		}
+	}
+
+	private static final class StringConstant {
+		final int utfIndex;
+		String value;
+
+		StringConstant(int utfIndex) {
+			this.utfIndex = utfIndex;
+		}
+	}
+
+	/**
+	 * Field or method declared in a class file.
+	 */
+	public static final class Member {
+		private int accessFlags;
+		private String name;
+		private String descriptor;
+		private String signature;
+		private Object constantValue;
+		private List<String> exceptionNames;
+		private List<String> annotationTypes;
+		private List<String> annotations;
+		private String annotationDefault;
+
+		Member() {
+		}
+
+		public int getAccessFlags() {
+			return accessFlags;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getDescriptor() {
+			return descriptor;
+		}
+
+		public String getSignature() {
+			return signature;
+		}
+
+		/**
+		 * Gets the value of the <code>ConstantValue</code> attribute of a field.
+		 * 
+		 * @return The constant value or <code>null</code> if none.
+		 */
+		public Object getConstantValue() {
+			return constantValue;
+		}
+
+		public List<String> getExceptionNames() {
+			return exceptionNames;
+		}
+
+		public List<String> getAnnotationTypes() {
+			return annotationTypes;
+		}
+
+		/**
+		 * Gets the annotations that are present on the member, including their element values.
+		 * 
+		 * @return The formatted annotations.
+		 * @see ClassFileInfo#getAnnotations()
+		 */
+		public List<String> getAnnotations() {
+			return annotations;
+		}
+
+		/**
+		 * Gets the formatted value of the <code>AnnotationDefault</code> attribute of an annotation type method.
+		 * 
+		 * @return The default value or <code>null</code> if none.
+		 */
+		public String getAnnotationDefault() {
+			return annotationDefault;
+		}
+	}
+}
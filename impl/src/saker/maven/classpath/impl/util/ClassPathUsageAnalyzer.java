@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Determines the class path entries that are used by Java source files.
+ * <p>
+ * The source files are scanned for their package declarations, imports, and qualified names. The classes that these
+ * refer to are looked up in the class path, along with the types that appear in the supertypes and the non-private
+ * member signatures of the found classes, transitively. These are the classes that the compiler may need when the
+ * sources are compiled.
+ * <p>
+ * The sources are used instead of the compiled classes, so the usages are determined correctly when a source file
+ * starts using a class from an entry that was not used before.
+ */
+public final class ClassPathUsageAnalyzer {
+	private static final int DIRECTIVE_NONE = 0;
+	private static final int DIRECTIVE_PACKAGE = 1;
+	private static final int DIRECTIVE_IMPORT = 2;
+
+	private ClassPathUsageAnalyzer() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Provides access to the contents of a class path.
+	 * 
+	 * @param <E>
+	 *            The type of the class path entries.
+	 */
+	public interface ClassPathLookup<E> {
+		/**
+		 * Gets the class path entry that contains the given class.
+		 * 
+		 * @param classname
+		 *            The binary name of the class. (E.g. <code>java.util.Map$Entry</code>.)
+		 * @return The entry or <code>null</code> if the class is not in the class path.
+		 */
+		public E getClassEntry(String classname);
+
+		/**
+		 * Gets the binary names of the classes in the given package.
+		 * 
+		 * @param packagename
+		 *            The package name.
+		 * @return The class names. Empty if the package is not in the class path.
+		 */
+		public Collection<String> getPackageClassNames(String packagename);
+
+		/**
+		 * Reads the class file of the given class.
+		 * 
+		 * @param entry
+		 *            The entry that contains the class.
+		 * @param classname
+		 *            The binary name of the class.
+		 * @return The class file info or <code>null</code> if it cannot be read.
+		 */
+		public ClassFileInfo readClass(E entry, String classname);
+	}
+
+	/**
+	 * Scans a Java source file for the names that may refer to classes in the class path.
+	 * <p>
+	 * The package of the source file and the packages of the on-demand imports are added to the package names. The
+	 * single type and static imports, and the qualified names in the source (e.g. <code>java.util.List</code>,
+	 * <code>Map.Entry</code>, <code>list.size</code>) are added to the qualified names. Comments and literals are
+	 * ignored.
+	 * 
+	 * @param source
+	 *            The contents of the source file.
+	 * @param packagenames
+	 *            The collection to add the package names to.
+	 * @param qualifiednames
+	 *            The collection to add the qualified names to.
+	 */
+	public static void scanSource(CharSequence source, Collection<? super String> packagenames,
+			Collection<? super String> qualifiednames) {
+		NameCollector collector = new NameCollector(packagenames, qualifiednames);
+		int len = source.length();
+		int i = 0;
+		while (i < len) {
+			char c = source.charAt(i);
+			if (Character.isJavaIdentifierStart(c)) {
+				int end = i + 1;
+				while (end < len && Character.isJavaIdentifierPart(source.charAt(end))) {
+					++end;
+				}
+				collector.identifier(source.subSequence(i, end).toString());
+				i = end;
+				continue;
+			}
+			if (Character.isDigit(c)) {
+				//numeric literal, may contain dots and letters
+				collector.finish();
+				int end = i + 1;
+				while (end < len && (Character.isJavaIdentifierPart(source.charAt(end)) || source.charAt(end) == '.')) {
+					++end;
+				}
+				i = end;
+				continue;
+			}
+			if (Character.isWhitespace(c)) {
+				++i;
+				continue;
+			}
+			char next = i + 1 < len ? source.charAt(i + 1) : 0;
+			switch (c) {
+				case '.': {
+					collector.dot();
+					++i;
+					break;
+				}
+				case '*': {
+					collector.star();
+					++i;
+					break;
+				}
+				case '/': {
+					if (next == '/') {
+						i = skipLineComment(source, i + 2);
+					} else if (next == '*') {
+						i = skipBlockComment(source, i + 2);
+					} else {
+						collector.finish();
+						++i;
+					}
+					break;
+				}
+				case '"': {
+					collector.finish();
+					if (next == '"' && i + 2 < len && source.charAt(i + 2) == '"') {
+						i = skipTextBlock(source, i + 3);
+					} else {
+						i = skipLiteral(source, i + 1, '"');
+					}
+					break;
+				}
+				case '\'': {
+					collector.finish();
+					i = skipLiteral(source, i + 1, '\'');
+					break;
+				}
+				case ';': {
+					collector.endDirective();
+					++i;
+					break;
+				}
+				default: {
+					collector.finish();
+					++i;
+					break;
+				}
+			}
+		}
+		collector.finish();
+	}
+
+	/**
+	 * Collects the class path entries that contain the classes referenced by the given names, and the classes that
+	 * they depend on.
+	 * 
+	 * @param packagenames
+	 *            The package names collected by {@link #scanSource(CharSequence, Collection, Collection)}.
+	 * @param qualifiednames
+	 *            The qualified names collected by {@link #scanSource(CharSequence, Collection, Collection)}.
+	 * @param lookup
+	 *            The class path lookup.
+	 * @return The used class path entries.
+	 */
+	public static <E> Set<E> collectUsedEntries(Collection<String> packagenames, Collection<String> qualifiednames,
+			ClassPathLookup<E> lookup) {
+		Set<String> visited = new HashSet<>();
+		Deque<String> worklist = new ArrayDeque<>();
+		for (String pkg : packagenames) {
+			for (String cname : lookup.getPackageClassNames(pkg)) {
+				if (visited.add(cname)) {
+					worklist.add(cname);
+				}
+			}
+		}
+		for (String name : qualifiednames) {
+			String cname = resolveClassName(name, lookup);
+			if (cname != null && visited.add(cname)) {
+				worklist.add(cname);
+			}
+		}
+		Set<E> result = new LinkedHashSet<>();
+		Set<String> dependencies = new LinkedHashSet<>();
+		while (!worklist.isEmpty()) {
+			String cname = worklist.removeFirst();
+			E entry = lookup.getClassEntry(cname);
+			if (entry == null) {
+				//JDK or unresolved class
+				continue;
+			}
+			result.add(entry);
+			ClassFileInfo cf = lookup.readClass(entry, cname);
+			if (cf == null) {
+				continue;
+			}
+			dependencies.clear();
+			collectSignatureDependencies(cf, dependencies);
+			for (String internalname : dependencies) {
+				String depname = internalname.replace('/', '.');
+				if (visited.add(depname)) {
+					worklist.addLast(depname);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Collects the internal names of the classes that the compiler may need when the given class is used.
+	 */
+	private static void collectSignatureDependencies(ClassFileInfo cf, Collection<String> result) {
+		String superclass = cf.getSuperClassName();
+		if (superclass != null) {
+			result.add(superclass);
+		}
+		result.addAll(cf.getInterfaceNames());
+		ClassFileInfo.collectDescriptorClassNames(cf.getSignature(), result);
+		for (ClassFileInfo.Member m : cf.getFields()) {
+			if (((m.getAccessFlags() & ClassFileInfo.ACC_PRIVATE) == 0)) {
+				ClassFileInfo.collectDescriptorClassNames(m.getDescriptor(), result);
+				ClassFileInfo.collectDescriptorClassNames(m.getSignature(), result);
+			}
+		}
+		for (ClassFileInfo.Member m : cf.getMethods()) {
+			if (((m.getAccessFlags() & ClassFileInfo.ACC_PRIVATE) == 0)) {
+				ClassFileInfo.collectDescriptorClassNames(m.getDescriptor(), result);
+				ClassFileInfo.collectDescriptorClassNames(m.getSignature(), result);
+				result.addAll(m.getExceptionNames());
+			}
+		}
+	}
+
+	/**
+	 * Resolves a qualified name in the source to the binary name of the class that it refers to.
+	 * <p>
+	 * The longest prefix of the name that is a class is selected, and the remaining parts are resolved as its nested
+	 * classes as long as they exist.
+	 */
+	private static String resolveClassName(String name, ClassPathLookup<?> lookup) {
+		for (int end = name.length(); end > 0; end = name.lastIndexOf('.', end - 1)) {
+			String prefix = name.substring(0, end);
+			if (lookup.getClassEntry(prefix) == null) {
+				continue;
+			}
+			String result = prefix;
+			while (end < name.length()) {
+				int nextend = name.indexOf('.', end + 1);
+				if (nextend < 0) {
+					nextend = name.length();
+				}
+				String nested = result + "$" + name.substring(end + 1, nextend);
+				if (lookup.getClassEntry(nested) == null) {
+					break;
+				}
+				result = nested;
+				end = nextend;
+			}
+			return result;
+		}
+		return null;
+	}
+
+	private static int skipLineComment(CharSequence source, int i) {
+		int len = source.length();
+		while (i < len && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+			++i;
+		}
+		return i;
+	}
+
+	private static int skipBlockComment(CharSequence source, int i) {
+		int len = source.length();
+		while (i + 1 < len && !(source.charAt(i) == '*' && source.charAt(i + 1) == '/')) {
+			++i;
+		}
+		return Math.min(i + 2, len);
+	}
+
+	private static int skipLiteral(CharSequence source, int i, char quote) {
+		int len = source.length();
+		while (i < len) {
+			char c = source.charAt(i++);
+			if (c == '\\') {
+				++i;
+			} else if (c == quote || c == '\n') {
+				break;
+			}
+		}
+		return Math.min(i, len);
+	}
+
+	private static int skipTextBlock(CharSequence source, int i) {
+		int len = source.length();
+		while (i < len) {
+			char c = source.charAt(i);
+			if (c == '\\') {
+				i += 2;
+				continue;
+			}
+			if (c == '"' && i + 2 < len && source.charAt(i + 1) == '"' && source.charAt(i + 2) == '"') {
+				return i + 3;
+			}
+			++i;
+		}
+		return len;
+	}
+
+	/**
+	 * Assembles the dotted names from the identifier and dot tokens of the source.
+	 */
+	private static final class NameCollector {
+		private final Collection<? super String> packageNames;
+		private final Collection<? super String> qualifiedNames;
+
+		private final StringBuilder name = new StringBuilder();
+		private int segments;
+		private boolean dotted;
+		private boolean onDemand;
+		private int directive = DIRECTIVE_NONE;
+
+		public NameCollector(Collection<? super String> packageNames, Collection<? super String> qualifiedNames) {
+			this.packageNames = packageNames;
+			this.qualifiedNames = qualifiedNames;
+		}
+
+		public void identifier(String ident) {
+			if (segments > 0 && dotted) {
+				name.append('.').append(ident);
+				++segments;
+				dotted = false;
+				return;
+			}
+			finish();
+			if (directive == DIRECTIVE_NONE) {
+				if ("package".equals(ident)) {
+					directive = DIRECTIVE_PACKAGE;
+					return;
+				}
+				if ("import".equals(ident)) {
+					directive = DIRECTIVE_IMPORT;
+					return;
+				}
+			} else if (directive == DIRECTIVE_IMPORT && "static".equals(ident)) {
+				return;
+			}
+			name.append(ident);
+			segments = 1;
+		}
+
+		public void dot() {
+			if (segments > 0 && !dotted) {
+				dotted = true;
+			} else {
+				finish();
+			}
+		}
+
+		public void star() {
+			if (directive == DIRECTIVE_IMPORT && dotted) {
+				onDemand = true;
+				dotted = false;
+			} else {
+				finish();
+			}
+		}
+
+		public void endDirective() {
+			finish();
+			directive = DIRECTIVE_NONE;
+		}
+
+		public void finish() {
+			if (segments > 0) {
+				String n = name.toString();
+				switch (directive) {
+					case DIRECTIVE_PACKAGE: {
+						packageNames.add(n);
+						break;
+					}
+					case DIRECTIVE_IMPORT: {
+						qualifiedNames.add(n);
+						if (onDemand) {
+							packageNames.add(n);
+						}
+						break;
+					}
+					default: {
+						if (segments > 1) {
+							qualifiedNames.add(n);
+						}
+						break;
+					}
+				}
+			}
+			name.setLength(0);
+			segments = 0;
+			dotted = false;
+			onDemand = false;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.util.ArrayList;
+import java.util.List;
+
+import saker.build.file.path.SakerPath;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import saker.std.api.file.location.LocalFileLocation;
+
+/**
+ * Reader for the data written by {@link CompactExternalWriter}.
+ */
+public final class CompactExternalReader {
+	private final ObjectInput in;
+	private final List<String> stringTable = new ArrayList<>();
+	private final List<Object> sharedObjectTable = new ArrayList<>();
+	private String previousPath = "";
+
+	public CompactExternalReader(ObjectInput in) {
+		this.in = in;
+	}
+
+	public ObjectInput getObjectInput() {
+		return in;
+	}
+
+	public int readVarInt() throws IOException {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return result;
+			}
+		}
+		throw new InvalidObjectException("Malformed variable length integer.");
+	}
+
+	public int readByte() throws IOException {
+		return in.readUnsignedByte();
+	}
+
+	public Object readObject() throws IOException, ClassNotFoundException {
+		return in.readObject();
+	}
+
+	public Object readSharedObject() throws IOException, ClassNotFoundException {
+		int idx = readVarInt();
+		if (idx == 0) {
+			return null;
+		}
+		if (idx == 1) {
+			Object result = in.readObject();
+			sharedObjectTable.add(result);
+			return result;
+		}
+		try {
+			return sharedObjectTable.get(idx - 2);
+		} catch (IndexOutOfBoundsException e) {
+			throw new InvalidObjectException("Invalid shared object index: " + (idx - 2));
+		}
+	}
+
+	public String readString() throws IOException {
+		int idx = readVarInt();
+		if (idx == 0) {
+			return null;
+		}
+		if (idx == 1) {
+			String result = in.readUTF();
+			stringTable.add(result);
+			return result;
+		}
+		try {
+			return stringTable.get(idx - 2);
+		} catch (IndexOutOfBoundsException e) {
+			throw new InvalidObjectException("Invalid string table index: " + (idx - 2));
+		}
+	}
+
+	public SakerPath readPath() throws IOException {
+		int common = readVarInt();
+		if (common > previousPath.length()) {
+			throw new InvalidObjectException("Invalid path prefix length: " + common);
+		}
+		String pathstr = previousPath.substring(0, common) + in.readUTF();
+		previousPath = pathstr;
+		return SakerPath.valueOf(pathstr);
+	}
+
+	public FileLocation readFileLocation() throws IOException, ClassNotFoundException {
+		int kind = in.readUnsignedByte();
+		switch (kind) {
+			case CompactExternalWriter.FILE_LOCATION_NULL: {
+				return null;
+			}
+			case CompactExternalWriter.FILE_LOCATION_LOCAL: {
+				return LocalFileLocation.create(readPath());
+			}
+			case CompactExternalWriter.FILE_LOCATION_EXECUTION: {
+				return ExecutionFileLocation.create(readPath());
+			}
+			case CompactExternalWriter.FILE_LOCATION_OBJECT: {
+				return (FileLocation) in.readObject();
+			}
+			default: {
+				throw new InvalidObjectException("Invalid file location kind: " + kind);
+			}
+		}
+	}
+
+	public ArtifactCoordinates readArtifactCoordinates() throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		String groupid = readString();
+		String artifactid = readString();
+		String classifier = readString();
+		String extension = readString();
+		String version = readString();
+		return ArtifactCoordinatesInterner
+				.intern(new ArtifactCoordinates(groupid, artifactid, classifier, extension, version));
+	}
+
+	/**
+	 * Reads and validates the format version.
+	 * 
+	 * @param expectedversion
+	 *            The expected version.
+	 * @throws IOException
+	 *             If the version doesn't match.
+	 */
+	public void readFormatVersion(int expectedversion) throws IOException {
+		int version = in.readUnsignedByte();
+		if (version != expectedversion) {
+			throw new InvalidObjectException(
+					"Unsupported serialized format version: " + version + " expected: " + expectedversion);
+		}
+	}
+}
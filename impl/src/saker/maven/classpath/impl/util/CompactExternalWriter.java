@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.util.HashMap;
+import java.util.Map;
+
+import saker.build.file.path.SakerPath;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import saker.std.api.file.location.FileLocationVisitor;
+import saker.std.api.file.location.LocalFileLocation;
+
+/**
+ * Writer for the compact external format of the class path objects.
+ * <p>
+ * The writer keeps a string table so repeated strings (e.g. group identifiers, versions) are only written once, and
+ * front-codes the written paths based on the previously written one, as class path entries usually share the same
+ * repository directory prefix.
+ * <p>
+ * The data must be read with a {@link CompactExternalReader}, reading the same sequence of values.
+ */
+public final class CompactExternalWriter {
+	static final int FILE_LOCATION_NULL = 0;
+	static final int FILE_LOCATION_LOCAL = 1;
+	static final int FILE_LOCATION_EXECUTION = 2;
+	static final int FILE_LOCATION_OBJECT = 3;
+
+	private final ObjectOutput out;
+	private final Map<String, Integer> stringTable = new HashMap<>();
+	private final Map<Object, Integer> sharedObjectTable = new HashMap<>();
+	private String previousPath = "";
+
+	public CompactExternalWriter(ObjectOutput out) {
+		this.out = out;
+	}
+
+	public ObjectOutput getObjectOutput() {
+		return out;
+	}
+
+	public void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	public void writeFormatVersion(int version) throws IOException {
+		out.writeByte(version);
+	}
+
+	public void writeByte(int value) throws IOException {
+		out.writeByte(value);
+	}
+
+	public void writeObject(Object obj) throws IOException {
+		out.writeObject(obj);
+	}
+
+	/**
+	 * Writes an object that is expected to be shared by multiple written objects.
+	 * <p>
+	 * Equal objects are only written once, the subsequent occurrences are written as a reference to the first one.
+	 * 
+	 * @param obj
+	 *            The object. May be <code>null</code>.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public void writeSharedObject(Object obj) throws IOException {
+		if (obj == null) {
+			writeVarInt(0);
+			return;
+		}
+		Integer idx = sharedObjectTable.get(obj);
+		if (idx != null) {
+			writeVarInt(idx + 2);
+			return;
+		}
+		sharedObjectTable.put(obj, sharedObjectTable.size());
+		writeVarInt(1);
+		out.writeObject(obj);
+	}
+
+	/**
+	 * Writes a string using the string table of this writer.
+	 * 
+	 * @param str
+	 *            The string. May be <code>null</code>.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public void writeString(String str) throws IOException {
+		if (str == null) {
+			writeVarInt(0);
+			return;
+		}
+		Integer idx = stringTable.get(str);
+		if (idx != null) {
+			writeVarInt(idx + 2);
+			return;
+		}
+		stringTable.put(str, stringTable.size());
+		writeVarInt(1);
+		out.writeUTF(str);
+	}
+
+	/**
+	 * Writes a path, front-coded based on the previously written path.
+	 * 
+	 * @param path
+	 *            The path.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public void writePath(SakerPath path) throws IOException {
+		String pathstr = path.toString();
+		String prev = previousPath;
+		int max = Math.min(pathstr.length(), prev.length());
+		int common = 0;
+		while (common < max && pathstr.charAt(common) == prev.charAt(common)) {
+			++common;
+		}
+		writeVarInt(common);
+		out.writeUTF(pathstr.substring(common));
+		previousPath = pathstr;
+	}
+
+	/**
+	 * Writes a file location, using the front-coded path format for the local and execution file locations.
+	 * 
+	 * @param location
+	 *            The file location. May be <code>null</code>.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public void writeFileLocation(FileLocation location) throws IOException {
+		if (location == null) {
+			out.writeByte(FILE_LOCATION_NULL);
+			return;
+		}
+		SakerPath[] path = { null };
+		int[] kind = { FILE_LOCATION_OBJECT };
+		try {
+			location.accept(new FileLocationVisitor() {
+				@Override
+				public void visit(LocalFileLocation loc) {
+					kind[0] = FILE_LOCATION_LOCAL;
+					path[0] = loc.getLocalPath();
+				}
+
+				@Override
+				public void visit(ExecutionFileLocation loc) {
+					kind[0] = FILE_LOCATION_EXECUTION;
+					path[0] = loc.getPath();
+				}
+			});
+		} catch (UnsupportedOperationException e) {
+			//some other kind of file location
+			kind[0] = FILE_LOCATION_OBJECT;
+		}
+		out.writeByte(kind[0]);
+		if (kind[0] == FILE_LOCATION_OBJECT) {
+			out.writeObject(location);
+		} else {
+			writePath(path[0]);
+		}
+	}
+
+	/**
+	 * Writes the artifact coordinates by encoding each part with the string table.
+	 * 
+	 * @param coordinates
+	 *            The coordinates. May be <code>null</code>.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public void writeArtifactCoordinates(ArtifactCoordinates coordinates) throws IOException {
+		if (coordinates == null) {
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+		writeString(coordinates.getGroupId());
+		writeString(coordinates.getArtifactId());
+		writeString(coordinates.getClassifier());
+		writeString(coordinates.getExtension());
+		writeString(coordinates.getVersion());
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Computes a hash of the application binary interface of the classes in a JAR.
+ * <p>
+ * The hash only includes the signatures of the public and protected classes and members. Method bodies, private
+ * members and non-class resources don't contribute to it. Member ordering is normalized, so reordering declarations
+ * doesn't change the result.
+ * <p>
+ * Non-public classes in the JAR that are supertypes of the included classes are included as well, as their public
+ * and protected members are inherited by the public subclasses. Annotation element values, annotation defaults,
+ * constant values, nested class access flags, permitted subclasses and record components are part of the hash, as
+ * changing them affects the users of the API.
+ */
+public final class JarAbiHasher {
+	private static final String HASH_ALGORITHM = "SHA-256";
+
+	private static final int CLASS_ACCESS_MASK = ClassFileInfo.ACC_PUBLIC | ClassFileInfo.ACC_FINAL
+			| ClassFileInfo.ACC_INTERFACE | ClassFileInfo.ACC_ABSTRACT | ClassFileInfo.ACC_ANNOTATION
+			| ClassFileInfo.ACC_ENUM;
+	private static final int FIELD_ACCESS_MASK = ClassFileInfo.ACC_PUBLIC | ClassFileInfo.ACC_PROTECTED
+			| ClassFileInfo.ACC_STATIC | ClassFileInfo.ACC_FINAL | ClassFileInfo.ACC_ENUM;
+	private static final int METHOD_ACCESS_MASK = ClassFileInfo.ACC_PUBLIC | ClassFileInfo.ACC_PROTECTED
+			| ClassFileInfo.ACC_STATIC | ClassFileInfo.ACC_FINAL | ClassFileInfo.ACC_ABSTRACT
+			| ClassFileInfo.ACC_VARARGS;
+
+	private JarAbiHasher() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Computes the ABI hash of the JAR read from the argument stream.
+	 * 
+	 * @param jarstream
+	 *            The input stream of the JAR. It is not closed by this method.
+	 * @return The computed hash.
+	 * @throws IOException
+	 *             In case of I/O error or if a class file is malformed.
+	 */
+	public static byte[] hash(InputStream jarstream) throws IOException {
+		//sorted by entry name so the hash is independent from the order of the entries in the archive
+		TreeMap<String, byte[]> classabis = new TreeMap<>();
+		Map<String, ClassFileInfo> classes = new HashMap<>();
+		Map<String, String> classentrynames = new HashMap<>();
+		ZipInputStream zis = new ZipInputStream(jarstream);
+		byte[] buffer = new byte[8192];
+		for (ZipEntry ze; (ze = zis.getNextEntry()) != null;) {
+			String name = ze.getName();
+			if (ze.isDirectory() || !name.endsWith(".class")) {
+				continue;
+			}
+			byte[] bytes = readEntry(zis, buffer);
+			if (name.endsWith("module-info.class") || name.endsWith("package-info.class")) {
+				//these describe the exported API as a whole, include them completely
+				classabis.put(name, bytes);
+				continue;
+			}
+			ClassFileInfo cf = ClassFileInfo.parse(bytes);
+			//multi-release JARs may contain the same class multiple times, keep the entry names separate
+			classes.put(name, cf);
+			classentrynames.putIfAbsent(cf.getClassName(), name);
+		}
+		for (String name : getApiClassEntryNames(classes, classentrynames)) {
+			classabis.put(name, getClassAbi(classes.get(name)).getBytes(StandardCharsets.UTF_8));
+		}
+		MessageDigest digest = createDigest();
+		for (Entry<String, byte[]> entry : classabis.entrySet()) {
+			digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(entry.getValue());
+			digest.update((byte) 0);
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Gets the entry names of the classes that are part of the API.
+	 * <p>
+	 * These are the public classes, and the non-public classes in the JAR that they inherit from.
+	 */
+	private static Set<String> getApiClassEntryNames(Map<String, ClassFileInfo> classes,
+			Map<String, String> classentrynames) {
+		Set<String> result = new HashSet<>();
+		Deque<String> work = new ArrayDeque<>();
+		for (Entry<String, ClassFileInfo> entry : classes.entrySet()) {
+			int access = entry.getValue().getAccessFlags();
+			if (((access & ClassFileInfo.ACC_PUBLIC) == ClassFileInfo.ACC_PUBLIC)
+					&& ((access & ClassFileInfo.ACC_SYNTHETIC) != ClassFileInfo.ACC_SYNTHETIC)) {
+				work.add(entry.getKey());
+			}
+		}
+		for (String name; (name = work.poll()) != null;) {
+			if (!result.add(name)) {
+				continue;
+			}
+			ClassFileInfo cf = classes.get(name);
+			List<String> supertypes = new ArrayList<>(cf.getInterfaceNames());
+			supertypes.add(cf.getSuperClassName());
+			for (String supertype : supertypes) {
+				String superentry = supertype == null ? null : classentrynames.get(supertype);
+				if (superentry != null) {
+					work.add(superentry);
+				}
+			}
+		}
+		return result;
+	}
+
+	private static String getClassAbi(ClassFileInfo cf) {
+		int access = cf.getAccessFlags();
+		StringBuilder sb = new StringBuilder();
+		sb.append("class ").append(access & CLASS_ACCESS_MASK).append(' ').append(cf.getClassName());
+		sb.append(" extends ").append(cf.getSuperClassName());
+		sb.append(" implements ").append(cf.getInterfaceNames());
+		sb.append(" signature ").append(cf.getSignature());
+		sb.append(" annotations ").append(cf.getAnnotations());
+		sb.append(" inner ").append(cf.getInnerClasses());
+		sb.append(" permits ").append(cf.getPermittedSubclassNames());
+		sb.append(" record ").append(cf.getRecordComponents());
+		sb.append('\n');
+
+		List<String> members = new ArrayList<>();
+		for (ClassFileInfo.Member f : cf.getFields()) {
+			if (!isMemberVisible(f)) {
+				continue;
+			}
+			Object constant = f.getConstantValue();
+			//include the type of the constant, the descriptor doesn't determine it for e.g. boolean and int
+			members.add("field " + (f.getAccessFlags() & FIELD_ACCESS_MASK) + " " + f.getName() + " "
+					+ f.getDescriptor() + " " + f.getSignature() + " " + f.getAnnotations() + " = "
+					+ (constant == null ? null : constant.getClass().getSimpleName() + ":" + constant));
+		}
+		for (ClassFileInfo.Member m : cf.getMethods()) {
+			if (!isMemberVisible(m) || ((m.getAccessFlags() & ClassFileInfo.ACC_BRIDGE) == ClassFileInfo.ACC_BRIDGE)) {
+				continue;
+			}
+			members.add("method " + (m.getAccessFlags() & METHOD_ACCESS_MASK) + " " + m.getName() + " "
+					+ m.getDescriptor() + " " + m.getSignature() + " " + m.getAnnotations() + " throws "
+					+ m.getExceptionNames() + " default " + m.getAnnotationDefault());
+		}
+		members.sort(null);
+		for (String m : members) {
+			sb.append(m).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static boolean isMemberVisible(ClassFileInfo.Member member) {
+		int access = member.getAccessFlags();
+		if ((access & ClassFileInfo.ACC_SYNTHETIC) == ClassFileInfo.ACC_SYNTHETIC) {
+			return false;
+		}
+		return (access & (ClassFileInfo.ACC_PUBLIC | ClassFileInfo.ACC_PROTECTED)) != 0;
+	}
+
+	private static byte[] readEntry(InputStream is, byte[] buffer) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		for (int read; (read = is.read(buffer)) > 0;) {
+			baos.write(buffer, 0, read);
+		}
+		return baos.toByteArray();
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(HASH_ALGORITHM + " is not available.", e);
+		}
+	}
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import saker.build.file.content.ContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.build.file.provider.LocalFileProvider;
+import saker.build.runtime.environment.SakerEnvironment;
+import saker.build.runtime.execution.SakerLog;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+
+/**
+ * Persistent index of the artifacts in the local Maven repository.
+ * <p>
+ * The index maps the coordinates of previously localized artifacts to their path in the local repository, their size,
+ * last modification time, and the content descriptor reported by the localization. If the size and modification time
+ * of the file are unchanged, the artifact can be used without running the localization task for it.
+ * <p>
+ * The index is stored in the {@linkplain StorageUtils storage directory} separately for each Maven configuration.
+ * Multiple processes may use the same index, so the entries recorded by a process are merged with the current
+ * contents of the stored index when it is {@linkplain #flush() written}. Only release versions of artifacts are
+ * indexed, as snapshot artifacts may need to be updated from the remote repositories.
+ */
+public final class LocalRepositoryIndex {
+	private static final String DIRECTORY_NAME = "local-repository-index";
+	private static final int MAGIC = 0x534d4c49;
+	private static final int INDEX_VERSION = 1;
+	/**
+	 * Files modified more recently than this are not indexed, as a subsequent modification may not change the last
+	 * modification time due to the file system time resolution.
+	 */
+	private static final long RECENT_MODIFICATION_MILLIS = 2000;
+
+	private static final Map<Path, LocalRepositoryIndex> INDEXES = new HashMap<>();
+
+	private final Path indexPath;
+	private final Map<String, IndexEntry> entries;
+	/**
+	 * The entries recorded since the index was last written.
+	 */
+	private final Map<String, IndexEntry> recordedEntries = new ConcurrentHashMap<>();
+
+	private LocalRepositoryIndex(Path indexPath, Map<String, IndexEntry> entries) {
+		this.indexPath = indexPath;
+		this.entries = entries;
+	}
+
+	/**
+	 * Gets the index for the given Maven configuration.
+	 * <p>
+	 * The index is loaded from the storage when first accessed in the current JVM.
+	 * 
+	 * @param environment
+	 *            The build environment.
+	 * @param configuration
+	 *            The configuration the artifacts are localized with.
+	 * @return The index or <code>null</code> if it's not available for the configuration.
+	 */
+	public static LocalRepositoryIndex get(SakerEnvironment environment, MavenOperationConfiguration configuration) {
+		String confighash = MissingArtifactCache.getConfigurationHash(configuration);
+		if (confighash == null) {
+			return null;
+		}
+		Path path = StorageUtils.getStorageDirectory(environment).resolve(DIRECTORY_NAME).resolve(confighash + ".idx");
+		synchronized (INDEXES) {
+			LocalRepositoryIndex result = INDEXES.get(path);
+			if (result == null) {
+				Map<String, IndexEntry> entries = new ConcurrentHashMap<>();
+				load(path, entries);
+				result = new LocalRepositoryIndex(path, entries);
+				INDEXES.put(path, result);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Checks if the given artifact can be part of the index.
+	 * 
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @return <code>true</code> if the artifact is not a snapshot version.
+	 */
+	public static boolean isIndexable(ArtifactCoordinates coordinates) {
+		return !coordinates.getVersion().endsWith("-SNAPSHOT");
+	}
+
+	/**
+	 * Looks up the artifact in the index.
+	 * <p>
+	 * The artifact is only returned if the size and last modification time of its file are the same as when it was
+	 * indexed.
+	 * 
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @return The indexed artifact or <code>null</code> if it's not indexed or the file has changed.
+	 */
+	public IndexedArtifact lookup(ArtifactCoordinates coordinates) {
+		IndexEntry entry = entries.get(coordinates.toString());
+		if (entry == null) {
+			return null;
+		}
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(LocalFileProvider.toRealPath(entry.artifact.path), BasicFileAttributes.class);
+		} catch (IOException e) {
+			//removed from the local repository
+			return null;
+		}
+		if (!attrs.isRegularFile() || attrs.size() != entry.size
+				|| attrs.lastModifiedTime().toMillis() != entry.lastModified) {
+			return null;
+		}
+		return entry.artifact;
+	}
+
+	/**
+	 * Adds a localized artifact to the index.
+	 * <p>
+	 * The content descriptor of the localization is stored as is, the artifact file is not read. The changes are
+	 * persisted by {@link #flush()}.
+	 * 
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @param localpath
+	 *            The path of the artifact in the local repository.
+	 * @param contentdescriptor
+	 *            The content descriptor of the artifact reported by the localization.
+	 */
+	public void record(ArtifactCoordinates coordinates, SakerPath localpath, ContentDescriptor contentdescriptor) {
+		if (contentdescriptor == null || !isIndexable(coordinates)) {
+			return;
+		}
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(LocalFileProvider.toRealPath(localpath), BasicFileAttributes.class);
+		} catch (IOException e) {
+			//not accessible
+			return;
+		}
+		long lastmodified = attrs.lastModifiedTime().toMillis();
+		if (!attrs.isRegularFile() || System.currentTimeMillis() - lastmodified <= RECENT_MODIFICATION_MILLIS) {
+			return;
+		}
+		IndexEntry entry = new IndexEntry(new IndexedArtifact(localpath, contentdescriptor), attrs.size(),
+				lastmodified);
+		String key = coordinates.toString();
+		if (!entry.equals(entries.put(key, entry))) {
+			recordedEntries.put(key, entry);
+		}
+	}
+
+	/**
+	 * Writes the entries recorded since the index was loaded or last written to the storage.
+	 * <p>
+	 * The stored index is read again, and the recorded entries are merged into it, so the entries written by other
+	 * processes in the meantime are kept. The entries of the other processes are added to this index as well.
+	 */
+	public void flush() {
+		if (recordedEntries.isEmpty()) {
+			return;
+		}
+		synchronized (this) {
+			Map<String, IndexEntry> recorded = new HashMap<>(recordedEntries);
+			if (recorded.isEmpty()) {
+				return;
+			}
+			try {
+				Path dir = indexPath.getParent();
+				Files.createDirectories(dir);
+				//lock the index between the processes while merging
+				try (FileChannel lockchannel = FileChannel.open(dir.resolve(indexPath.getFileName() + ".lock"),
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+						FileLock lock = lockchannel.lock()) {
+					Map<String, IndexEntry> merged = new HashMap<>();
+					load(indexPath, merged);
+					for (Map.Entry<String, IndexEntry> mapentry : merged.entrySet()) {
+						if (!recorded.containsKey(mapentry.getKey())) {
+							entries.put(mapentry.getKey(), mapentry.getValue());
+						}
+					}
+					merged.putAll(recorded);
+					write(merged);
+				}
+				for (Map.Entry<String, IndexEntry> mapentry : recorded.entrySet()) {
+					recordedEntries.remove(mapentry.getKey(), mapentry.getValue());
+				}
+			} catch (IOException e) {
+				SakerLog.log().verbose()
+						.println("Failed to write local repository index: " + indexPath + " (" + e + ")");
+			}
+		}
+	}
+
+	private void write(Map<String, IndexEntry> indexentries) throws IOException {
+		Path dir = indexPath.getParent();
+		//write to a temporary file first, so concurrent builds don't see partially written indexes
+		Path tempfile = Files.createTempFile(dir, indexPath.getFileName().toString(), ".tmp");
+		try {
+			try (ObjectOutputStream oos = new ObjectOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tempfile)))) {
+				oos.writeInt(MAGIC);
+				oos.writeInt(INDEX_VERSION);
+				oos.writeInt(indexentries.size());
+				for (Map.Entry<String, IndexEntry> mapentry : indexentries.entrySet()) {
+					IndexEntry entry = mapentry.getValue();
+					oos.writeUTF(mapentry.getKey());
+					oos.writeUTF(entry.artifact.path.toString());
+					oos.writeLong(entry.size);
+					oos.writeLong(entry.lastModified);
+					oos.writeObject(entry.artifact.contentDescriptor);
+				}
+			}
+			try {
+				Files.move(tempfile, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempfile, indexPath, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempfile);
+		}
+	}
+
+	private static void load(Path path, Map<String, IndexEntry> result) {
+		Map<String, IndexEntry> loaded = new HashMap<>();
+		try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (ois.readInt() != MAGIC || ois.readInt() != INDEX_VERSION) {
+				//written by an other version, it will be overwritten
+				return;
+			}
+			int count = ois.readInt();
+			for (int i = 0; i < count; i++) {
+				String coords = ois.readUTF();
+				SakerPath artifactpath = SakerPath.valueOf(ois.readUTF());
+				long size = ois.readLong();
+				long lastmodified = ois.readLong();
+				ContentDescriptor contentdescriptor = (ContentDescriptor) ois.readObject();
+				loaded.put(coords,
+						new IndexEntry(new IndexedArtifact(artifactpath, contentdescriptor), size, lastmodified));
+			}
+		} catch (NoSuchFileException e) {
+			//not yet written
+			return;
+		} catch (IOException | ClassNotFoundException | RuntimeException e) {
+			//the index is only a cache, start over if it's corrupt
+			SakerLog.log().verbose().println("Failed to read local repository index: " + path + " (" + e + ")");
+			return;
+		}
+		result.putAll(loaded);
+	}
+
+	/**
+	 * An artifact found in the local repository index.
+	 */
+	public static final class IndexedArtifact implements Externalizable {
+		private static final long serialVersionUID = 1L;
+
+		protected SakerPath path;
+		protected ContentDescriptor contentDescriptor;
+
+		/**
+		 * For {@link Externalizable}.
+		 */
+		public IndexedArtifact() {
+		}
+
+		IndexedArtifact(SakerPath path, ContentDescriptor contentDescriptor) {
+			this.path = path;
+			this.contentDescriptor = contentDescriptor;
+		}
+
+		/**
+		 * Gets the path of the artifact in the local repository.
+		 * 
+		 * @return The local path.
+		 */
+		public SakerPath getPath() {
+			return path;
+		}
+
+		/**
+		 * Gets the content descriptor of the artifact that was reported by the localization.
+		 * 
+		 * @return The content descriptor.
+		 */
+		public ContentDescriptor getContentDescriptor() {
+			return contentDescriptor;
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+			out.writeObject(path);
+			out.writeObject(contentDescriptor);
+		}
+
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+			path = (SakerPath) in.readObject();
+			contentDescriptor = (ContentDescriptor) in.readObject();
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((contentDescriptor == null) ? 0 : contentDescriptor.hashCode());
+			result = prime * result + ((path == null) ? 0 : path.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			IndexedArtifact other = (IndexedArtifact) obj;
+			if (contentDescriptor == null) {
+				if (other.contentDescriptor != null)
+					return false;
+			} else if (!contentDescriptor.equals(other.contentDescriptor))
+				return false;
+			if (path == null) {
+				if (other.path != null)
+					return false;
+			} else if (!path.equals(other.path))
+				return false;
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "[" + path + "]";
+		}
+	}
+
+	private static final class IndexEntry {
+		protected final IndexedArtifact artifact;
+		protected final long size;
+		protected final long lastModified;
+
+		public IndexEntry(IndexedArtifact artifact, long size, long lastModified) {
+			this.artifact = artifact;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return artifact.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			IndexEntry other = (IndexEntry) obj;
+			return size == other.size && lastModified == other.lastModified && artifact.equals(other.artifact);
+		}
+	}
+}
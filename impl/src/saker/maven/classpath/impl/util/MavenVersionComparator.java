@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Comparator for Maven artifact version strings.
+ * <p>
+ * The comparison has the same results as the Maven <code>ComparableVersion</code> class, without depending on it:
+ * <ul>
+ * <li>The version is split into items at <code>.</code> and <code>-</code> characters and at the transitions between
+ * digits and letters. An empty item is the same as <code>0</code>.</li>
+ * <li>A <code>-</code> separator, and a transition between digits and letters start a new sub-list, which is less
+ * significant than the items separated by a <code>.</code>. (<code>1-1 &lt; 1.1</code>)</li>
+ * <li>Trailing null items (<code>0</code>, release qualifiers, empty sub-lists) are removed from every list, so
+ * <code>1.0</code> == <code>1</code> and <code>1.0-beta</code> == <code>1-beta</code>.</li>
+ * <li>Numeric items are compared numerically, and are greater than sub-lists and qualifiers at the same position.</li>
+ * <li>The well-known qualifiers are ordered as <code>alpha &lt; beta &lt; milestone &lt; rc &lt; snapshot &lt;
+ * (release) &lt; sp</code>, with the aliases <code>a</code>, <code>b</code>, <code>m</code> (only when followed by a
+ * digit), <code>cr</code>, and <code>ga</code>, <code>final</code>, <code>release</code> for the release. Other
+ * qualifiers are ordered lexicographically after the known ones.</li>
+ * </ul>
+ * The comparison is case insensitive.
+ */
+public final class MavenVersionComparator implements Comparator<String> {
+	public static final MavenVersionComparator INSTANCE = new MavenVersionComparator();
+
+	private static final String[] QUALIFIERS = { "alpha", "beta", "milestone", "rc", "snapshot", "", "sp" };
+	private static final int ORDER_RELEASE = 5;
+
+	private MavenVersionComparator() {
+	}
+
+	@Override
+	public int compare(String l, String r) {
+		return compareItems(parse(l), parse(r));
+	}
+
+	/**
+	 * Gets the canonical form of a version.
+	 * <p>
+	 * Versions that compare equal have the same canonical form.
+	 * 
+	 * @param version
+	 *            The version.
+	 * @return The canonical form.
+	 */
+	public static String getCanonical(String version) {
+		return toCanonical(parse(version));
+	}
+
+	private static String toCanonical(List<?> list) {
+		StringBuilder sb = new StringBuilder();
+		for (Object item : list) {
+			//no separator after empty items, same as ComparableVersion
+			if (sb.length() > 0) {
+				sb.append(item instanceof List ? '-' : '.');
+			}
+			sb.append(item instanceof List ? toCanonical((List<?>) item) : item.toString());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Compares two items. The items are {@link BigInteger} numbers, {@link String} qualifiers, {@link List} sub-lists,
+	 * or <code>null</code> if the item is missing at the position. <code>l</code> is never <code>null</code>.
+	 */
+	private static int compareItems(Object l, Object r) {
+		if (l instanceof BigInteger) {
+			BigInteger ln = (BigInteger) l;
+			if (r == null) {
+				return ln.signum() == 0 ? 0 : 1;
+			}
+			if (r instanceof BigInteger) {
+				return ln.compareTo((BigInteger) r);
+			}
+			//1.1 > 1-1, 1.1 > 1-sp
+			return 1;
+		}
+		if (l instanceof String) {
+			String lq = (String) l;
+			if (r == null) {
+				//1-rc < 1, 1-sp > 1
+				return compareQualifiers(lq, "");
+			}
+			if (r instanceof String) {
+				return compareQualifiers(lq, (String) r);
+			}
+			//1.any < 1.1, 1.any < 1-1
+			return -1;
+		}
+		List<?> llist = (List<?>) l;
+		if (r == null) {
+			return llist.isEmpty() ? 0 : compareItems(llist.get(0), null);
+		}
+		if (r instanceof BigInteger) {
+			//1-1 < 1.1
+			return -1;
+		}
+		if (r instanceof String) {
+			//1-1 > 1-sp
+			return 1;
+		}
+		Iterator<?> lit = llist.iterator();
+		Iterator<?> rit = ((List<?>) r).iterator();
+		while (lit.hasNext() || rit.hasNext()) {
+			Object li = lit.hasNext() ? lit.next() : null;
+			Object ri = rit.hasNext() ? rit.next() : null;
+			int cmp = li == null ? -compareItems(ri, null) : compareItems(li, ri);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return 0;
+	}
+
+	private static int compareQualifiers(String l, String r) {
+		int lo = qualifierOrder(l);
+		int ro = qualifierOrder(r);
+		if (lo != ro) {
+			return Integer.compare(lo, ro);
+		}
+		if (lo == QUALIFIERS.length) {
+			return l.compareTo(r);
+		}
+		return 0;
+	}
+
+	private static int qualifierOrder(String qualifier) {
+		for (int i = 0; i < QUALIFIERS.length; i++) {
+			if (QUALIFIERS[i].equals(qualifier)) {
+				return i;
+			}
+		}
+		//unknown qualifiers are after the known ones
+		return QUALIFIERS.length;
+	}
+
+	private static boolean isNullItem(Object item) {
+		if (item instanceof BigInteger) {
+			return ((BigInteger) item).signum() == 0;
+		}
+		if (item instanceof String) {
+			return qualifierOrder((String) item) == ORDER_RELEASE;
+		}
+		return ((List<?>) item).isEmpty();
+	}
+
+	private static List<Object> parse(String version) {
+		List<Object> root = new ArrayList<>();
+		if (version == null) {
+			return root;
+		}
+		String v = version.toLowerCase(Locale.ENGLISH);
+		//the lists in the order they were started, all of them are normalized at the end
+		List<List<Object>> lists = new ArrayList<>();
+		lists.add(root);
+		List<Object> list = root;
+		boolean digit = false;
+		int start = 0;
+		int len = v.length();
+		for (int i = 0; i < len; i++) {
+			char c = v.charAt(i);
+			if (c == '.' || c == '-') {
+				list.add(i == start ? BigInteger.ZERO : parseItem(digit, v.substring(start, i), false));
+				start = i + 1;
+				if (c == '-') {
+					list = startSubList(list, lists);
+				}
+			} else if (Character.isDigit(c)) {
+				if (!digit && i > start) {
+					list.add(parseItem(false, v.substring(start, i), true));
+					start = i;
+					list = startSubList(list, lists);
+				}
+				digit = true;
+			} else {
+				if (digit && i > start) {
+					list.add(parseItem(true, v.substring(start, i), false));
+					start = i;
+					list = startSubList(list, lists);
+				}
+				digit = false;
+			}
+		}
+		if (len > start) {
+			list.add(parseItem(digit, v.substring(start), false));
+		}
+		//normalize the innermost lists first, so emptied sub-lists are removed from their parents
+		for (int i = lists.size() - 1; i >= 0; i--) {
+			normalize(lists.get(i));
+		}
+		return root;
+	}
+
+	private static List<Object> startSubList(List<Object> parent, List<List<Object>> lists) {
+		List<Object> result = new ArrayList<>();
+		parent.add(result);
+		lists.add(result);
+		return result;
+	}
+
+	/**
+	 * Removes the trailing null items, skipping over non-empty sub-lists. (<code>1.0-1.0</code> ==
+	 * <code>1-1</code>)
+	 */
+	private static void normalize(List<Object> list) {
+		for (int i = list.size() - 1; i >= 0; i--) {
+			Object item = list.get(i);
+			if (isNullItem(item)) {
+				list.remove(i);
+			} else if (!(item instanceof List)) {
+				break;
+			}
+		}
+	}
+
+	private static Object parseItem(boolean digit, String item, boolean followedbydigit) {
+		if (digit) {
+			return new BigInteger(item);
+		}
+		if (followedbydigit && item.length() == 1) {
+			//a1 = alpha-1, b1 = beta-1, m1 = milestone-1
+			switch (item.charAt(0)) {
+				case 'a':
+					return "alpha";
+				case 'b':
+					return "beta";
+				case 'm':
+					return "milestone";
+				default:
+					break;
+			}
+		}
+		switch (item) {
+			case "ga":
+			case "final":
+			case "release":
+				return "";
+			case "cr":
+				return "rc";
+			default:
+				return item;
+		}
+	}
+}
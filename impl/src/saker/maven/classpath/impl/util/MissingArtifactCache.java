@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import saker.build.runtime.environment.SakerEnvironment;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.task.TaskContext;
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.build.thirdparty.saker.util.io.UnsyncByteArrayOutputStream;
+import saker.build.util.property.UserParameterExecutionProperty;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+
+/**
+ * Persistent cache of artifacts that are missing from the repositories.
+ * <p>
+ * Each missing artifact is recorded by an empty marker file in the {@linkplain StorageUtils storage directory}. The
+ * last modification time of the file is the time when the artifact was found to be missing. The markers are keyed
+ * by the coordinates of the artifact and the Maven configuration (repositories) that was used to look it up.
+ * <p>
+ * Only artifacts that the repositories reported to be missing should be recorded, not the ones that failed to be
+ * retrieved because of other errors. As the artifacts may be deployed later, the entries are only considered for a
+ * limited time.
+ */
+public final class MissingArtifactCache {
+	/**
+	 * The default time-to-live of the cache entries in milliseconds. (1 day)
+	 */
+	public static final long DEFAULT_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+	/**
+	 * User parameter that specifies the time-to-live of the cache entries in seconds.
+	 * <p>
+	 * Setting it to <code>0</code> disables the cache.
+	 */
+	public static final String USER_PARAMETER_TTL_SECONDS = "saker.maven.classpath.missing-artifacts.ttl";
+
+	private static final String DIRECTORY_NAME = "missing-artifacts";
+
+	/**
+	 * Cache of the configuration hashes to avoid serializing them for each lookup.
+	 */
+	private static final Map<MavenOperationConfiguration, String> CONFIGURATION_HASHES = Collections
+			.synchronizedMap(new WeakHashMap<>());
+
+	private MissingArtifactCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Gets the time-to-live of the cache entries based on the {@linkplain #USER_PARAMETER_TTL_SECONDS user parameter}.
+	 * <p>
+	 * An execution dependency is reported on the user parameter.
+	 * 
+	 * @param taskcontext
+	 *            The task context.
+	 * @return The time-to-live in milliseconds.
+	 */
+	public static long getTtlMillis(TaskContext taskcontext) {
+		String ttlparam = taskcontext.getTaskUtilities()
+				.getReportExecutionDependency(new UserParameterExecutionProperty(USER_PARAMETER_TTL_SECONDS));
+		if (ttlparam == null) {
+			return DEFAULT_TTL_MILLIS;
+		}
+		try {
+			long seconds = Long.parseLong(ttlparam.trim());
+			if (seconds < 0) {
+				throw new NumberFormatException("Negative value.");
+			}
+			return seconds * 1000;
+		} catch (NumberFormatException e) {
+			SakerLog.warning().println("Invalid value for user parameter " + USER_PARAMETER_TTL_SECONDS + ": "
+					+ ttlparam + " (" + e + ")");
+			return DEFAULT_TTL_MILLIS;
+		}
+	}
+
+	/**
+	 * Checks if the artifact was recently found to be missing.
+	 * 
+	 * @param environment
+	 *            The build environment.
+	 * @param configuration
+	 *            The configuration the artifact is retrieved with.
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @param ttlmillis
+	 *            The time-to-live of the cache entries in milliseconds. If not positive, <code>false</code> is
+	 *            returned.
+	 * @return <code>true</code> if the artifact is known to be missing.
+	 */
+	public static boolean isKnownMissing(SakerEnvironment environment, MavenOperationConfiguration configuration,
+			ArtifactCoordinates coordinates, long ttlmillis) {
+		if (ttlmillis <= 0) {
+			return false;
+		}
+		Path marker = getMarkerPath(environment, configuration, coordinates);
+		if (marker == null) {
+			return false;
+		}
+		try {
+			long recorded = Files.getLastModifiedTime(marker).toMillis();
+			if (System.currentTimeMillis() - recorded < ttlmillis) {
+				return true;
+			}
+			//expired
+			Files.deleteIfExists(marker);
+		} catch (NoSuchFileException e) {
+			//not recorded
+		} catch (IOException e) {
+			SakerLog.log().verbose().println("Failed to read missing artifact cache: " + marker + " (" + e + ")");
+		}
+		return false;
+	}
+
+	/**
+	 * Records the artifact as missing.
+	 * 
+	 * @param environment
+	 *            The build environment.
+	 * @param configuration
+	 *            The configuration the artifact was retrieved with.
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 */
+	public static void recordMissing(SakerEnvironment environment, MavenOperationConfiguration configuration,
+			ArtifactCoordinates coordinates) {
+		Path marker = getMarkerPath(environment, configuration, coordinates);
+		if (marker == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(marker.getParent());
+			if (!Files.exists(marker)) {
+				Files.createFile(marker);
+			} else {
+				Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+			}
+		} catch (IOException e) {
+			//may be a concurrent creation by an other process, or the storage is not writeable
+			SakerLog.log().verbose().println("Failed to write missing artifact cache: " + marker + " (" + e + ")");
+		}
+	}
+
+	private static Path getMarkerPath(SakerEnvironment environment, MavenOperationConfiguration configuration,
+			ArtifactCoordinates coordinates) {
+		String confighash = getConfigurationHash(configuration);
+		if (confighash == null) {
+			return null;
+		}
+		MessageDigest digest = createDigest();
+		digest.update(confighash.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(coordinates.toString().getBytes(StandardCharsets.UTF_8));
+		String name = StringUtils.toHexString(digest.digest());
+		//split the markers into subdirectories to avoid having too many files in a single directory
+		return StorageUtils.getStorageDirectory(environment).resolve(DIRECTORY_NAME).resolve(name.substring(0, 2))
+				.resolve(name);
+	}
+
+	static String getConfigurationHash(MavenOperationConfiguration configuration) {
+		String result = CONFIGURATION_HASHES.get(configuration);
+		if (result != null) {
+			return result;
+		}
+		//hash the serialized form, as that contains all the repository settings, and is stable between JVMs
+		UnsyncByteArrayOutputStream baos = new UnsyncByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			oos.writeObject(configuration);
+		} catch (IOException e) {
+			SakerLog.log().verbose()
+					.println("Failed to serialize Maven configuration: " + configuration + " (" + e + ")");
+			return null;
+		}
+		result = StringUtils.toHexString(createDigest().digest(baos.toByteArray()));
+		CONFIGURATION_HASHES.put(configuration, result);
+		return result;
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not available.", e);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import saker.build.thirdparty.saker.util.thread.ThreadUtils;
+
+/**
+ * Utility functions for processing items concurrently.
+ */
+public final class ParallelUtils {
+	private ParallelUtils() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Function that is applied to the items concurrently.
+	 * 
+	 * @param <T>
+	 *            The type of the items.
+	 * @param <R>
+	 *            The type of the results.
+	 */
+	@FunctionalInterface
+	public interface ParallelFunction<T, R> {
+		public R apply(T item) throws Exception;
+	}
+
+	/**
+	 * Applies the function to each item concurrently, and returns the results in the order of the items.
+	 * <p>
+	 * The items are processed as soon as a thread is available for them, so a slow item doesn't block the processing
+	 * of the others. The method returns when all items have been processed.
+	 * 
+	 * @param items
+	 *            The items.
+	 * @param function
+	 *            The function to apply.
+	 * @return The results, in the same order as the items.
+	 * @throws Exception
+	 *             If the function fails for any of the items.
+	 */
+	public static <T, R> List<R> mapParallel(List<? extends T> items, ParallelFunction<? super T, ? extends R> function)
+			throws Exception {
+		int size = items.size();
+		if (size <= 1) {
+			List<R> result = new ArrayList<>(size);
+			for (T item : items) {
+				result.add(function.apply(item));
+			}
+			return result;
+		}
+		Object[] results = new Object[size];
+		Integer[] indices = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			indices[i] = i;
+		}
+		ThreadUtils.runParallelItems(Arrays.asList(indices), idx -> {
+			results[idx] = function.apply(items.get(idx));
+		});
+		@SuppressWarnings("unchecked")
+		List<R> resultlist = (List<R>) Arrays.asList(results);
+		return resultlist;
+	}
+}
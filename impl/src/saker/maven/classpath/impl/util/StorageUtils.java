@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import saker.build.runtime.environment.SakerEnvironment;
+import saker.build.runtime.execution.SakerLog;
+import saker.build.thirdparty.saker.util.StringUtils;
+
+/**
+ * Utility functions for accessing the persistent storage of the package.
+ * <p>
+ * The storage is used for data that is kept between build executions and processes, e.g. caches.
+ */
+public final class StorageUtils {
+	/**
+	 * System property name that can be used to override the storage directory location.
+	 */
+	public static final String PROPERTY_STORAGE_DIRECTORY = "saker.maven.classpath.storage.directory";
+
+	/**
+	 * The stored files that haven't been used for this long are deleted.
+	 */
+	private static final long UNUSED_FILE_EVICTION_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+	private static final String DIGEST_FILE_EXTENSION = ".sha256";
+
+	/**
+	 * The directories that were already checked for unused files by this JVM.
+	 */
+	private static final Set<Path> EVICTED_DIRECTORIES = ConcurrentHashMap.newKeySet();
+
+	private StorageUtils() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Gets the path of the storage directory.
+	 * <p>
+	 * The storage directory is a subdirectory of the storage directory of the build environment, unless overridden by
+	 * the {@linkplain #PROPERTY_STORAGE_DIRECTORY system property}.
+	 * <p>
+	 * The directory is not created by this method.
+	 * 
+	 * @param environment
+	 *            The build environment.
+	 * @return The absolute path of the storage directory.
+	 */
+	public static Path getStorageDirectory(SakerEnvironment environment) {
+		String prop = System.getProperty(PROPERTY_STORAGE_DIRECTORY);
+		if (prop != null && !prop.isEmpty()) {
+			return Paths.get(prop).toAbsolutePath().normalize();
+		}
+		return environment.getStorageDirectoryPath().resolve("saker.maven.classpath").toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Checks if a file previously {@linkplain #storeFile(Path, Path) stored} in the storage directory can be reused.
+	 * <p>
+	 * The file is reusable if its contents still match the digest that was recorded when it was stored. If so, the file
+	 * is marked as used, so it is not {@linkplain #evictUnusedFiles(Path) evicted}.
+	 * 
+	 * @param file
+	 *            The path of the file.
+	 * @return <code>true</code> if the file exists and is unmodified.
+	 */
+	public static boolean isStoredFileReusable(Path file) {
+		Path digestfile = getDigestFile(file);
+		try {
+			String expected = new String(Files.readAllBytes(digestfile), StandardCharsets.UTF_8);
+			if (!expected.equals(hashFile(file))) {
+				SakerLog.log().verbose().println("Stored file was modified, recreating: " + file);
+				return false;
+			}
+			Files.setLastModifiedTime(digestfile, FileTime.fromMillis(System.currentTimeMillis()));
+			return true;
+		} catch (NoSuchFileException e) {
+			return false;
+		} catch (IOException e) {
+			SakerLog.log().verbose().println("Failed to verify stored file: " + file + " (" + e + ")");
+			return false;
+		}
+	}
+
+	/**
+	 * Moves a temporary file to its location in the storage directory, and records its digest for
+	 * {@linkplain #isStoredFileReusable(Path) verification}.
+	 * <p>
+	 * The temporary file should be in the same directory as the target, so it can be moved atomically. Concurrent
+	 * builds don't see partially written files this way.
+	 * 
+	 * @param tempfile
+	 *            The temporary file that contains the contents.
+	 * @param file
+	 *            The target path of the file.
+	 * @throws IOException
+	 *             In case of I/O error.
+	 */
+	public static void storeFile(Path tempfile, Path file) throws IOException {
+		String digest = hashFile(tempfile);
+		try {
+			Files.move(tempfile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempfile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		Path digestfile = getDigestFile(file);
+		Path tempdigestfile = Files.createTempFile(file.getParent(), digestfile.getFileName().toString(), ".tmp");
+		try {
+			Files.write(tempdigestfile, digest.getBytes(StandardCharsets.UTF_8));
+			try {
+				Files.move(tempdigestfile, digestfile, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				try {
+					Files.move(tempdigestfile, digestfile);
+				} catch (FileAlreadyExistsException e2) {
+					//stored concurrently, the file is recreated on the next run if the digests differ
+				}
+			}
+		} finally {
+			Files.deleteIfExists(tempdigestfile);
+		}
+	}
+
+	/**
+	 * Deletes the files that haven't been used recently from a directory of stored files.
+	 * <p>
+	 * The stored files are expected to be in the subdirectories of the argument directory. Each directory is only
+	 * checked once per JVM.
+	 * 
+	 * @param directory
+	 *            The directory.
+	 */
+	public static void evictUnusedFiles(Path directory) {
+		if (!EVICTED_DIRECTORIES.add(directory)) {
+			return;
+		}
+		long threshold = System.currentTimeMillis() - UNUSED_FILE_EVICTION_MILLIS;
+		try (DirectoryStream<Path> subdirs = Files.newDirectoryStream(directory)) {
+			for (Path subdir : subdirs) {
+				if (!Files.isDirectory(subdir)) {
+					continue;
+				}
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(subdir)) {
+					for (Path file : files) {
+						try {
+							if (getLastUseMillis(file) < threshold) {
+								Files.deleteIfExists(file);
+							}
+						} catch (IOException e) {
+							//deleted concurrently, or in use
+						}
+					}
+				}
+			}
+		} catch (NoSuchFileException e) {
+			//nothing stored yet
+		} catch (IOException e) {
+			SakerLog.log().verbose().println("Failed to evict unused files from: " + directory + " (" + e + ")");
+		}
+	}
+
+	private static long getLastUseMillis(Path file) throws IOException {
+		//the files are marked as used by touching the digest file
+		//temporary files and files without digest are evicted based on their own modification time
+		if (!file.getFileName().toString().endsWith(DIGEST_FILE_EXTENSION)) {
+			try {
+				return Files.getLastModifiedTime(getDigestFile(file)).toMillis();
+			} catch (NoSuchFileException e) {
+			}
+		}
+		return Files.getLastModifiedTime(file).toMillis();
+	}
+
+	private static Path getDigestFile(Path file) {
+		return file.resolveSibling(file.getFileName() + DIGEST_FILE_EXTENSION);
+	}
+
+	private static String hashFile(Path file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError("SHA-256 is not available.", e);
+		}
+		byte[] buf = new byte[8192];
+		try (InputStream is = Files.newInputStream(file)) {
+			for (int read; (read = is.read(buf)) > 0;) {
+				digest.update(buf, 0, read);
+			}
+		}
+		return StringUtils.toHexString(digest.digest());
+	}
+}
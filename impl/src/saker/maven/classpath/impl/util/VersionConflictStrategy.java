@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import saker.maven.support.api.ArtifactCoordinates;
+
+/**
+ * Strategy for handling multiple versions of the same artifact in a class path.
+ * <p>
+ * Artifacts are considered to be the same if their group identifier, artifact identifier, classifier and extension
+ * are the same. Artifacts that only differ in classifier (e.g. native libraries for different platforms) are not
+ * conflicting.
+ */
+public enum VersionConflictStrategy {
+	/**
+	 * All versions are kept.
+	 */
+	NONE("None"),
+	/**
+	 * The highest version is kept at the position of the first occurrence.
+	 */
+	HIGHEST_WINS("HighestWins"),
+	/**
+	 * The first occurring version is kept.
+	 */
+	FIRST_WINS("FirstWins"),
+	/**
+	 * Conflicting versions cause an error.
+	 */
+	FAIL("Fail");
+
+	private final String name;
+
+	private VersionConflictStrategy(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets the name of the strategy that is used in build scripts.
+	 * 
+	 * @return The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the strategy for the given name.
+	 * 
+	 * @param name
+	 *            The name, case insensitive. If <code>null</code>, {@link #NONE} is returned.
+	 * @return The strategy.
+	 * @throws IllegalArgumentException
+	 *             If the name is not recognized.
+	 */
+	public static VersionConflictStrategy forName(String name) throws IllegalArgumentException {
+		if (name == null) {
+			return NONE;
+		}
+		for (VersionConflictStrategy s : values()) {
+			if (s.name.equalsIgnoreCase(name)) {
+				return s;
+			}
+		}
+		throw new IllegalArgumentException("Unrecognized version conflict strategy: " + name);
+	}
+
+	/**
+	 * Checks if the first occurrence of an artifact is known to be selected by this strategy without seeing the
+	 * subsequent artifacts.
+	 * 
+	 * @return <code>true</code> if the first occurrence is always part of the result.
+	 */
+	public boolean isFirstOccurrenceSelected() {
+		return this == NONE || this == FIRST_WINS;
+	}
+
+	/**
+	 * Gets the key that identifies the artifact regardless of its version.
+	 * 
+	 * @param coordinates
+	 *            The artifact coordinates.
+	 * @return The key.
+	 */
+	public static String getConflictKey(ArtifactCoordinates coordinates) {
+		return coordinates.getGroupId() + ":" + coordinates.getArtifactId() + ":" + coordinates.getClassifier() + ":"
+				+ coordinates.getExtension();
+	}
+
+	/**
+	 * Collapses the conflicting versions in the argument artifacts.
+	 * 
+	 * @param coordinates
+	 *            The artifacts in class path order.
+	 * @return The artifacts that should be part of the class path, in class path order.
+	 * @throws IllegalArgumentException
+	 *             If the strategy is {@link #FAIL} and conflicting versions are found.
+	 */
+	public Set<ArtifactCoordinates> resolve(Collection<? extends ArtifactCoordinates> coordinates)
+			throws IllegalArgumentException {
+		if (this == NONE) {
+			return new LinkedHashSet<>(coordinates);
+		}
+		Map<String, ArtifactCoordinates> selected = new LinkedHashMap<>();
+		List<String> conflicts = null;
+		for (ArtifactCoordinates coord : coordinates) {
+			String key = getConflictKey(coord);
+			ArtifactCoordinates prev = selected.putIfAbsent(key, coord);
+			if (prev == null || prev.equals(coord)) {
+				continue;
+			}
+			switch (this) {
+				case HIGHEST_WINS: {
+					if (MavenVersionComparator.INSTANCE.compare(coord.getVersion(), prev.getVersion()) > 0) {
+						//replace the value, the position is kept in the linked map
+						selected.put(key, coord);
+					}
+					break;
+				}
+				case FAIL: {
+					if (conflicts == null) {
+						conflicts = new ArrayList<>();
+					}
+					conflicts.add(prev + " and " + coord);
+					break;
+				}
+				default: {
+					//first wins, keep the previous
+					break;
+				}
+			}
+		}
+		if (conflicts != null) {
+			throw new IllegalArgumentException("Conflicting artifact versions: " + String.join(", ", conflicts));
+		}
+		return new LinkedHashSet<>(selected.values());
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.impl.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the entry names of a ZIP archive from its central directory.
+ * <p>
+ * Only the end of the file is accessed, the local headers and the contents of the entries are not read.
+ * <p>
+ * The central directory is read into a heap buffer instead of memory mapping the file, as mapped files stay open until
+ * the mapping is garbage collected, which would prevent the archive from being modified or deleted on Windows.
+ */
+public final class ZipCentralDirectoryReader {
+	private static final int SIG_END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+	private static final int SIG_ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+	private static final int SIG_CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+	private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+	private ZipCentralDirectoryReader() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Reads the names of the entries in the ZIP archive at the given path.
+	 * 
+	 * @param path
+	 *            The path of the archive.
+	 * @return The entry names in the order they appear in the central directory.
+	 * @throws IOException
+	 *             In case of I/O error or if the file is not a valid ZIP archive.
+	 */
+	public static List<String> readEntryNames(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long[] entrycount = { 0 };
+			ByteBuffer cd = readCentralDirectoryBytes(channel, path, entrycount);
+			return readCentralDirectory(cd, entrycount[0], path);
+		}
+	}
+
+	/**
+	 * Computes the SHA-256 hash of the central directory of the ZIP archive at the given path.
+	 * <p>
+	 * The central directory contains the names, sizes, CRC-32 checksums and modification times of the entries, so the
+	 * hash changes if the contents of the archive change, while only the end of the file is read.
+	 * 
+	 * @param path
+	 *            The path of the archive.
+	 * @return The hash.
+	 * @throws IOException
+	 *             In case of I/O error or if the file is not a valid ZIP archive.
+	 */
+	public static byte[] hashCentralDirectory(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer cd = readCentralDirectoryBytes(channel, path, new long[1]);
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new AssertionError("SHA-256 is not available.", e);
+			}
+			digest.update(cd);
+			return digest.digest();
+		}
+	}
+
+	private static ByteBuffer readCentralDirectoryBytes(FileChannel channel, Path path, long[] outentrycount)
+			throws IOException {
+		long size = channel.size();
+		if (size < END_OF_CENTRAL_DIRECTORY_SIZE) {
+			throw new ZipException("File too small to be a ZIP archive: " + path);
+		}
+		long tailstart = Math.max(0, size - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_LENGTH);
+		ByteBuffer tail = read(channel, tailstart, (int) (size - tailstart), path);
+
+		int eocd = findEndOfCentralDirectory(tail);
+		if (eocd < 0) {
+			throw new ZipException("End of central directory not found: " + path);
+		}
+		long entrycount = tail.getShort(eocd + 10) & 0xFFFFL;
+		long cdsize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+		long cdoffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+		if (entrycount == 0xFFFF || cdsize == 0xFFFFFFFFL || cdoffset == 0xFFFFFFFFL) {
+			//ZIP64 archive, the actual values are in the ZIP64 end of central directory record
+			int locator = eocd - ZIP64_LOCATOR_SIZE;
+			if (locator < 0 || tail.getInt(locator) != SIG_ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR) {
+				throw new ZipException("ZIP64 end of central directory locator not found: " + path);
+			}
+			long zip64eocdoffset = tail.getLong(locator + 8);
+			if (zip64eocdoffset < 0 || zip64eocdoffset + 56 > size) {
+				throw new ZipException("Invalid ZIP64 end of central directory offset: " + path);
+			}
+			ByteBuffer zip64eocd = read(channel, zip64eocdoffset, 56, path);
+			if (zip64eocd.getInt(0) != SIG_ZIP64_END_OF_CENTRAL_DIRECTORY) {
+				throw new ZipException("Invalid ZIP64 end of central directory: " + path);
+			}
+			entrycount = zip64eocd.getLong(32);
+			cdsize = zip64eocd.getLong(40);
+			cdoffset = zip64eocd.getLong(48);
+		}
+		if (cdoffset < 0 || cdsize < 0 || cdoffset + cdsize > size || cdsize > Integer.MAX_VALUE) {
+			throw new ZipException("Invalid central directory bounds: " + path);
+		}
+		ByteBuffer cd = read(channel, cdoffset, (int) cdsize, path);
+		outentrycount[0] = entrycount;
+		return cd;
+	}
+
+	/**
+	 * Reads the given range of the file into a little endian heap buffer.
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int length, Path path) throws IOException {
+		ByteBuffer result = ByteBuffer.allocate(length);
+		while (result.hasRemaining()) {
+			int read = channel.read(result, position + result.position());
+			if (read < 0) {
+				throw new EOFException("Unexpected end of file: " + path);
+			}
+		}
+		result.flip();
+		result.order(ByteOrder.LITTLE_ENDIAN);
+		return result;
+	}
+
+	private static int findEndOfCentralDirectory(ByteBuffer tail) {
+		for (int i = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; --i) {
+			if (tail.getInt(i) == SIG_END_OF_CENTRAL_DIRECTORY) {
+				int commentlen = tail.getShort(i + 20) & 0xFFFF;
+				if (i + END_OF_CENTRAL_DIRECTORY_SIZE + commentlen == tail.limit()) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static List<String> readCentralDirectory(ByteBuffer cd, long entrycount, Path path)
+			throws ZipException {
+		List<String> result = new ArrayList<>((int) Math.min(entrycount, 1 << 16));
+		int pos = 0;
+		int limit = cd.limit();
+		byte[] cdbytes = cd.array();
+		while (pos + CENTRAL_DIRECTORY_HEADER_SIZE <= limit) {
+			if (cd.getInt(pos) != SIG_CENTRAL_DIRECTORY_HEADER) {
+				throw new ZipException("Invalid central directory header at offset " + pos + ": " + path);
+			}
+			int namelen = cd.getShort(pos + 28) & 0xFFFF;
+			int extralen = cd.getShort(pos + 30) & 0xFFFF;
+			int commentlen = cd.getShort(pos + 32) & 0xFFFF;
+			int namestart = pos + CENTRAL_DIRECTORY_HEADER_SIZE;
+			if (namestart + namelen > limit) {
+				throw new ZipException("Truncated central directory: " + path);
+			}
+			//decode as UTF-8 regardless of the language encoding flag, same as java.util.zip.ZipFile does by default
+			result.add(new String(cdbytes, namestart, namelen, StandardCharsets.UTF_8));
+			pos = namestart + namelen + extralen + commentlen;
+		}
+		if (pos != limit) {
+			//a partial header remains, or the last one extends past the central directory
+			throw new ZipException("Truncated central directory: " + path);
+		}
+		return result;
+	}
+}
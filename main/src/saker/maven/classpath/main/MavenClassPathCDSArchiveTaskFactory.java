@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package saker.maven.classpath.main;
+
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.ParameterizableTask;
+import saker.build.task.TaskContext;
+import saker.build.task.utils.SimpleStructuredObjectTaskResult;
+import saker.build.task.utils.StructuredTaskResult;
+import saker.build.task.utils.annot.SakerInput;
+import saker.build.task.utils.dependencies.EqualityTaskOutputChangeDetector;
+import saker.build.trace.BuildTrace;
+import saker.build.util.property.SystemPropertyEnvironmentProperty;
+import saker.maven.classpath.impl.MavenClassPathCDSArchiveWorkerTaskFactory;
+import saker.maven.classpath.impl.MavenClassPathReference;
+import saker.maven.classpath.impl.MavenClassPathReferenceTaskOutputChangeDetector;
+import saker.maven.classpath.impl.option.LiteralStructuredTaskResult;
+import saker.maven.classpath.main.TaskDocs.DocArtifactClassPath;
+import saker.nest.scriptinfo.reflection.annot.NestInformation;
+import saker.nest.scriptinfo.reflection.annot.NestParameterInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTaskInformation;
+import saker.nest.scriptinfo.reflection.annot.NestTypeUsage;
+import saker.nest.utils.FrontendTaskFactory;
+
+@NestTaskInformation(returnType = @NestTypeUsage(SakerPath.class))
+@NestInformation("Creates a class data sharing (CDS) archive for the classes of a Maven class path.\n"
+		+ "The archive can be passed to the JVM using the -XX:SharedArchiveFile option to reduce the startup time. "
+		+ "The JVM must be started with the same class path, and the same JDK that created the archive, otherwise "
+		+ "the archive is not used.\n"
+		+ "The archive is created by running java -Xshare:dump. It is cached on the local file system, and only "
+		+ "recreated if the contents of the class path, the class list, or the JDK changes.\n"
+		+ "The task returns the local path of the archive. Creating archives for application classes requires "
+		+ "JDK 11 or later.")
+@NestParameterInformation(value = "ClassPath",
+		aliases = { "" },
+		required = true,
+		type = @NestTypeUsage(DocArtifactClassPath.class),
+		info = @NestInformation("The class path created by the " + MavenClassPathTaskFactory.TASK_NAME
+				+ "() task.\n"
+				+ "The class path shouldn't be consolidated into a pathing JAR, as the archive doesn't include the "
+				+ "classes referenced from the manifest of a JAR.\n"
+				+ "The class path may only contain JARs, as the JVM doesn't archive classes from directories."))
+@NestParameterInformation(value = "ClassList",
+		type = @NestTypeUsage(SakerPath.class),
+		info = @NestInformation("Path to a class list file that contains the classes to archive.\n"
+				+ "The class list can be created with a training run of the application using the "
+				+ "-XX:DumpLoadedClassList option.\n"
+				+ "If not specified, all classes of the class path are archived."))
+@NestParameterInformation(value = "JavaHome",
+		type = @NestTypeUsage(SakerPath.class),
+		info = @NestInformation("Local file system path of the JDK that is used to create the archive.\n"
+				+ "The archive can only be used by the same JDK.\n"
+				+ "The default is the JDK that runs the build."))
+public class MavenClassPathCDSArchiveTaskFactory extends FrontendTaskFactory<Object> {
+	private static final long serialVersionUID = 1L;
+
+	public static final String TASK_NAME = "saker.maven.classpath.cds";
+
+	@Override
+	public ParameterizableTask<? extends Object> createTask(ExecutionContext executioncontext) {
+		return new ParameterizableTask<Object>() {
+			@SakerInput(value = { "", "ClassPath" }, required = true)
+			public Object classPath;
+
+			@SakerInput(value = { "ClassList" })
+			public SakerPath classList;
+
+			@SakerInput(value = { "JavaHome" })
+			public SakerPath javaHome;
+
+			@Override
+			public Object run(TaskContext taskcontext) throws Exception {
+				if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
+					BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_FRONTEND);
+				}
+				StructuredTaskResult cpresult;
+				if (classPath instanceof StructuredTaskResult) {
+					cpresult = (StructuredTaskResult) classPath;
+				} else if (classPath instanceof MavenClassPathReference) {
+					cpresult = new LiteralStructuredTaskResult(classPath);
+				} else {
+					taskcontext.abortExecution(
+							new IllegalArgumentException("Unsupported class path type for CDS archive: " + classPath));
+					return null;
+				}
+				SakerPath classlistpath = classList == null ? null
+						: taskcontext.getTaskWorkingDirectoryPath().resolve(classList);
+				String javahome = javaHome == null
+						? taskcontext.getTaskUtilities()
+								.getReportEnvironmentDependency(new SystemPropertyEnvironmentProperty("java.home"))
+						: javaHome.toString();
+
+				MavenClassPathCDSArchiveWorkerTaskFactory workertask = new MavenClassPathCDSArchiveWorkerTaskFactory(
+						cpresult, classlistpath, javahome);
+				taskcontext.startTask(workertask, workertask, null);
+				StructuredTaskResult result = new SimpleStructuredObjectTaskResult(workertask);
+				taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
+				return result;
+			}
+		};
+	}
+}
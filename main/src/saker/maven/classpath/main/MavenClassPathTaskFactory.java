@@ -15,19 +15,21 @@
  */
 package saker.maven.classpath.main;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
+import saker.build.file.path.SakerPath;
 import saker.build.runtime.execution.ExecutionContext;
 import saker.build.task.ParameterizableTask;
 import saker.build.task.TaskContext;
-import saker.build.task.TaskFactory;
 import saker.build.task.identifier.TaskIdentifier;
-import saker.build.task.utils.SimpleStructuredObjectTaskResult;
 import saker.build.task.utils.StructuredListTaskResult;
 import saker.build.task.utils.StructuredTaskResult;
 import saker.build.task.utils.annot.SakerInput;
@@ -36,22 +38,34 @@ import saker.build.thirdparty.saker.util.ImmutableUtils;
 import saker.build.thirdparty.saker.util.ObjectUtils;
 import saker.build.trace.BuildTrace;
 import saker.build.util.property.IDEConfigurationRequiredExecutionProperty;
+import saker.maven.classpath.impl.JarAbiVersionKey;
+import saker.maven.classpath.impl.MavenClassPathConsolidationWorkerTaskFactory;
 import saker.maven.classpath.impl.MavenClassPathEntry;
+import saker.maven.classpath.impl.MavenClassPathLiteralTaskIdentifier;
+import saker.maven.classpath.impl.MavenClassPathLiteralWorkerTaskFactory;
+import saker.maven.classpath.impl.MavenClassPathPathingJarWorkerTaskFactory;
+import saker.maven.classpath.impl.MavenClassPathPruningWorkerTaskFactory;
 import saker.maven.classpath.impl.MavenClassPathReference;
+import saker.maven.classpath.impl.MavenClassPathReferenceStructuredTaskResult;
+import saker.maven.classpath.impl.MavenClassPathReferenceTaskOutputChangeDetector;
 import saker.maven.classpath.impl.MavenClassPathWorkerTaskFactory;
 import saker.maven.classpath.impl.SourceAttachmentRetrievingStructuredTaskResult;
 import saker.maven.classpath.impl.option.ArtifactMavenClassPathInputOption;
 import saker.maven.classpath.impl.option.MavenClassPathEntryInput;
+import saker.maven.classpath.impl.util.ArtifactCoordinatesInterner;
+import saker.maven.classpath.impl.util.MissingArtifactCache;
+import saker.maven.classpath.impl.util.ParallelUtils;
+import saker.maven.classpath.impl.util.VersionConflictStrategy;
 import saker.maven.classpath.main.TaskDocs.DocArtifactClassPath;
+import saker.maven.classpath.main.TaskDocs.DocChangeDetection;
+import saker.maven.classpath.main.TaskDocs.DocVersionConflict;
 import saker.maven.support.api.ArtifactCoordinates;
 import saker.maven.support.api.MavenOperationConfiguration;
 import saker.maven.support.api.dependency.MavenDependencyResolutionTaskOutput;
 import saker.maven.support.api.dependency.ResolvedDependencyArtifact;
 import saker.maven.support.api.download.ArtifactDownloadTaskOutput;
-import saker.maven.support.api.download.ArtifactDownloadUtils;
 import saker.maven.support.api.download.ArtifactDownloadWorkerTaskOutput;
 import saker.maven.support.api.localize.ArtifactLocalizationTaskOutput;
-import saker.maven.support.api.localize.ArtifactLocalizationUtils;
 import saker.maven.support.api.localize.ArtifactLocalizationWorkerTaskOutput;
 import saker.maven.support.main.configuration.option.MavenConfigurationTaskOption;
 import saker.maven.support.main.configuration.option.MavenOperationConfigurationTaskOptionUtils;
@@ -76,15 +90,113 @@ import saker.std.api.file.location.LocalFileLocation;
 		info = @NestInformation("Specifies the artifact that should be part of the created class path.\n"
 				+ "The parameter accepts one or more artifact coordinates, or outputs from Maven dependency resolution, localization "
 				+ "or artifact download tasks.\n"
+				+ "If a list is specified, it may contain the outputs of multiple dependency resolution tasks. If "
+				+ "LocalizationShards is -1, the artifacts of each resolution are localized as soon as the resolution "
+				+ "finishes, while the others are still running.\n"
+				+ "The task doesn't resolve the dependencies of the artifacts. The artifacts of a single dependency "
+				+ "resolution are only localized after the resolution has completed.\n"
 				+ "The artifact coordinates are expected in the <groupId>:<artifactId>[:<extension>[:<classifier>]]:<version> format.\n"))
 @NestParameterInformation(value = "Configuration",
 		type = @NestTypeUsage(MavenConfigurationTaskOption.class),
 		info = @NestInformation(saker.maven.support.main.TaskDocs.PARAM_CONFIGURATION))
+@NestParameterInformation(value = "ChangeDetection",
+		type = @NestTypeUsage(DocChangeDetection.class),
+		info = @NestInformation("Specifies which aspects of the class path should be considered by the tasks that use "
+				+ "the result of this task.\n"
+				+ "Tasks that use the class path will be re-run only if the selected aspects of any of the entries change. "
+				+ "The selection only applies to the tasks that use the result of this invocation, other usages of the "
+				+ "same class path are not affected.\n"
+				+ "If the build execution generates IDE configurations, the source and documentation attachments are "
+				+ "always considered.\n"
+				+ "The default is Full."))
+@NestParameterInformation(value = "VersionConflict",
+		type = @NestTypeUsage(DocVersionConflict.class),
+		info = @NestInformation("Specifies how multiple versions of the same artifact should be handled.\n"
+				+ "Artifacts are considered to be the same if they only differ in their versions. The conflicts are "
+				+ "resolved before the artifacts are retrieved, so the unused versions are not localized.\n"
+				+ "The default is None."))
+@NestParameterInformation(value = "LocalizationShards",
+		type = @NestTypeUsage(int.class),
+		info = @NestInformation("Specifies how the localization of the artifacts should be split into tasks.\n"
+				+ "If 0, all artifacts are localized by a single task. If -1, each artifact is localized by its own "
+				+ "task. If positive, the artifacts are distributed into the given number of shards based on their "
+				+ "coordinates, and each shard is localized by a separate task.\n"
+				+ "If the artifacts are localized by multiple tasks, a change in the artifacts only causes the "
+				+ "localization of the affected shards to be re-run. If each artifact is localized by its own task, "
+				+ "the localization of the artifacts is started as soon as they are available from the Artifacts "
+				+ "parameter.\n"
+				+ "The default is 0."))
+@NestParameterInformation(value = "PruneSourceDirectories",
+		type = @NestTypeUsage(value = Collection.class, elementTypes = SakerPath.class),
+		info = @NestInformation("Specifies the directories containing the Java sources that the class path is used "
+				+ "to compile.\n"
+				+ "If set, the class path entries that don't contain any classes referenced by the sources "
+				+ "(or by the supertypes and member signatures of the referenced classes) are omitted from the result. "
+				+ "This can be used to reduce the size of the compilation class path. Use the class path without this "
+				+ "parameter for running the code.\n"
+				+ "The sources are scanned for their imports and qualified names, so the entries are added back as soon "
+				+ "as a source starts using them. If the directories don't contain Java sources, all entries are kept.\n"
+				+ "Classes that are only used by annotation processors are not detected."))
+@NestParameterInformation(value = "Consolidate",
+		type = @NestTypeUsage(boolean.class),
+		info = @NestInformation("Specifies whether the entries of the class path should be merged into a single JAR.\n"
+				+ "If multiple entries contain a file with the same name, the one in the first entry is used. "
+				+ "Service provider configuration files in META-INF/services are concatenated. The merged JAR is "
+				+ "cached and only recreated if the contents of an entry changes.\n"
+				+ "Opening a single JAR is faster than opening many small ones, so this can improve the startup of "
+				+ "the compiler or the JVM. The source and documentation attachments are not available for the "
+				+ "consolidated class path.\n"
+				+ "The default is false."))
+@NestParameterInformation(value = "PathingJar",
+		type = @NestTypeUsage(boolean.class),
+		info = @NestInformation("Specifies whether the class path should be represented by a single pathing JAR.\n"
+				+ "The pathing JAR only contains a manifest that references the class path entries in its Class-Path "
+				+ "attribute, and a JAR index that maps the packages to the JARs that contain them. It can be used as "
+				+ "the only class path element when launching a JVM.\n"
+				+ "The JAR index allows the class loader to skip the JARs that don't contain a requested package. "
+				+ "It is only created if all entries are JARs, and it is ignored on Java 18 and later.\n"
+				+ "The entries are referenced by the absolute file: URIs of their local paths on the machine that runs "
+				+ "the build (the coordinator in case of build clusters). The pathing JAR can only be used on the same "
+				+ "machine, and it is recreated if the entries are moved.\n"
+				+ "The source and documentation attachments are not available for the pathing JAR class path.\n"
+				+ "The default is false."))
+@NestParameterInformation(value = "ClusterMode",
+		type = @NestTypeUsage(boolean.class),
+		info = @NestInformation("Specifies whether the artifacts should be downloaded to the build directory "
+				+ "instead of being localized to the local Maven repository.\n"
+				+ "If set, the class path entries are execution files instead of local files. The tasks running on "
+				+ "cluster daemons can access them as any other execution file, e.g. by mirroring them.\n"
+				+ "Without this, the entries refer to the local repository of the coordinator machine, which may not "
+				+ "be accessible on the cluster daemons.\n"
+				+ "The artifacts are still only retrieved on the coordinator. Localizing the artifacts to the local "
+				+ "repositories of the cluster daemons is not supported, the daemons receive the files through the "
+				+ "mirroring of the execution files by the build system.\n"
+				+ "Only applies to the artifacts that are retrieved by this task.\n"
+				+ "The default is false."))
+@NestParameterInformation(value = "VerifyChecksums",
+		type = @NestTypeUsage(boolean.class),
+		info = @NestInformation("Specifies whether the localized artifacts should be verified against the checksum "
+				+ "files in the local Maven repository.\n"
+				+ "The artifacts are verified concurrently against the .sha256 or .sha1 files next to them, and the "
+				+ "task fails if a checksum doesn't match. Verified files are remembered by their size and "
+				+ "modification time, so only the modified artifacts are hashed again.\n"
+				+ "Artifacts without checksum files and artifacts retrieved in cluster mode are not verified.\n"
+				+ "The default is false."))
 public class MavenClassPathTaskFactory extends FrontendTaskFactory<Object> {
 	private static final long serialVersionUID = 1L;
 
 	public static final String TASK_NAME = "saker.maven.classpath";
 
+	public static final String CHANGE_DETECTION_FULL = "Full";
+	public static final String CHANGE_DETECTION_CLASSPATH = "ClassPath";
+	public static final String CHANGE_DETECTION_ABI = "ABI";
+	public static final String CHANGE_DETECTION_LOCATIONS = "Locations";
+
+	public static final String VERSION_CONFLICT_NONE = "None";
+	public static final String VERSION_CONFLICT_HIGHEST_WINS = "HighestWins";
+	public static final String VERSION_CONFLICT_FIRST_WINS = "FirstWins";
+	public static final String VERSION_CONFLICT_FAIL = "Fail";
+
 	@Override
 	public ParameterizableTask<? extends Object> createTask(ExecutionContext executioncontext) {
 		return new ParameterizableTask<Object>() {
@@ -94,32 +206,95 @@ public class MavenClassPathTaskFactory extends FrontendTaskFactory<Object> {
 			@SakerInput(value = { "Configuration" })
 			public MavenConfigurationTaskOption configuration;
 
+			@SakerInput(value = { "ChangeDetection" })
+			public String changeDetection;
+
+			@SakerInput(value = { "VersionConflict" })
+			public String versionConflict;
+
+			@SakerInput(value = { "LocalizationShards" })
+			public int localizationShards = MavenClassPathWorkerTaskFactory.LOCALIZATION_SHARDS_NONE;
+
+			@SakerInput(value = { "PruneSourceDirectories" })
+			public Collection<SakerPath> pruneSourceDirectories;
+
+			@SakerInput(value = { "Consolidate" })
+			public boolean consolidate;
+
+			@SakerInput(value = { "PathingJar" })
+			public boolean pathingJar;
+
+			@SakerInput(value = { "ClusterMode" })
+			public boolean clusterMode;
+
+			@SakerInput(value = { "VerifyChecksums" })
+			public boolean verifyChecksums;
+
 			@Override
 			public Object run(TaskContext taskcontext) throws Exception {
 				if (saker.build.meta.Versions.VERSION_FULL_COMPOUND >= 8_006) {
 					BuildTrace.classifyTask(BuildTrace.CLASSIFICATION_FRONTEND);
 				}
+				int changedetectionfields;
+				VersionConflictStrategy conflictstrategy;
+				try {
+					changedetectionfields = getChangeDetectionFields(changeDetection);
+					conflictstrategy = VersionConflictStrategy.forName(versionConflict);
+					if (localizationShards < MavenClassPathWorkerTaskFactory.LOCALIZATION_SHARDS_PER_ARTIFACT) {
+						throw new IllegalArgumentException("Invalid LocalizationShards: " + localizationShards);
+					}
+				} catch (IllegalArgumentException e) {
+					taskcontext.abortExecution(e);
+					return null;
+				}
+				TaskIdentifier classpath = createClassPath(taskcontext, conflictstrategy);
+				if (classpath == null) {
+					//execution aborted
+					return null;
+				}
+				if (!ObjectUtils.isNullOrEmpty(pruneSourceDirectories)) {
+					Set<SakerPath> sourcedirs = new LinkedHashSet<>();
+					for (SakerPath dir : pruneSourceDirectories) {
+						sourcedirs.add(taskcontext.getTaskWorkingDirectoryPath().resolve(dir));
+					}
+					//only the class path related changes are relevant for pruning
+					MavenClassPathPruningWorkerTaskFactory prunetask = new MavenClassPathPruningWorkerTaskFactory(
+							toStructuredClassPath(classpath,
+									MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_CLASSPATH),
+							sourcedirs);
+					taskcontext.startTask(prunetask, prunetask, null);
+					classpath = prunetask;
+				}
+				if (consolidate) {
+					//only the class path related changes are relevant for consolidation, as the attachments are dropped
+					MavenClassPathConsolidationWorkerTaskFactory consolidatetask = new MavenClassPathConsolidationWorkerTaskFactory(
+							toStructuredClassPath(classpath,
+									MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_CLASSPATH));
+					taskcontext.startTask(consolidatetask, consolidatetask, null);
+					classpath = consolidatetask;
+				}
+				if (pathingJar) {
+					MavenClassPathPathingJarWorkerTaskFactory pathingtask = new MavenClassPathPathingJarWorkerTaskFactory(
+							toStructuredClassPath(classpath,
+									MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_CLASSPATH));
+					taskcontext.startTask(pathingtask, pathingtask, null);
+					classpath = pathingtask;
+				}
+				return reportClassPathResult(taskcontext, classpath, changedetectionfields);
+			}
 
+			/**
+			 * Creates the class path based on the artifacts input.
+			 * 
+			 * @return The identifier of the task that outputs the {@link MavenClassPathReference}, or
+			 *             <code>null</code> if the execution was aborted.
+			 */
+			private TaskIdentifier createClassPath(TaskContext taskcontext, VersionConflictStrategy conflictstrategy)
+					throws Exception {
 				if (artifacts instanceof StructuredTaskResult) {
 					if (artifacts instanceof StructuredListTaskResult) {
-						StructuredListTaskResult arifactsstructuredlist = (StructuredListTaskResult) artifacts;
-						Set<ArtifactCoordinates> coordinates = new LinkedHashSet<>();
-						Iterator<? extends StructuredTaskResult> it = arifactsstructuredlist.resultIterator();
-						while (it.hasNext()) {
-							Object resobj = it.next().toResult(taskcontext);
-							String resstr = Objects.toString(resobj, null);
-							if (ObjectUtils.isNullOrEmpty(resstr)) {
-								continue;
-							}
-							try {
-								coordinates.add(ArtifactCoordinates.valueOf(resstr));
-							} catch (IllegalArgumentException e) {
-								taskcontext.abortExecution(e);
-								return null;
-							}
-						}
-						return handleArtifactCoordinates(taskcontext, getRepositoryOperationConfiguration(),
-								coordinates);
+						return handleArtifactsList(taskcontext, (StructuredListTaskResult) artifacts,
+								conflictstrategy);
 					}
 					StructuredTaskResult structuredartifacts = (StructuredTaskResult) artifacts;
 					artifacts = structuredartifacts.toResult(taskcontext);
@@ -128,43 +303,50 @@ public class MavenClassPathTaskFactory extends FrontendTaskFactory<Object> {
 					artifacts = ImmutableUtils.makeImmutableList((Object[]) artifacts);
 				}
 				if (artifacts instanceof Iterable<?>) {
-					Iterable<?> artifactsiterable = (Iterable<?>) artifacts;
-					Set<ArtifactCoordinates> coordinates = new LinkedHashSet<>();
-
-					for (Object o : artifactsiterable) {
-						String coordstr = Objects.toString(o, null);
-						if (ObjectUtils.isNullOrEmpty(coordstr)) {
-							continue;
-						}
-						try {
-							coordinates.add(ArtifactCoordinates.valueOf(coordstr));
-						} catch (IllegalArgumentException e) {
-							taskcontext.abortExecution(e);
-							return null;
-						}
+					Set<ArtifactCoordinates> coordinates;
+					try {
+						coordinates = ArtifactCoordinatesInterner.valueOfAll((Iterable<?>) artifacts);
+					} catch (IllegalArgumentException e) {
+						taskcontext.abortExecution(e);
+						return null;
 					}
-					return handleArtifactCoordinates(taskcontext, getRepositoryOperationConfiguration(), coordinates);
+					return startClassPathWorker(taskcontext, getRepositoryOperationConfiguration(), coordinates,
+							conflictstrategy);
 				}
 
 				if (artifacts instanceof ArtifactDownloadTaskOutput) {
 					ArtifactDownloadTaskOutput downloadoutput = (ArtifactDownloadTaskOutput) artifacts;
-					return handleDownloadOutput(taskcontext, downloadoutput.getConfiguration(), downloadoutput);
+					Set<ArtifactCoordinates> selectedcoordinates = resolveConflicts(taskcontext, conflictstrategy,
+							downloadoutput.getCoordinates());
+					if (selectedcoordinates == null) {
+						return null;
+					}
+					return startLiteralClassPath(taskcontext, handleDownloadOutput(taskcontext,
+							downloadoutput.getConfiguration(), downloadoutput, selectedcoordinates));
 				}
 				if (artifacts instanceof ArtifactLocalizationTaskOutput) {
 					ArtifactLocalizationTaskOutput localizationoutput = (ArtifactLocalizationTaskOutput) artifacts;
-					return handleLocalizationOutput(taskcontext, localizationoutput.getConfiguration(),
-							localizationoutput);
+					Set<ArtifactCoordinates> selectedcoordinates = resolveConflicts(taskcontext, conflictstrategy,
+							localizationoutput.getCoordinates());
+					if (selectedcoordinates == null) {
+						return null;
+					}
+					return startLiteralClassPath(taskcontext, handleLocalizationOutput(taskcontext,
+							localizationoutput.getConfiguration(), localizationoutput, selectedcoordinates));
 				}
 				if (artifacts instanceof MavenDependencyResolutionTaskOutput) {
 					MavenDependencyResolutionTaskOutput depoutput = (MavenDependencyResolutionTaskOutput) artifacts;
-					Set<ArtifactCoordinates> coordinates = ImmutableUtils
-							.makeImmutableLinkedHashSet(depoutput.getArtifactCoordinates());
-					return handleArtifactCoordinates(taskcontext, depoutput.getConfiguration(), coordinates);
+					Set<ArtifactCoordinates> coordinates = ArtifactCoordinatesInterner
+							.internAll(depoutput.getArtifactCoordinates());
+					return startClassPathWorker(taskcontext, depoutput.getConfiguration(), coordinates,
+							conflictstrategy);
 				}
 				if (artifacts instanceof ResolvedDependencyArtifact) {
 					ResolvedDependencyArtifact resolvedartifact = (ResolvedDependencyArtifact) artifacts;
-					return handleArtifactCoordinates(taskcontext, resolvedartifact.getConfiguration(),
-							ImmutableUtils.singletonSet(resolvedartifact.getCoordinates()));
+					return startClassPathWorker(taskcontext, resolvedartifact.getConfiguration(),
+							ImmutableUtils.singletonSet(
+									ArtifactCoordinatesInterner.intern(resolvedartifact.getCoordinates())),
+							conflictstrategy);
 				}
 
 				String coordsstr = Objects.toString(artifacts, null);
@@ -174,14 +356,114 @@ public class MavenClassPathTaskFactory extends FrontendTaskFactory<Object> {
 					return null;
 				}
 				try {
-					return handleArtifactCoordinates(taskcontext, getRepositoryOperationConfiguration(),
-							Collections.singleton(ArtifactCoordinates.valueOf(coordsstr)));
+					return startClassPathWorker(taskcontext, getRepositoryOperationConfiguration(),
+							Collections.singleton(ArtifactCoordinatesInterner.valueOf(coordsstr)), conflictstrategy);
 				} catch (IllegalArgumentException e) {
 					taskcontext.abortExecution(e);
 					return null;
 				}
 			}
 
+			/**
+			 * Creates the class path for a structured list of artifacts.
+			 * <p>
+			 * The elements may be artifact coordinates, dependency resolution outputs or resolved artifacts. If the
+			 * artifacts are localized by their own tasks, the localization of the artifacts in an element is started as
+			 * soon as the element is available, so it overlaps with the computation of the remaining elements. (E.g.
+			 * the localization of the artifacts of a dependency resolution starts while the other resolutions are still
+			 * running.)
+			 * <p>
+			 * The granularity is a single element. The transitive dependencies are not resolved here, so the artifacts
+			 * of a dependency resolution are only available when the whole resolution has completed.
+			 * <p>
+			 * If the list contains dependency resolution outputs or resolved artifacts, their configuration is used,
+			 * same as if they were passed directly. They must all use the same configuration.
+			 * 
+			 * @return The identifier of the worker task, or <code>null</code> if the execution was aborted.
+			 */
+			private TaskIdentifier handleArtifactsList(TaskContext taskcontext, StructuredListTaskResult artifactslist,
+					VersionConflictStrategy conflictstrategy) {
+				MavenOperationConfiguration paramconfig = getRepositoryOperationConfiguration();
+				MavenOperationConfiguration resolutionconfig = null;
+				Set<ArtifactCoordinates> coordinates = new LinkedHashSet<>();
+				Set<String> conflictkeys = new HashSet<>();
+				//the artifacts can only be retrieved early if they are localized by their own tasks
+				boolean startearly = isLocalizedPerArtifact();
+				Iterator<? extends StructuredTaskResult> it = artifactslist.resultIterator();
+				while (it.hasNext()) {
+					//the elements may be produced by different tasks, so waiting for them can take time
+					Object resobj = it.next().toResult(taskcontext);
+					MavenOperationConfiguration elementconfig;
+					Collection<ArtifactCoordinates> elementcoordinates;
+					if (resobj instanceof MavenDependencyResolutionTaskOutput) {
+						MavenDependencyResolutionTaskOutput depoutput = (MavenDependencyResolutionTaskOutput) resobj;
+						elementconfig = depoutput.getConfiguration();
+						elementcoordinates = ArtifactCoordinatesInterner.internAll(depoutput.getArtifactCoordinates());
+					} else if (resobj instanceof ResolvedDependencyArtifact) {
+						ResolvedDependencyArtifact resolvedartifact = (ResolvedDependencyArtifact) resobj;
+						elementconfig = resolvedartifact.getConfiguration();
+						elementcoordinates = ImmutableUtils
+								.singletonSet(ArtifactCoordinatesInterner.intern(resolvedartifact.getCoordinates()));
+					} else {
+						String resstr = Objects.toString(resobj, null);
+						if (ObjectUtils.isNullOrEmpty(resstr)) {
+							continue;
+						}
+						try {
+							elementcoordinates = ImmutableUtils
+									.singletonSet(ArtifactCoordinatesInterner.valueOf(resstr));
+						} catch (IllegalArgumentException e) {
+							taskcontext.abortExecution(e);
+							return null;
+						}
+						elementconfig = null;
+					}
+					if (elementconfig != null) {
+						if (resolutionconfig == null) {
+							resolutionconfig = elementconfig;
+						} else if (!resolutionconfig.equals(elementconfig)) {
+							taskcontext.abortExecution(new IllegalArgumentException(
+									"Artifacts are resolved with different Maven configurations: " + resolutionconfig
+											+ " and " + elementconfig));
+							return null;
+						}
+					}
+					if (!startearly) {
+						coordinates.addAll(elementcoordinates);
+						continue;
+					}
+					MavenOperationConfiguration startconfig = resolutionconfig != null ? resolutionconfig : paramconfig;
+					for (ArtifactCoordinates coord : elementcoordinates) {
+						if (coordinates.add(coord) && (conflictstrategy == VersionConflictStrategy.NONE
+								|| (conflictstrategy.isFirstOccurrenceSelected()
+										&& conflictkeys.add(VersionConflictStrategy.getConflictKey(coord))))) {
+							//start retrieving the artifact while waiting for the remaining elements
+							//the worker task will use the same per-artifact retrieval task
+							MavenClassPathWorkerTaskFactory.startArtifactRetrieval(taskcontext, startconfig, coord,
+									clusterMode);
+						}
+					}
+				}
+				return startClassPathWorker(taskcontext, resolutionconfig != null ? resolutionconfig : paramconfig,
+						coordinates, conflictstrategy);
+			}
+
+			private boolean isLocalizedPerArtifact() {
+				return localizationShards == MavenClassPathWorkerTaskFactory.LOCALIZATION_SHARDS_PER_ARTIFACT;
+			}
+
+			private TaskIdentifier startClassPathWorker(TaskContext taskcontext, MavenOperationConfiguration config,
+					Set<ArtifactCoordinates> coordinates, VersionConflictStrategy conflictstrategy) {
+				//collapse the versions here, so the conflicting versions are not part of the worker task identifier
+				Set<ArtifactCoordinates> selectedcoordinates = resolveConflicts(taskcontext, conflictstrategy,
+						coordinates);
+				if (selectedcoordinates == null) {
+					return null;
+				}
+				return handleArtifactCoordinates(taskcontext, config, selectedcoordinates, localizationShards,
+						clusterMode, verifyChecksums);
+			}
+
 			private MavenOperationConfiguration getRepositoryOperationConfiguration() {
 				MavenOperationConfiguration config = MavenOperationConfigurationTaskOptionUtils
 						.createConfiguration(this.configuration);
@@ -190,103 +472,177 @@ public class MavenClassPathTaskFactory extends FrontendTaskFactory<Object> {
 		};
 	}
 
-	private static Object handleLocalizationOutput(TaskContext taskcontext, MavenOperationConfiguration config,
-			ArtifactLocalizationTaskOutput localizationoutput) {
-		Collection<MavenClassPathEntry> entries = new LinkedHashSet<>();
-		final TaskIdentifier sourcelocalizetaskid;
-		if (taskcontext.getTaskUtilities()
-				.getReportExecutionDependency(IDEConfigurationRequiredExecutionProperty.INSTANCE)) {
-			Set<ArtifactCoordinates> sourcelocalizecoordinates = new LinkedHashSet<>();
-			for (ArtifactCoordinates coordstr : localizationoutput.getCoordinates()) {
-				ArtifactCoordinates sourceacoords = MavenClassPathWorkerTaskFactory
-						.createSourceArtifactCoordinates(coordstr);
-
-				sourcelocalizecoordinates.add(sourceacoords);
-			}
-
-			TaskFactory<? extends ArtifactLocalizationTaskOutput> dltaskfactory = ArtifactLocalizationUtils
-					.createLocalizeArtifactsTaskFactory(config, sourcelocalizecoordinates);
-			sourcelocalizetaskid = ArtifactLocalizationUtils.createLocalizeArtifactsTaskIdentifier(config,
-					sourcelocalizecoordinates);
-			taskcontext.startTask(sourcelocalizetaskid, dltaskfactory, null);
-		} else {
-			sourcelocalizetaskid = null;
+	private static int getChangeDetectionFields(String changedetection) throws IllegalArgumentException {
+		if (changedetection == null || CHANGE_DETECTION_FULL.equalsIgnoreCase(changedetection)) {
+			return MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL;
 		}
-		StructuredListTaskResult locresultslist = localizationoutput.getLocalizationResults();
-		Iterator<? extends StructuredTaskResult> it = locresultslist.resultIterator();
-		while (it.hasNext()) {
-			ArtifactLocalizationWorkerTaskOutput locres = (ArtifactLocalizationWorkerTaskOutput) it.next()
-					.toResult(taskcontext);
-			MavenClassPathEntry cpentry = new MavenClassPathEntry(LocalFileLocation.create(locres.getLocalPath()),
-					locres.getContentDescriptor());
-			if (sourcelocalizetaskid != null) {
-				ArtifactCoordinates sourceacoords = MavenClassPathWorkerTaskFactory
-						.createSourceArtifactCoordinates(locres.getCoordinates());
-				cpentry.setSourceAttachment(
-						new SourceAttachmentRetrievingStructuredTaskResult(sourcelocalizetaskid, sourceacoords));
-			}
-			entries.add(cpentry);
+		if (CHANGE_DETECTION_CLASSPATH.equalsIgnoreCase(changedetection)) {
+			return MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_CLASSPATH;
+		}
+		if (CHANGE_DETECTION_ABI.equalsIgnoreCase(changedetection)) {
+			return MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_LOCATIONS_ABI;
+		}
+		if (CHANGE_DETECTION_LOCATIONS.equalsIgnoreCase(changedetection)) {
+			return MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_LOCATIONS;
 		}
+		throw new IllegalArgumentException("Unrecognized ChangeDetection: " + changedetection);
+	}
 
-		MavenClassPathReference result = new MavenClassPathReference(entries);
+	/**
+	 * Reports the result of the task.
+	 * <p>
+	 * The change detection fields are applied by the returned structured result on the dependency of the consumer task.
+	 * The task that outputs the class path always reports changes to all of the fields, so other consumers of the same
+	 * class path are not affected.
+	 */
+	private static Object reportClassPathResult(TaskContext taskcontext, TaskIdentifier classpath,
+			int changedetectionfields) {
+		StructuredTaskResult result = toStructuredClassPath(classpath, changedetectionfields);
 		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
 		return result;
 	}
 
-	private static Object handleDownloadOutput(TaskContext taskcontext, MavenOperationConfiguration config,
-			ArtifactDownloadTaskOutput downloadoutput) {
-		Collection<MavenClassPathEntry> entries = new LinkedHashSet<>();
-		final TaskIdentifier sourcedltaskid;
-		if (taskcontext.getTaskUtilities()
-				.getReportExecutionDependency(IDEConfigurationRequiredExecutionProperty.INSTANCE)) {
-			Set<ArtifactCoordinates> sourcedlcoordinates = new LinkedHashSet<>();
-			for (ArtifactCoordinates coordstr : downloadoutput.getCoordinates()) {
-				ArtifactCoordinates sourceacoords = MavenClassPathWorkerTaskFactory
-						.createSourceArtifactCoordinates(coordstr);
-
-				sourcedlcoordinates.add(sourceacoords);
+	/**
+	 * Converts the class path task to a structured task result that can be used as an input of other tasks.
+	 */
+	private static StructuredTaskResult toStructuredClassPath(TaskIdentifier classpath, int changedetectionfields) {
+		return new MavenClassPathReferenceStructuredTaskResult(classpath, changedetectionfields);
+	}
+
+	/**
+	 * Starts a task that outputs the class path created by the frontend task.
+	 */
+	private static TaskIdentifier startLiteralClassPath(TaskContext taskcontext, MavenClassPathReference classpath) {
+		MavenClassPathLiteralWorkerTaskFactory literaltask = new MavenClassPathLiteralWorkerTaskFactory(classpath);
+		//the identifier doesn't depend on the class path, so the result of the frontend task stays the same when it
+		//changes, and the change detection fields are applied by the consumers
+		MavenClassPathLiteralTaskIdentifier taskid = new MavenClassPathLiteralTaskIdentifier(taskcontext.getTaskId());
+		taskcontext.startTask(taskid, literaltask, null);
+		return taskid;
+	}
+
+	private static MavenClassPathReference handleLocalizationOutput(TaskContext taskcontext,
+			MavenOperationConfiguration config, ArtifactLocalizationTaskOutput localizationoutput,
+			Set<ArtifactCoordinates> selectedcoordinates) throws Exception {
+		boolean attachments = isAttachmentsRequired(taskcontext);
+		long missingattachmentttl = attachments ? MissingArtifactCache.getTtlMillis(taskcontext) : 0;
+		return createClassPathReference(localizationoutput.getLocalizationResults(), resultitem -> {
+			ArtifactLocalizationWorkerTaskOutput locres = (ArtifactLocalizationWorkerTaskOutput) resultitem
+					.toResult(taskcontext);
+			if (!selectedcoordinates.contains(locres.getCoordinates())) {
+				//an other version of the artifact is used
+				return null;
+			}
+			LocalFileLocation filelocation = LocalFileLocation.create(locres.getLocalPath());
+			MavenClassPathEntry cpentry = new MavenClassPathEntry(filelocation, locres.getContentDescriptor());
+			cpentry.setAbiVersionKey(
+					JarAbiVersionKey.compute(taskcontext, filelocation, locres.getContentDescriptor()));
+			if (!attachments) {
+				return cpentry;
+			}
+			ArtifactCoordinates sourceacoords = MavenClassPathWorkerTaskFactory
+					.createSourceArtifactCoordinates(locres.getCoordinates());
+			ArtifactCoordinates javadocacoords = MavenClassPathWorkerTaskFactory
+					.createJavadocArtifactCoordinates(locres.getCoordinates());
+			cpentry.setSourceAttachment(SourceAttachmentRetrievingStructuredTaskResult.createLocalizing(config,
+					sourceacoords, missingattachmentttl));
+			cpentry.setDocumentationAttachment(SourceAttachmentRetrievingStructuredTaskResult
+					.createLocalizing(config, javadocacoords, missingattachmentttl));
+			return cpentry;
+		});
+	}
+
+	private static MavenClassPathReference handleDownloadOutput(TaskContext taskcontext,
+			MavenOperationConfiguration config, ArtifactDownloadTaskOutput downloadoutput,
+			Set<ArtifactCoordinates> selectedcoordinates) throws Exception {
+		boolean attachments = isAttachmentsRequired(taskcontext);
+		long missingattachmentttl = attachments ? MissingArtifactCache.getTtlMillis(taskcontext) : 0;
+		return createClassPathReference(downloadoutput.getDownloadResults(), resultitem -> {
+			ArtifactDownloadWorkerTaskOutput dlres = (ArtifactDownloadWorkerTaskOutput) resultitem
+					.toResult(taskcontext);
+			if (!selectedcoordinates.contains(dlres.getCoordinates())) {
+				//an other version of the artifact is used
+				return null;
+			}
+			ExecutionFileLocation filelocation = ExecutionFileLocation.create(dlres.getPath());
+			MavenClassPathEntry cpentry = new MavenClassPathEntry(filelocation, dlres.getContentDescriptor());
+			cpentry.setAbiVersionKey(JarAbiVersionKey.compute(taskcontext, filelocation, dlres.getContentDescriptor()));
+			if (!attachments) {
+				return cpentry;
 			}
-			TaskFactory<? extends ArtifactDownloadTaskOutput> dltaskfactory = ArtifactDownloadUtils
-					.createDownloadArtifactsTaskFactory(config, sourcedlcoordinates);
-			sourcedltaskid = ArtifactDownloadUtils.createDownloadArtifactsTaskIdentifier(config, sourcedlcoordinates);
-			taskcontext.startTask(sourcedltaskid, dltaskfactory, null);
-		} else {
-			sourcedltaskid = null;
+			ArtifactCoordinates sourceacoords = MavenClassPathWorkerTaskFactory
+					.createSourceArtifactCoordinates(dlres.getCoordinates());
+			ArtifactCoordinates javadocacoords = MavenClassPathWorkerTaskFactory
+					.createJavadocArtifactCoordinates(dlres.getCoordinates());
+			cpentry.setSourceAttachment(SourceAttachmentRetrievingStructuredTaskResult.createDownloading(config,
+					sourceacoords, missingattachmentttl));
+			cpentry.setDocumentationAttachment(SourceAttachmentRetrievingStructuredTaskResult
+					.createDownloading(config, javadocacoords, missingattachmentttl));
+			return cpentry;
+		});
+	}
+
+	/**
+	 * Selects the artifacts to be used based on the version conflict strategy.
+	 * 
+	 * @return The selected artifacts, or <code>null</code> if the execution was aborted due to conflicting versions.
+	 */
+	private static Set<ArtifactCoordinates> resolveConflicts(TaskContext taskcontext,
+			VersionConflictStrategy conflictstrategy, Collection<? extends ArtifactCoordinates> coordinates) {
+		try {
+			return conflictstrategy.resolve(coordinates);
+		} catch (IllegalArgumentException e) {
+			taskcontext.abortExecution(e);
+			return null;
 		}
-		StructuredListTaskResult dlresultslist = downloadoutput.getDownloadResults();
-		Iterator<? extends StructuredTaskResult> it = dlresultslist.resultIterator();
+	}
+
+	/**
+	 * Checks if the source and documentation attachments should be added to the class path entries.
+	 * <p>
+	 * The attachments are only used for generating IDE configurations.
+	 */
+	private static boolean isAttachmentsRequired(TaskContext taskcontext) {
+		return Boolean.TRUE.equals(taskcontext.getTaskUtilities()
+				.getReportExecutionDependency(IDEConfigurationRequiredExecutionProperty.INSTANCE));
+	}
+
+	/**
+	 * Creates the class path entries for the elements of the result list concurrently.
+	 * <p>
+	 * The elements are retrieved and processed in the order they become available, while the entries are assembled
+	 * in the original order of the list.
+	 */
+	private static MavenClassPathReference createClassPathReference(StructuredListTaskResult resultslist,
+			ParallelUtils.ParallelFunction<StructuredTaskResult, MavenClassPathEntry> entrycreator) throws Exception {
+		List<StructuredTaskResult> resultitems = new ArrayList<>();
+		Iterator<? extends StructuredTaskResult> it = resultslist.resultIterator();
 		while (it.hasNext()) {
-			ArtifactDownloadWorkerTaskOutput dlres = (ArtifactDownloadWorkerTaskOutput) it.next().toResult(taskcontext);
-			MavenClassPathEntry cpentry = new MavenClassPathEntry(ExecutionFileLocation.create(dlres.getPath()),
-					dlres.getContentDescriptor());
-			if (sourcedltaskid != null) {
-				ArtifactCoordinates sourceacoords = MavenClassPathWorkerTaskFactory
-						.createSourceArtifactCoordinates(dlres.getCoordinates());
-				cpentry.setSourceAttachment(
-						new SourceAttachmentRetrievingStructuredTaskResult(sourcedltaskid, sourceacoords));
+			resultitems.add(it.next());
+		}
+		Collection<MavenClassPathEntry> entries = new LinkedHashSet<>();
+		for (MavenClassPathEntry cpentry : ParallelUtils.mapParallel(resultitems, entrycreator)) {
+			if (cpentry != null) {
+				entries.add(cpentry);
 			}
-			entries.add(cpentry);
 		}
-
-		MavenClassPathReference result = new MavenClassPathReference(entries);
-		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
-		return result;
+		return new MavenClassPathReference(entries);
 	}
 
-	private static Object handleArtifactCoordinates(TaskContext taskcontext, MavenOperationConfiguration config,
-			Set<ArtifactCoordinates> coordinates) {
+	private static TaskIdentifier handleArtifactCoordinates(TaskContext taskcontext,
+			MavenOperationConfiguration config, Set<ArtifactCoordinates> coordinates,
+			int localizationshards, boolean clustermode, boolean verifychecksums) {
 		Set<MavenClassPathEntryInput> inputs = new LinkedHashSet<>();
 		for (ArtifactCoordinates coord : coordinates) {
 			inputs.add(new MavenClassPathEntryInput(new ArtifactMavenClassPathInputOption(coord), null,
 					new ArtifactMavenClassPathInputOption(
 							MavenClassPathWorkerTaskFactory.createSourceArtifactCoordinates(coord)),
-					null));
+					new ArtifactMavenClassPathInputOption(
+							MavenClassPathWorkerTaskFactory.createJavadocArtifactCoordinates(coord))));
 		}
-		MavenClassPathWorkerTaskFactory workertask = new MavenClassPathWorkerTaskFactory(config, inputs);
+		MavenClassPathWorkerTaskFactory workertask = new MavenClassPathWorkerTaskFactory(config, inputs,
+				localizationshards, VersionConflictStrategy.NONE, clustermode, verifychecksums);
 		taskcontext.startTask(workertask, workertask, null);
-
-		StructuredTaskResult result = new SimpleStructuredObjectTaskResult(workertask);
-		taskcontext.reportSelfTaskOutputChangeDetector(new EqualityTaskOutputChangeDetector(result));
-		return result;
+		return workertask;
 	}
 }
@@ -15,6 +15,8 @@
  */
 package saker.maven.classpath.main;
 
+import saker.build.scripting.model.info.TypeInformationKind;
+import saker.nest.scriptinfo.reflection.annot.NestFieldInformation;
 import saker.nest.scriptinfo.reflection.annot.NestInformation;
 import saker.nest.scriptinfo.reflection.annot.NestTypeInformation;
 
@@ -27,4 +29,50 @@ public class TaskDocs {
 	@NestInformation("Classpath object for the specified Maven artifacts.")
 	public static class DocArtifactClassPath {
 	}
+
+	@NestTypeInformation(kind = TypeInformationKind.ENUM,
+			qualifiedName = "saker.maven.classpath.ChangeDetection",
+			enumValues = {
+
+					@NestFieldInformation(value = MavenClassPathTaskFactory.CHANGE_DETECTION_FULL,
+							info = @NestInformation("Any change in the class path entries or their source and documentation "
+									+ "attachments is considered to be a change of the class path.")),
+					@NestFieldInformation(value = MavenClassPathTaskFactory.CHANGE_DETECTION_CLASSPATH,
+							info = @NestInformation("Only the changes of the class path entry files and their contents "
+									+ "are considered to be a change.\n"
+									+ "Changes in the source and documentation attachments don't cause the dependent tasks to be re-run.")),
+					@NestFieldInformation(value = MavenClassPathTaskFactory.CHANGE_DETECTION_ABI,
+							info = @NestInformation("Only the changes of the class path entry files and their ABI "
+									+ "(the signatures of the public and protected classes and members) are considered "
+									+ "to be a change.\n"
+									+ "Suitable for compilation, as changes in the method bodies or private members "
+									+ "don't cause the dependent tasks to be re-run.")),
+					@NestFieldInformation(value = MavenClassPathTaskFactory.CHANGE_DETECTION_LOCATIONS,
+							info = @NestInformation("Only the changes of the class path entry files are considered to "
+									+ "be a change.\n"
+									+ "Changes in the contents of the files don't cause the dependent tasks to be "
+									+ "re-run. Suitable for tasks that only pass the paths of the class path entries "
+									+ "along.")),
+
+			})
+	public static class DocChangeDetection {
+	}
+
+	@NestTypeInformation(kind = TypeInformationKind.ENUM,
+			qualifiedName = "saker.maven.classpath.VersionConflict",
+			enumValues = {
+
+					@NestFieldInformation(value = MavenClassPathTaskFactory.VERSION_CONFLICT_NONE,
+							info = @NestInformation("All versions of the artifacts are part of the class path.")),
+					@NestFieldInformation(value = MavenClassPathTaskFactory.VERSION_CONFLICT_HIGHEST_WINS,
+							info = @NestInformation("Only the highest version of an artifact is part of the class path.\n"
+									+ "It is placed at the position of the first occurrence of the artifact.")),
+					@NestFieldInformation(value = MavenClassPathTaskFactory.VERSION_CONFLICT_FIRST_WINS,
+							info = @NestInformation("Only the first occurring version of an artifact is part of the class path.")),
+					@NestFieldInformation(value = MavenClassPathTaskFactory.VERSION_CONFLICT_FAIL,
+							info = @NestInformation("The task fails if multiple versions of an artifact are present.")),
+
+			})
+	public static class DocVersionConflict {
+	}
 }
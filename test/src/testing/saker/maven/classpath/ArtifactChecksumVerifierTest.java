@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import saker.build.thirdparty.saker.util.StringUtils;
+import saker.maven.classpath.impl.util.ArtifactChecksumVerifier;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class ArtifactChecksumVerifierTest extends SakerTestCase {
+	private static final byte[] CONTENTS = "artifact contents".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] OTHER_CONTENTS = "modified contents".getBytes(StandardCharsets.UTF_8);
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		Path dir = Files.createTempDirectory("saker.maven.classpath.test.checksum");
+		try {
+			String sha1 = hash(CONTENTS, "SHA-1");
+			String sha256 = hash(CONTENTS, "SHA-256");
+			String othersha1 = hash(OTHER_CONTENTS, "SHA-1");
+
+			//no checksum files, not verified
+			ArtifactChecksumVerifier.verify(writeArtifact(dir, "unchecked.jar"));
+
+			assertVerified(dir, "plain.jar", ".sha1", sha1);
+			assertVerified(dir, "newline.jar", ".sha1", sha1 + "\n");
+			assertVerified(dir, "uppercase.jar", ".sha1", sha1.toUpperCase());
+			//trailing file names, as written by sha1sum and some repository managers
+			assertVerified(dir, "filename.jar", ".sha1", sha1 + "  filename.jar\n");
+			assertVerified(dir, "binaryfilename.jar", ".sha1", sha1 + " *binaryfilename.jar");
+			assertVerified(dir, "multiline.jar", ".sha1", sha1 + "  multiline.jar\nsomething else\n");
+			//BSD format
+			assertVerified(dir, "bsd.jar", ".sha1", "SHA1 (bsd.jar) = " + sha1);
+			assertVerified(dir, "bsdnospace.jar", ".sha1", "SHA1(bsdnospace.jar)= " + sha1);
+			assertVerified(dir, "plain256.jar", ".sha256", sha256 + "  plain256.jar");
+
+			assertMismatch(dir, "mismatch.jar", ".sha1", othersha1);
+			assertMismatch(dir, "mismatchfilename.jar", ".sha1", othersha1 + "  mismatchfilename.jar");
+			assertMismatch(dir, "mismatchbsd.jar", ".sha1", "SHA1 (mismatchbsd.jar) = " + othersha1);
+			assertMismatch(dir, "empty.jar", ".sha1", "");
+			assertMismatch(dir, "mismatch256.jar", ".sha256", hash(OTHER_CONTENTS, "SHA-256"));
+
+			//the SHA-256 checksum takes precedence
+			Path both = writeArtifact(dir, "both.jar");
+			writeChecksum(both, ".sha256", sha256);
+			writeChecksum(both, ".sha1", othersha1);
+			ArtifactChecksumVerifier.verify(both);
+			Path bothbad = writeArtifact(dir, "bothbad.jar");
+			writeChecksum(bothbad, ".sha256", hash(OTHER_CONTENTS, "SHA-256"));
+			writeChecksum(bothbad, ".sha1", sha1);
+			assertException(IOException.class, () -> ArtifactChecksumVerifier.verify(bothbad));
+
+			//modifications after a successful verification are detected
+			Path modified = writeArtifact(dir, "modified.jar");
+			writeChecksum(modified, ".sha1", sha1);
+			ArtifactChecksumVerifier.verify(modified);
+			Files.write(modified, OTHER_CONTENTS);
+			assertException(IOException.class, () -> ArtifactChecksumVerifier.verify(modified));
+		} finally {
+			deleteRecursively(dir);
+		}
+	}
+
+	private static void assertVerified(Path dir, String name, String extension, String checksumcontents)
+			throws Exception {
+		Path artifact = writeArtifact(dir, name);
+		writeChecksum(artifact, extension, checksumcontents);
+		ArtifactChecksumVerifier.verify(artifact);
+	}
+
+	private static void assertMismatch(Path dir, String name, String extension, String checksumcontents)
+			throws Exception {
+		Path artifact = writeArtifact(dir, name);
+		writeChecksum(artifact, extension, checksumcontents);
+		assertException(IOException.class, () -> ArtifactChecksumVerifier.verify(artifact));
+	}
+
+	private static Path writeArtifact(Path dir, String name) throws IOException {
+		Path result = dir.resolve(name);
+		Files.write(result, CONTENTS);
+		//old enough to be cached after verification
+		Files.setLastModifiedTime(result, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+		return result;
+	}
+
+	private static void writeChecksum(Path artifact, String extension, String contents) throws IOException {
+		Files.write(artifact.resolveSibling(artifact.getFileName() + extension),
+				contents.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String hash(byte[] data, String algorithm) throws Exception {
+		return StringUtils.toHexString(MessageDigest.getInstance(algorithm).digest(data));
+	}
+
+	private static void deleteRecursively(Path dir) throws IOException {
+		List<Path> paths;
+		try (Stream<Path> files = Files.walk(dir)) {
+			paths = files.collect(Collectors.toList());
+		}
+		//children first
+		for (int i = paths.size() - 1; i >= 0; i--) {
+			Files.deleteIfExists(paths.get(i));
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import saker.maven.classpath.impl.util.ClassFileInfo;
+import saker.maven.classpath.impl.util.ClassPathUsageAnalyzer;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class ClassPathUsageAnalyzerTest extends SakerTestCase {
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		TestClassPath cp = new TestClassPath();
+		cp.add("a.jar", "com.a.Foo", "com.a.Foo$Inner");
+		cp.add("b.jar", "com.b.Bar");
+		cp.add("c.jar", "com.c.Baz");
+
+		String source = "package test;\n" //
+				+ "import com.a.Foo;\n" //
+				+ "public class Main {\n" //
+				+ "	Foo foo;\n" //
+				+ "}\n";
+		assertEquals(usedEntries(cp, source), setOf("a.jar"));
+
+		//a new dependency is introduced in the source, without a previous compilation output
+		String modifiedsource = "package test;\n" //
+				+ "import com.a.Foo;\n" //
+				+ "public class Main {\n" //
+				+ "	Foo foo;\n" //
+				+ "	com.b.Bar bar = new com.b.Bar();\n" //
+				+ "}\n";
+		assertEquals(usedEntries(cp, modifiedsource), setOf("a.jar", "b.jar"));
+
+		//imports, including SOURCE retention annotations that are not present in the class files
+		assertEquals(usedEntries(cp, "import com.b.Bar;\n@com.c.Baz class Main { }"), setOf("b.jar", "c.jar"));
+		assertEquals(usedEntries(cp, "import com.b.*;\nclass Main { }"), setOf("b.jar"));
+		assertEquals(usedEntries(cp, "import static com.c.Baz.method;\nclass Main { }"), setOf("c.jar"));
+		assertEquals(usedEntries(cp, "import com.a.Foo.Inner;\nclass Main { }"), setOf("a.jar"));
+
+		//comments and literals are not considered
+		assertEquals(usedEntries(cp, "class Main {\n" //
+				+ "	// com.a.Foo\n" //
+				+ "	/* com.b.Bar */\n" //
+				+ "	String s = \"com.c.Baz\";\n" //
+				+ "}\n"), setOf());
+
+		//sources in the same package as classes in the class path use them without imports
+		assertEquals(usedEntries(cp, "package com.c;\nclass Main { Baz baz; }"), setOf("c.jar"));
+
+		//the supertypes and member signature types of the used classes are needed by the compiler as well
+		TestClassPath jdkcp = new TestClassPath();
+		jdkcp.add("list.jar", "java.util.ArrayList");
+		jdkcp.add("abstractlist.jar", "java.util.AbstractList");
+		jdkcp.add("listiterator.jar", "java.util.ListIterator");
+		jdkcp.add("unused.jar", "java.util.concurrent.ConcurrentHashMap");
+		assertEquals(usedEntries(jdkcp, "import java.util.ArrayList;\nclass Main { }"),
+				setOf("list.jar", "abstractlist.jar", "listiterator.jar"));
+	}
+
+	private static Set<String> usedEntries(TestClassPath cp, String source) {
+		Set<String> packages = new LinkedHashSet<>();
+		Set<String> names = new LinkedHashSet<>();
+		ClassPathUsageAnalyzer.scanSource(source, packages, names);
+		return new LinkedHashSet<>(ClassPathUsageAnalyzer.collectUsedEntries(packages, names, cp));
+	}
+
+	private static Set<String> setOf(String... items) {
+		return new LinkedHashSet<>(Arrays.asList(items));
+	}
+
+	private static class TestClassPath implements ClassPathUsageAnalyzer.ClassPathLookup<String> {
+		private final Map<String, String> classEntries = new HashMap<>();
+		private final Map<String, List<String>> packageClasses = new TreeMap<>();
+
+		public void add(String entry, String... classnames) {
+			for (String cname : classnames) {
+				classEntries.put(cname, entry);
+				packageClasses.computeIfAbsent(cname.substring(0, cname.lastIndexOf('.')), x -> new ArrayList<>())
+						.add(cname);
+			}
+		}
+
+		@Override
+		public String getClassEntry(String classname) {
+			return classEntries.get(classname);
+		}
+
+		@Override
+		public Collection<String> getPackageClassNames(String packagename) {
+			List<String> result = packageClasses.get(packagename);
+			if (result == null) {
+				return Collections.emptyList();
+			}
+			return result;
+		}
+
+		@Override
+		public ClassFileInfo readClass(String entry, String classname) {
+			//the JDK classes are used as the contents of the test class path
+			try (InputStream is = Object.class.getResourceAsStream("/" + classname.replace('.', '/') + ".class")) {
+				if (is == null) {
+					return null;
+				}
+				return ClassFileInfo.parse(is);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import saker.build.file.SakerFile;
+import saker.build.file.path.SakerPath;
+import saker.build.runtime.execution.ExecutionContext;
+import saker.build.task.Task;
+import saker.build.task.TaskContext;
+import saker.build.task.TaskExecutionEnvironmentSelector;
+import saker.build.task.TaskFactory;
+import saker.build.task.identifier.TaskIdentifier;
+import saker.build.thirdparty.saker.util.ImmutableUtils;
+import saker.java.compiler.api.classpath.ClassPathEntry;
+import saker.java.compiler.api.classpath.ClassPathReference;
+import saker.maven.classpath.api.MavenClassPathTaskBuilder;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import testing.saker.SakerTest;
+import testing.saker.build.tests.CollectingMetricEnvironmentTestCase;
+import testing.saker.build.tests.EnvironmentTestCaseConfiguration;
+import testing.saker.build.tests.TestClusterNameExecutionEnvironmentSelector;
+
+/**
+ * Creates a class path in cluster mode, and uses its entries in a task that runs on a cluster daemon.
+ * <p>
+ * The artifact is installed in a local repository created by the test, so no remote repositories are accessed. The
+ * class path entries must be execution files that the daemon can mirror with the same contents.
+ */
+@SakerTest
+public class ClusterModeClassPathTest extends CollectingMetricEnvironmentTestCase {
+	private static final ArtifactCoordinates ARTIFACT = ArtifactCoordinates.valueOf("test.cluster:lib:jar:1.0");
+
+	@Override
+	protected Set<EnvironmentTestCaseConfiguration> getTestConfigurations() {
+		return EnvironmentTestCaseConfiguration.builder(super.getTestConfigurations())
+				.setClusterNames(ImmutableUtils.singletonSet(DEFAULT_CLUSTER_NAME)).build();
+	}
+
+	@Override
+	protected void runTestImpl() throws Throwable {
+		Path repository = Files.createTempDirectory("saker.maven.classpath.test.repository");
+		byte[] jarbytes = installArtifact(repository, ARTIFACT);
+
+		MavenClassPathTaskBuilder builder = MavenClassPathTaskBuilder.newBuilder();
+		builder.setConfiguration(
+				MavenOperationConfiguration.builder().setLocalRepositoryPath(SakerPath.valueOf(repository)).build());
+		builder.setClusterMode(true);
+		builder.add(MavenClassPathTaskBuilder.EntryBuilder.newBuilder().setInput(ARTIFACT));
+
+		runTask("main", new ClusterClassPathUserTaskFactory(builder.buildTaskIdentifier(), builder.buildTask(),
+				jarbytes));
+	}
+
+	private static byte[] installArtifact(Path repository, ArtifactCoordinates coordinates) throws IOException {
+		Path dir = repository.resolve(coordinates.getGroupId().replace('.', '/')).resolve(coordinates.getArtifactId())
+				.resolve(coordinates.getVersion());
+		Files.createDirectories(dir);
+		String basename = coordinates.getArtifactId() + "-" + coordinates.getVersion();
+		Path jar = dir.resolve(basename + ".jar");
+		try (JarOutputStream jaros = new JarOutputStream(Files.newOutputStream(jar))) {
+			jaros.putNextEntry(new ZipEntry("test/cluster/resource.txt"));
+			jaros.write(coordinates.toString().getBytes(StandardCharsets.UTF_8));
+			jaros.closeEntry();
+		}
+		Files.write(dir.resolve(basename + ".pom"),
+				("<project><modelVersion>4.0.0</modelVersion><groupId>" + coordinates.getGroupId()
+						+ "</groupId><artifactId>" + coordinates.getArtifactId() + "</artifactId><version>"
+						+ coordinates.getVersion() + "</version></project>").getBytes(StandardCharsets.UTF_8));
+		return Files.readAllBytes(jar);
+	}
+
+	/**
+	 * Task that runs on the cluster daemon, and checks that the class path entries are accessible there.
+	 */
+	public static class ClusterClassPathUserTaskFactory implements TaskFactory<Object>, Task<Object>, Externalizable {
+		private static final long serialVersionUID = 1L;
+
+		private TaskIdentifier classPathTaskId;
+		private TaskFactory<? extends ClassPathReference> classPathTask;
+		private byte[] expectedContents;
+
+		/**
+		 * For {@link Externalizable}.
+		 */
+		public ClusterClassPathUserTaskFactory() {
+		}
+
+		public ClusterClassPathUserTaskFactory(TaskIdentifier classPathTaskId,
+				TaskFactory<? extends ClassPathReference> classPathTask, byte[] expectedContents) {
+			this.classPathTaskId = classPathTaskId;
+			this.classPathTask = classPathTask;
+			this.expectedContents = expectedContents;
+		}
+
+		@Override
+		public Task<? extends Object> createTask(ExecutionContext executioncontext) {
+			return this;
+		}
+
+		@Override
+		public Set<String> getCapabilities() {
+			return Collections.singleton(CAPABILITY_REMOTE_DISPATCHABLE);
+		}
+
+		@Override
+		public TaskExecutionEnvironmentSelector getExecutionEnvironmentSelector() {
+			return new TestClusterNameExecutionEnvironmentSelector(DEFAULT_CLUSTER_NAME);
+		}
+
+		@Override
+		public Object run(TaskContext taskcontext) throws Exception {
+			ClassPathReference classpath = taskcontext.startTask(classPathTaskId, classPathTask, null).get();
+			Collection<? extends ClassPathEntry> entries = classpath.getEntries();
+			assertEquals(entries.size(), 1);
+			FileLocation location = entries.iterator().next().getFileLocation();
+			if (!(location instanceof ExecutionFileLocation)) {
+				throw new AssertionError("Cluster mode class path entry is not an execution file: " + location);
+			}
+			SakerPath path = ((ExecutionFileLocation) location).getPath();
+			SakerFile file = taskcontext.getTaskUtilities().resolveFileAtPath(path);
+			if (file == null) {
+				throw new AssertionError("Class path entry not found: " + location);
+			}
+			//the daemon accesses the artifact through its own mirror of the execution file
+			Path mirrored = taskcontext.mirror(file);
+			if (!Arrays.equals(Files.readAllBytes(mirrored), expectedContents)) {
+				throw new AssertionError("Different contents of mirrored class path entry: " + mirrored);
+			}
+			return null;
+		}
+
+		@Override
+		public void writeExternal(ObjectOutput out) throws IOException {
+			out.writeObject(classPathTaskId);
+			out.writeObject(classPathTask);
+			out.writeObject(expectedContents);
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+			classPathTaskId = (TaskIdentifier) in.readObject();
+			classPathTask = (TaskFactory<? extends ClassPathReference>) in.readObject();
+			expectedContents = (byte[]) in.readObject();
+		}
+
+		@Override
+		public int hashCode() {
+			return classPathTaskId.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			ClusterClassPathUserTaskFactory other = (ClusterClassPathUserTaskFactory) obj;
+			return classPathTaskId.equals(other.classPathTaskId) && classPathTask.equals(other.classPathTask)
+					&& Arrays.equals(expectedContents, other.expectedContents);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Map;
+
+import saker.build.file.path.SakerPath;
+import saker.maven.classpath.impl.util.CompactExternalReader;
+import saker.maven.classpath.impl.util.CompactExternalWriter;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.std.api.file.location.ExecutionFileLocation;
+import saker.std.api.file.location.FileLocation;
+import saker.std.api.file.location.LocalFileLocation;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class CompactExternalFormatTest extends SakerTestCase {
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		testRoundTrip();
+		testVersionRejection();
+	}
+
+	private static void testRoundTrip() throws Exception {
+		SakerPath jarpath = SakerPath.valueOf("/home/user/.m2/repository/group/lib/1.0/lib-1.0.jar");
+		SakerPath pompath = SakerPath.valueOf("/home/user/.m2/repository/group/lib/1.0/lib-1.0.pom");
+		SakerPath otherpath = SakerPath.valueOf("/other/dir/file.jar");
+		FileLocation localloc = LocalFileLocation.create(jarpath);
+		FileLocation execloc = ExecutionFileLocation.create(SakerPath.valueOf("wd:/lib/lib.jar"));
+		ArtifactCoordinates coords = ArtifactCoordinates.valueOf("group:lib:jar:sources:1.0");
+		ArtifactCoordinates nullclassifiercoords = ArtifactCoordinates.valueOf("group:lib:1.0");
+		String shared = "shared-object";
+		int[] varints = { 0, 1, 127, 128, 300, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			CompactExternalWriter writer = new CompactExternalWriter(oos);
+			writer.writeFormatVersion(1);
+			for (int v : varints) {
+				writer.writeVarInt(v);
+			}
+			writer.writeString("group");
+			writer.writeString(null);
+			writer.writeString("group");
+			writer.writePath(jarpath);
+			writer.writePath(pompath);
+			writer.writePath(otherpath);
+			writer.writeFileLocation(localloc);
+			writer.writeFileLocation(execloc);
+			writer.writeFileLocation(null);
+			writer.writeArtifactCoordinates(coords);
+			writer.writeArtifactCoordinates(nullclassifiercoords);
+			writer.writeArtifactCoordinates(null);
+			writer.writeSharedObject(shared);
+			writer.writeSharedObject(null);
+			writer.writeSharedObject(shared);
+			writer.writeByte(0xFF);
+		}
+
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+			CompactExternalReader reader = new CompactExternalReader(ois);
+			reader.readFormatVersion(1);
+			for (int v : varints) {
+				assertEquals(reader.readVarInt(), v);
+			}
+			assertEquals(reader.readString(), "group");
+			assertNull(reader.readString());
+			assertEquals(reader.readString(), "group");
+			assertEquals(reader.readPath(), jarpath);
+			assertEquals(reader.readPath(), pompath);
+			assertEquals(reader.readPath(), otherpath);
+			assertEquals(reader.readFileLocation(), localloc);
+			assertEquals(reader.readFileLocation(), execloc);
+			assertNull(reader.readFileLocation());
+			assertEquals(reader.readArtifactCoordinates(), coords);
+			assertEquals(reader.readArtifactCoordinates(), nullclassifiercoords);
+			assertNull(reader.readArtifactCoordinates());
+			Object readshared = reader.readSharedObject();
+			assertEquals(readshared, shared);
+			assertNull(reader.readSharedObject());
+			//the shared object is only deserialized once
+			assertTrue(reader.readSharedObject() == readshared);
+			assertEquals(reader.readByte(), 0xFF);
+		}
+	}
+
+	private static void testVersionRejection() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			new CompactExternalWriter(oos).writeFormatVersion(2);
+		}
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+			CompactExternalReader reader = new CompactExternalReader(ois);
+			assertException(InvalidObjectException.class, () -> reader.readFormatVersion(1));
+		}
+	}
+}
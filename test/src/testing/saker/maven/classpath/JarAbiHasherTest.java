@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import saker.maven.classpath.impl.util.JarAbiHasher;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class JarAbiHasherTest extends SakerTestCase {
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		byte[] base = hash("package test;\n" //
+				+ "public class Api {\n" //
+				+ "	private int state;\n" //
+				+ "	public int compute(int a) { return a + 1; }\n" //
+				+ "	protected void hook() { }\n" //
+				+ "}\n");
+
+		//method bodies and private members are not part of the ABI
+		assertTrue(Arrays.equals(base, hash("package test;\n" //
+				+ "public class Api {\n" //
+				+ "	private long otherState;\n" //
+				+ "	private void helper() { }\n" //
+				+ "	public int compute(int a) { helper(); return a * 2; }\n" //
+				+ "	protected void hook() { System.out.println(); }\n" //
+				+ "}\n")));
+		//neither is the order of the members
+		assertTrue(Arrays.equals(base, hash("package test;\n" //
+				+ "public class Api {\n" //
+				+ "	protected void hook() { }\n" //
+				+ "	public int compute(int a) { return a + 1; }\n" //
+				+ "	private int state;\n" //
+				+ "}\n")));
+		//package private classes that are not supertypes of public classes are not part of it either
+		assertTrue(Arrays.equals(base, hash("package test;\n" //
+				+ "public class Api {\n" //
+				+ "	private int state;\n" //
+				+ "	public int compute(int a) { return a + 1; }\n" //
+				+ "	protected void hook() { }\n" //
+				+ "}\n" //
+				+ "class Internal { public void internal() { } }\n")));
+
+		//public signature changes
+		assertFalse(Arrays.equals(base, hash("package test;\n" //
+				+ "public class Api {\n" //
+				+ "	private int state;\n" //
+				+ "	public int compute(long a) { return (int) a + 1; }\n" //
+				+ "	protected void hook() { }\n" //
+				+ "}\n")));
+		assertFalse(Arrays.equals(base, hash("package test;\n" //
+				+ "public class Api {\n" //
+				+ "	private int state;\n" //
+				+ "	public int compute(int a) { return a + 1; }\n" //
+				+ "	protected void hook() { }\n" //
+				+ "	public void added() { }\n" //
+				+ "}\n")));
+		//visibility change of a member
+		assertFalse(Arrays.equals(base, hash("package test;\n" //
+				+ "public class Api {\n" //
+				+ "	private int state;\n" //
+				+ "	public int compute(int a) { return a + 1; }\n" //
+				+ "	void hook() { }\n" //
+				+ "}\n")));
+		//constant values are inlined by the compiler, so they are part of the ABI
+		assertFalse(Arrays.equals(hash("package test;\npublic class Api { public static final int C = 1; }\n"),
+				hash("package test;\npublic class Api { public static final int C = 2; }\n")));
+	}
+
+	private static byte[] hash(String source) throws IOException {
+		try (ByteArrayInputStream is = new ByteArrayInputStream(createJar(source))) {
+			return JarAbiHasher.hash(is);
+		}
+	}
+
+	/**
+	 * Compiles the source to a JAR.
+	 */
+	private static byte[] createJar(String source) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new AssertionError("Java compiler is not available.");
+		}
+		Path dir = Files.createTempDirectory("saker.maven.classpath.test.abi");
+		try {
+			Path srcdir = dir.resolve("src/test");
+			Path classdir = dir.resolve("classes");
+			Files.createDirectories(srcdir);
+			Files.createDirectories(classdir);
+			Path srcfile = srcdir.resolve("Api.java");
+			Files.write(srcfile, source.getBytes(StandardCharsets.UTF_8));
+			int res = compiler.run(null, null, null, "-d", classdir.toString(), srcfile.toString());
+			if (res != 0) {
+				throw new AssertionError("Failed to compile: " + source);
+			}
+			//sorted for reproducible output
+			Map<String, byte[]> classfiles = new TreeMap<>();
+			try (Stream<Path> files = Files.walk(classdir)) {
+				for (Path f : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+					classfiles.put(classdir.relativize(f).toString().replace('\\', '/'), Files.readAllBytes(f));
+				}
+			}
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try (JarOutputStream jaros = new JarOutputStream(baos)) {
+				for (Map.Entry<String, byte[]> entry : classfiles.entrySet()) {
+					jaros.putNextEntry(new ZipEntry(entry.getKey()));
+					jaros.write(entry.getValue());
+					jaros.closeEntry();
+				}
+			}
+			return baos.toByteArray();
+		} finally {
+			deleteRecursively(dir);
+		}
+	}
+
+	private static void deleteRecursively(Path dir) throws IOException {
+		List<Path> paths = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(dir)) {
+			files.forEach(paths::add);
+		}
+		//children first
+		for (int i = paths.size() - 1; i >= 0; i--) {
+			Files.deleteIfExists(paths.get(i));
+		}
+	}
+}
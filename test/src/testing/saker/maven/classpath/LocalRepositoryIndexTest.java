@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import saker.build.file.content.ContentDescriptor;
+import saker.build.file.content.HashContentDescriptor;
+import saker.build.file.path.SakerPath;
+import saker.maven.classpath.impl.util.LocalRepositoryIndex;
+import saker.maven.classpath.impl.util.LocalRepositoryIndex.IndexedArtifact;
+import saker.maven.classpath.impl.util.StorageUtils;
+import saker.maven.support.api.ArtifactCoordinates;
+import saker.maven.support.api.MavenOperationConfiguration;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+/**
+ * Tests that the entries recorded by different processes are merged when the index is flushed.
+ * <p>
+ * The indexes are loaded once per storage path in a JVM, so the processes are simulated by accessing the same storage
+ * directory through different symbolic links.
+ */
+@SakerTest
+public class LocalRepositoryIndexTest extends SakerTestCase {
+	private static final ArtifactCoordinates COORDS_A = ArtifactCoordinates.valueOf("test.index:a:1.0");
+	private static final ArtifactCoordinates COORDS_B = ArtifactCoordinates.valueOf("test.index:b:1.0");
+	private static final ArtifactCoordinates COORDS_C = ArtifactCoordinates.valueOf("test.index:c:1.0");
+	private static final ArtifactCoordinates COORDS_SNAPSHOT = ArtifactCoordinates
+			.valueOf("test.index:snapshot:1.0-SNAPSHOT");
+	private static final ArtifactCoordinates COORDS_RECENT = ArtifactCoordinates.valueOf("test.index:recent:1.0");
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		Path dir = Files.createTempDirectory("saker.maven.classpath.test.index");
+		String prevstorage = System.getProperty(StorageUtils.PROPERTY_STORAGE_DIRECTORY);
+		try {
+			Path storage = Files.createDirectories(dir.resolve("storage"));
+			Path repo = Files.createDirectories(dir.resolve("repository"));
+			MavenOperationConfiguration config = MavenOperationConfiguration.builder()
+					.setLocalRepositoryPath(SakerPath.valueOf(repo)).build();
+
+			SakerPath jara = writeArtifact(repo, COORDS_A, true);
+			SakerPath jarb = writeArtifact(repo, COORDS_B, true);
+			SakerPath jarc = writeArtifact(repo, COORDS_C, true);
+			SakerPath jarsnapshot = writeArtifact(repo, COORDS_SNAPSHOT, true);
+			SakerPath jarrecent = writeArtifact(repo, COORDS_RECENT, false);
+
+			LocalRepositoryIndex first = getIndex(storage, config);
+			LocalRepositoryIndex second = getIndex(Files.createSymbolicLink(dir.resolve("link2"), storage), config);
+			assertFalse(first == second);
+
+			first.record(COORDS_A, jara, descriptor("a"));
+			first.record(COORDS_SNAPSHOT, jarsnapshot, descriptor("snapshot"));
+			first.record(COORDS_RECENT, jarrecent, descriptor("recent"));
+			second.record(COORDS_B, jarb, descriptor("b"));
+			second.record(COORDS_C, jarc, descriptor("c-second"));
+
+			assertArtifact(first.lookup(COORDS_A), jara, descriptor("a"));
+			assertNull(first.lookup(COORDS_B));
+			//snapshots and recently modified files are not indexed
+			assertNull(first.lookup(COORDS_SNAPSHOT));
+			assertNull(first.lookup(COORDS_RECENT));
+
+			first.flush();
+			second.flush();
+			//the second index sees the entries of the first after merging
+			assertArtifact(second.lookup(COORDS_A), jara, descriptor("a"));
+			assertNull(first.lookup(COORDS_B));
+
+			//the recorded entry overwrites the stored one
+			first.record(COORDS_C, jarc, descriptor("c-first"));
+			first.flush();
+			assertArtifact(first.lookup(COORDS_B), jarb, descriptor("b"));
+			assertArtifact(first.lookup(COORDS_C), jarc, descriptor("c-first"));
+
+			//a newly loaded index contains the entries of both
+			LocalRepositoryIndex third = getIndex(Files.createSymbolicLink(dir.resolve("link3"), storage), config);
+			assertArtifact(third.lookup(COORDS_A), jara, descriptor("a"));
+			assertArtifact(third.lookup(COORDS_B), jarb, descriptor("b"));
+			assertArtifact(third.lookup(COORDS_C), jarc, descriptor("c-first"));
+			assertNull(third.lookup(COORDS_SNAPSHOT));
+			assertNull(third.lookup(COORDS_RECENT));
+
+			//modified artifacts are not returned
+			Path realjara = repo.resolve(jara.getFileName());
+			Files.write(realjara, "modified".getBytes(StandardCharsets.UTF_8));
+			assertNull(third.lookup(COORDS_A));
+			Files.delete(repo.resolve(jarb.getFileName()));
+			assertNull(third.lookup(COORDS_B));
+		} finally {
+			if (prevstorage == null) {
+				System.clearProperty(StorageUtils.PROPERTY_STORAGE_DIRECTORY);
+			} else {
+				System.setProperty(StorageUtils.PROPERTY_STORAGE_DIRECTORY, prevstorage);
+			}
+			deleteRecursively(dir);
+		}
+	}
+
+	private static void assertArtifact(IndexedArtifact artifact, SakerPath path, ContentDescriptor descriptor) {
+		assertNonNull(artifact);
+		assertEquals(artifact.getPath(), path);
+		assertEquals(artifact.getContentDescriptor(), descriptor);
+	}
+
+	private static LocalRepositoryIndex getIndex(Path storage, MavenOperationConfiguration config) {
+		//the environment is not used when the storage directory is set
+		System.setProperty(StorageUtils.PROPERTY_STORAGE_DIRECTORY, storage.toString());
+		LocalRepositoryIndex result = LocalRepositoryIndex.get(null, config);
+		assertNonNull(result);
+		return result;
+	}
+
+	private static SakerPath writeArtifact(Path repo, ArtifactCoordinates coords, boolean old) throws Exception {
+		Path jar = repo.resolve(coords.getArtifactId() + "-" + coords.getVersion() + ".jar");
+		Files.write(jar, coords.toString().getBytes(StandardCharsets.UTF_8));
+		if (old) {
+			Files.setLastModifiedTime(jar,
+					FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+		}
+		return SakerPath.valueOf(jar);
+	}
+
+	private static ContentDescriptor descriptor(String id) {
+		return HashContentDescriptor.createWithHash(id.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void deleteRecursively(Path dir) throws Exception {
+		List<Path> paths;
+		try (Stream<Path> files = Files.walk(dir)) {
+			paths = files.collect(Collectors.toCollection(ArrayList::new));
+		}
+		//children first
+		for (int i = paths.size() - 1; i >= 0; i--) {
+			Files.deleteIfExists(paths.get(i));
+		}
+	}
+}
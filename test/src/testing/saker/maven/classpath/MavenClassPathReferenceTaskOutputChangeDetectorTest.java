@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import saker.build.file.path.SakerPath;
+import saker.maven.classpath.impl.MavenClassPathEntry;
+import saker.maven.classpath.impl.MavenClassPathReference;
+import saker.maven.classpath.impl.MavenClassPathReferenceTaskOutputChangeDetector;
+import saker.maven.classpath.impl.option.LiteralStructuredTaskResult;
+import saker.std.api.file.location.LocalFileLocation;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class MavenClassPathReferenceTaskOutputChangeDetectorTest extends SakerTestCase {
+	private static final int LOCATIONS = MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_LOCATIONS;
+	private static final int ABI = MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_LOCATIONS_ABI;
+	private static final int CLASSPATH = MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_CLASSPATH;
+	private static final int ALL = MavenClassPathReferenceTaskOutputChangeDetector.FIELDS_ALL;
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		MavenClassPathReference base = classPath(entry("a.jar", "impl1", "abi1"));
+
+		//implementation change with the same ABI
+		MavenClassPathReference implchanged = classPath(entry("a.jar", "impl2", "abi1"));
+		assertFalse(isChanged(base, implchanged, LOCATIONS));
+		assertFalse(isChanged(base, implchanged, ABI));
+		assertTrue(isChanged(base, implchanged, CLASSPATH));
+		assertTrue(isChanged(base, implchanged, ALL));
+
+		//ABI change
+		MavenClassPathReference abichanged = classPath(entry("a.jar", "impl2", "abi2"));
+		assertFalse(isChanged(base, abichanged, LOCATIONS));
+		assertTrue(isChanged(base, abichanged, ABI));
+
+		//location change
+		MavenClassPathReference moved = classPath(entry("b.jar", "impl1", "abi1"));
+		assertTrue(isChanged(base, moved, LOCATIONS));
+		assertTrue(isChanged(base, moved, ABI));
+
+		//added entry
+		assertTrue(isChanged(base, classPath(entry("a.jar", "impl1", "abi1"), entry("b.jar", "impl1", "abi1")),
+				LOCATIONS));
+
+		//the implementation keys are compared if the ABI is unknown
+		MavenClassPathReference noabi = classPath(entry("a.jar", "impl1", null));
+		assertFalse(isChanged(noabi, classPath(entry("a.jar", "impl1", null)), ABI));
+		assertTrue(isChanged(noabi, classPath(entry("a.jar", "impl2", null)), ABI));
+		assertFalse(isChanged(noabi, classPath(entry("a.jar", "impl2", null)), LOCATIONS));
+
+		//attachments are only compared in full mode
+		MavenClassPathEntry attached = entry("a.jar", "impl1", "abi1");
+		attached.setSourceAttachment(new LiteralStructuredTaskResult("sources"));
+		assertFalse(isChanged(base, classPath(attached), CLASSPATH));
+		assertTrue(isChanged(base, classPath(attached), ALL));
+	}
+
+	private static boolean isChanged(MavenClassPathReference expected, MavenClassPathReference actual, int fields) {
+		return new MavenClassPathReferenceTaskOutputChangeDetector(expected, fields).isChanged(actual);
+	}
+
+	private static MavenClassPathReference classPath(MavenClassPathEntry... entries) {
+		return new MavenClassPathReference(Arrays.asList(entries));
+	}
+
+	private static MavenClassPathEntry entry(String path, Object implkey, Object abikey) {
+		MavenClassPathEntry result = new MavenClassPathEntry(
+				LocalFileLocation.create(SakerPath.valueOf("/repo/" + path)), implkey);
+		result.setAbiVersionKey(abikey);
+		return result;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import saker.build.file.path.SakerPath;
+import saker.java.compiler.api.classpath.ClassPathReference;
+import saker.maven.classpath.impl.MavenClassPathEntry;
+import saker.maven.classpath.impl.MavenClassPathReference;
+import saker.std.api.file.location.LocalFileLocation;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class MavenClassPathReferenceTest extends SakerTestCase {
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		MavenClassPathEntry a = entry("a.jar");
+		MavenClassPathEntry c = entry("c.jar");
+		MavenClassPathReference inner = new MavenClassPathReference(Arrays.asList(c));
+		AdditionalReferencesEntry b = new AdditionalReferencesEntry("b.jar");
+		b.additionalReferences.add(inner);
+		MavenClassPathReference middle = new MavenClassPathReference(Arrays.asList(b));
+		MavenClassPathReference outer = MavenClassPathReference.createComposite(Arrays.asList(a, middle));
+
+		//the additional references stay on the entries
+		assertEquals(new ArrayList<>(outer.getEntries()), Arrays.asList(a, b));
+		assertEquals(b.getAdditionalClassPathReferences(), Arrays.asList(inner));
+		//but the maven entries include them transitively
+		assertEquals(new ArrayList<>(outer.getMavenEntries()), Arrays.asList(a, b, c));
+		assertEquals(new ArrayList<>(middle.getMavenEntries()), Arrays.asList(b, c));
+
+		//cyclic references are visited only once
+		AdditionalReferencesEntry d = new AdditionalReferencesEntry("d.jar");
+		MavenClassPathReference cyclic = new MavenClassPathReference(Arrays.asList(d));
+		d.additionalReferences.add(cyclic);
+		d.additionalReferences.add(outer);
+		assertEquals(new ArrayList<>(cyclic.getMavenEntries()), Arrays.asList(d, a, b, c));
+
+		//the included references are shared and preserved by serialization
+		MavenClassPathEntry e = entry("e.jar");
+		MavenClassPathReference plaininner = new MavenClassPathReference(Arrays.asList(c));
+		MavenClassPathReference composite = MavenClassPathReference
+				.createComposite(Arrays.asList(e, plaininner, a));
+		MavenClassPathReference read = roundTrip(composite);
+		assertEquals(read, composite);
+		assertEquals(new ArrayList<>(read.getEntries()), Arrays.asList(e, c, a));
+		assertEquals(read.getIncludedReferences(), Arrays.asList(plaininner));
+	}
+
+	private static MavenClassPathEntry entry(String path) {
+		return new MavenClassPathEntry(LocalFileLocation.create(SakerPath.valueOf("/repo/" + path)), path);
+	}
+
+	private static MavenClassPathReference roundTrip(MavenClassPathReference ref) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			oos.writeObject(ref);
+		}
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+			return (MavenClassPathReference) ois.readObject();
+		}
+	}
+
+	private static class AdditionalReferencesEntry extends MavenClassPathEntry {
+		private static final long serialVersionUID = 1L;
+
+		protected final List<ClassPathReference> additionalReferences = new ArrayList<>();
+
+		public AdditionalReferencesEntry(String path) {
+			super(LocalFileLocation.create(SakerPath.valueOf("/repo/" + path)), path);
+		}
+
+		@Override
+		public Collection<? extends ClassPathReference> getAdditionalClassPathReferences() {
+			return additionalReferences;
+		}
+	}
+}
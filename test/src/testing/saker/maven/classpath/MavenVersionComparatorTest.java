@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import saker.maven.classpath.impl.util.MavenVersionComparator;
+import saker.maven.classpath.impl.util.VersionConflictStrategy;
+import saker.maven.support.api.ArtifactCoordinates;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+/**
+ * The version orderings and canonical forms are the same as the ones checked for the Maven
+ * <code>ComparableVersion</code> class.
+ */
+@SakerTest
+public class MavenVersionComparatorTest extends SakerTestCase {
+	private static final String[] VERSIONS_QUALIFIER = { "1-alpha2snapshot", "1-alpha2", "1-alpha-123", "1-beta-2",
+			"1-beta123", "1-m2", "1-m11", "1-rc", "1-cr2", "1-rc123", "1-SNAPSHOT", "1", "1-sp", "1-sp2", "1-sp123",
+			"1-abc", "1-def", "1-pom-1", "1-1-snapshot", "1-1", "1-2", "1-123" };
+
+	private static final String[] VERSIONS_NUMBER = { "2.0", "2-1", "2.0.a", "2.0.0.a", "2.0.2", "2.0.123", "2.1.0",
+			"2.1-a", "2.1b", "2.1-c", "2.1-1", "2.1.0.1", "2.2", "2.123", "11.a2", "11.a11", "11.b2", "11.b11", "11.m2",
+			"11.m11", "11", "11.a", "11b", "11c", "11m" };
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		assertOrdered(VERSIONS_QUALIFIER);
+		assertOrdered(VERSIONS_NUMBER);
+
+		//trailing zeros and release qualifiers
+		assertSame("1", "1.0", "1.0.0", "1-0", "1.0-0", "1.ga", "1-ga", "1.final", "1-FINAL", "1-release", "1.0.0-GA");
+		//zeros before a qualifier
+		assertSame("1.0-beta", "1-beta", "1.0.0-beta", "1-BETA", "1-beta-0");
+		assertSame("1-beta1", "1-b1", "1beta1", "1.0-beta-1", "1b1");
+		assertSame("1-alpha-1", "1a1", "1-a1", "1.0alpha1");
+		assertSame("1-milestone1", "1m1", "1-milestone-1");
+		assertSame("1-rc1", "1-cr1", "1-CR-1", "1.0rc1");
+		//leading zeros
+		assertSame("1.01", "1.1", "01.1.0");
+		//empty items are zeros
+		assertSame("1..1", "1.0.1");
+		//a, b and m are only aliases when followed by a digit
+		assertTrue(cmp("1-a", "1-alpha") != 0);
+		assertTrue(cmp("1-a", "1-b") < 0);
+		//underscore is not a separator
+		assertTrue(cmp("1_1", "1.1") != 0);
+		//large numbers
+		assertTrue(cmp("1.12345678901234567890", "1.2") > 0);
+		assertTrue(cmp("1.123456789012", "1.1234567890") > 0);
+
+		assertEquals(MavenVersionComparator.getCanonical("1.0-beta"), "1-beta");
+		assertEquals(MavenVersionComparator.getCanonical("1.0.0"), "1");
+		assertEquals(MavenVersionComparator.getCanonical("1.0-FINAL"), "1");
+		assertEquals(MavenVersionComparator.getCanonical("1a1"), "1-alpha-1");
+		assertEquals(MavenVersionComparator.getCanonical("1.0.1-CR1"), "1.0.1-rc-1");
+		assertEquals(MavenVersionComparator.getCanonical("2.0.0.a"), "2.0.0.a");
+
+		testConflictStrategies();
+	}
+
+	private static void testConflictStrategies() {
+		List<ArtifactCoordinates> coords = Arrays.asList(ArtifactCoordinates.valueOf("g:lib:1.0-beta"),
+				ArtifactCoordinates.valueOf("g:other:2.0"), ArtifactCoordinates.valueOf("g:lib:1-beta"),
+				ArtifactCoordinates.valueOf("g:lib:jar:natives:3.0"), ArtifactCoordinates.valueOf("g:lib:1.0"),
+				ArtifactCoordinates.valueOf("g:other:2.0"), ArtifactCoordinates.valueOf("g:lib:1.0-SNAPSHOT"));
+
+		assertEquals(VersionConflictStrategy.forName(null), VersionConflictStrategy.NONE);
+		assertEquals(VersionConflictStrategy.forName("highestwins"), VersionConflictStrategy.HIGHEST_WINS);
+		assertEquals(VersionConflictStrategy.forName("FirstWins"), VersionConflictStrategy.FIRST_WINS);
+		assertEquals(VersionConflictStrategy.forName("FAIL"), VersionConflictStrategy.FAIL);
+		assertException(IllegalArgumentException.class, () -> VersionConflictStrategy.forName("Newest"));
+
+		assertEquals(new ArrayList<>(VersionConflictStrategy.NONE.resolve(coords)),
+				Arrays.asList(coords.get(0), coords.get(1), coords.get(2), coords.get(3), coords.get(4),
+						coords.get(6)));
+		assertEquals(new ArrayList<>(VersionConflictStrategy.FIRST_WINS.resolve(coords)),
+				Arrays.asList(coords.get(0), coords.get(1), coords.get(3)));
+		//the highest version at the position of the first occurrence, the classifier is a different artifact
+		assertEquals(new ArrayList<>(VersionConflictStrategy.HIGHEST_WINS.resolve(coords)),
+				Arrays.asList(coords.get(4), coords.get(1), coords.get(3)));
+		//equal versions keep the first occurrence
+		assertEquals(new ArrayList<>(VersionConflictStrategy.HIGHEST_WINS.resolve(coords.subList(0, 3))),
+				Arrays.asList(coords.get(0), coords.get(1)));
+		assertException(IllegalArgumentException.class, () -> VersionConflictStrategy.FAIL.resolve(coords));
+		//same coordinates multiple times are not conflicting
+		assertEquals(new ArrayList<>(VersionConflictStrategy.FAIL.resolve(coords.subList(1, 2))),
+				Arrays.asList(coords.get(1)));
+		assertEquals(new ArrayList<>(VersionConflictStrategy.FAIL
+				.resolve(Arrays.asList(coords.get(1), coords.get(3), coords.get(5)))),
+				Arrays.asList(coords.get(1), coords.get(3)));
+	}
+
+	private static int cmp(String l, String r) {
+		return Integer.signum(MavenVersionComparator.INSTANCE.compare(l, r));
+	}
+
+	private static void assertOrdered(String[] versions) {
+		for (int i = 0; i < versions.length; i++) {
+			for (int j = 0; j < versions.length; j++) {
+				int expected = Integer.compare(i, j);
+				if (cmp(versions[i], versions[j]) != expected) {
+					fail(versions[i] + " compared to " + versions[j] + " expected: " + expected);
+				}
+			}
+		}
+	}
+
+	private static void assertSame(String... versions) {
+		String canonical = MavenVersionComparator.getCanonical(versions[0]);
+		for (String v : versions) {
+			if (cmp(versions[0], v) != 0 || cmp(v, versions[0]) != 0) {
+				fail(versions[0] + " is not equal to " + v);
+			}
+			assertEquals(MavenVersionComparator.getCanonical(v), canonical);
+		}
+	}
+}
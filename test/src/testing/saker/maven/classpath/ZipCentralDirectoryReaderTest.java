@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2020 Bence Sipka
+ *
+ * This program is free software: you can redistribute it and/or modify 
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package testing.saker.maven.classpath;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import saker.maven.classpath.impl.util.ZipCentralDirectoryReader;
+import testing.saker.SakerTest;
+import testing.saker.SakerTestCase;
+
+@SakerTest
+public class ZipCentralDirectoryReaderTest extends SakerTestCase {
+	private static final int EOCD_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+
+	@Override
+	public void runTest(Map<String, String> parameters) throws Throwable {
+		Path dir = Files.createTempDirectory("saker.maven.classpath.test.zip");
+		try {
+			testSimple(dir);
+			testZip64(dir);
+			testCorrupt(dir);
+		} finally {
+			try (Stream<Path> files = Files.list(dir)) {
+				for (Path f : (Iterable<Path>) files::iterator) {
+					Files.delete(f);
+				}
+			}
+			Files.delete(dir);
+		}
+	}
+
+	private static void testSimple(Path dir) throws IOException {
+		Path zip = dir.resolve("simple.zip");
+		writeZip(zip, Arrays.asList("META-INF/MANIFEST.MF", "a/b/C.class", "\u00e9kezet.txt"), "comment");
+		assertEquals(ZipCentralDirectoryReader.readEntryNames(zip), zipFileNames(zip));
+
+		byte[] hash = ZipCentralDirectoryReader.hashCentralDirectory(zip);
+		Path same = dir.resolve("same.zip");
+		Files.copy(zip, same);
+		assertTrue(Arrays.equals(hash, ZipCentralDirectoryReader.hashCentralDirectory(same)));
+		Path other = dir.resolve("other.zip");
+		writeZip(other, Arrays.asList("META-INF/MANIFEST.MF", "a/b/D.class", "\u00e9kezet.txt"), "comment");
+		assertFalse(Arrays.equals(hash, ZipCentralDirectoryReader.hashCentralDirectory(other)));
+
+		Path empty = dir.resolve("empty.zip");
+		writeZip(empty, Collections.emptyList(), null);
+		assertEquals(ZipCentralDirectoryReader.readEntryNames(empty), Collections.emptyList());
+	}
+
+	private static void testZip64(Path dir) throws IOException {
+		//more entries than the end of central directory record can hold, so the ZIP64 records are written
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < 0x10000 + 10; i++) {
+			names.add("e/" + i);
+		}
+		Path zip = dir.resolve("zip64.zip");
+		writeZip(zip, names, null);
+
+		byte[] bytes = Files.readAllBytes(zip);
+		ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		int eocd = bytes.length - EOCD_SIZE;
+		assertEquals(buf.getShort(eocd + 10) & 0xFFFF, 0xFFFF);
+		assertEquals(buf.getInt(eocd - ZIP64_LOCATOR_SIZE), 0x07064b50);
+
+		assertEquals(ZipCentralDirectoryReader.readEntryNames(zip), names);
+		ZipCentralDirectoryReader.hashCentralDirectory(zip);
+
+		//the ZIP64 end of central directory record offset points to an invalid location
+		Path badlocator = dir.resolve("zip64-badlocator.zip");
+		ByteBuffer badbuf = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		badbuf.putLong(eocd - ZIP64_LOCATOR_SIZE + 8, 0);
+		Files.write(badlocator, badbuf.array());
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.readEntryNames(badlocator));
+
+		//the ZIP64 locator is missing
+		Path nolocator = dir.resolve("zip64-nolocator.zip");
+		ByteBuffer nolocbuf = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		nolocbuf.putInt(eocd - ZIP64_LOCATOR_SIZE, 0);
+		Files.write(nolocator, nolocbuf.array());
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.readEntryNames(nolocator));
+	}
+
+	private static void testCorrupt(Path dir) throws IOException {
+		Path zip = dir.resolve("base.zip");
+		writeZip(zip, Arrays.asList("a.txt", "b/c.txt", "d/e/f.txt"), null);
+		byte[] bytes = Files.readAllBytes(zip);
+		int eocd = bytes.length - EOCD_SIZE;
+
+		Path notzip = dir.resolve("notzip.bin");
+		Files.write(notzip, new byte[1024]);
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.readEntryNames(notzip));
+
+		Path toosmall = dir.resolve("toosmall.bin");
+		Files.write(toosmall, new byte[] { 'P', 'K' });
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.readEntryNames(toosmall));
+
+		//the end of central directory record is cut off
+		Path truncated = dir.resolve("truncated.zip");
+		Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 10));
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.readEntryNames(truncated));
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.hashCentralDirectory(truncated));
+
+		//the central directory size is smaller than the headers in it
+		Path shortcd = dir.resolve("shortcd.zip");
+		ByteBuffer shortbuf = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		shortbuf.putInt(eocd + 12, shortbuf.getInt(eocd + 12) - 4);
+		Files.write(shortcd, shortbuf.array());
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.readEntryNames(shortcd));
+
+		//the central directory extends past the end of the file
+		Path longcd = dir.resolve("longcd.zip");
+		ByteBuffer longbuf = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		longbuf.putInt(eocd + 12, bytes.length);
+		Files.write(longcd, longbuf.array());
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.readEntryNames(longcd));
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.hashCentralDirectory(longcd));
+
+		//the central directory offset doesn't point to a header
+		Path badoffset = dir.resolve("badoffset.zip");
+		ByteBuffer offsetbuf = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		offsetbuf.putInt(eocd + 16, offsetbuf.getInt(eocd + 16) - 1);
+		Files.write(badoffset, offsetbuf.array());
+		assertException(ZipException.class, () -> ZipCentralDirectoryReader.readEntryNames(badoffset));
+	}
+
+	private static void writeZip(Path path, List<String> names, String comment) throws IOException {
+		try (OutputStream os = Files.newOutputStream(path);
+				ZipOutputStream zos = new ZipOutputStream(os)) {
+			if (comment != null) {
+				zos.setComment(comment);
+			}
+			for (String name : names) {
+				zos.putNextEntry(new ZipEntry(name));
+				zos.write(name.getBytes(StandardCharsets.UTF_8));
+				zos.closeEntry();
+			}
+		}
+	}
+
+	private static List<String> zipFileNames(Path path) throws IOException {
+		List<String> result = new ArrayList<>();
+		try (ZipFile zf = new ZipFile(path.toFile())) {
+			zf.stream().forEach(e -> result.add(e.getName()));
+		}
+		return result;
+	}
+}